@@ -0,0 +1,73 @@
+package benchmarks;
+
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import org.openjdk.jmh.annotations.*;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMStateCache;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// ATMService.withdraw end to end (validation, state lock, dispense, account lock,
+// saves, receipt paper) over InMemoryPersistence, so no disk time is included.
+// Console output is discarded while the benchmark runs.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ATMServiceBenchmark {
+    private static final String CARD = "1234567890";
+    private static final String PIN = "1234";
+
+    private PrintStream console;
+    private ATMStateCache stateCache;
+    private ATMService service;
+
+    // Accounts come back without a daily limit, so withdrawals never start failing
+    private static class UnlimitedPersistence extends InMemoryPersistence {
+        UnlimitedPersistence(ATMState state) {
+            super(state);
+        }
+
+        @Override
+        public Account loadAccount(String cardNumber) {
+            Account account = super.loadAccount(cardNumber);
+            if (account != null) {
+                account.restoreLimits(LocalDate.now().plusYears(5), Double.MAX_VALUE, 0, LocalDate.now());
+            }
+            return account;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        InMemoryPersistence persistence = new UnlimitedPersistence(
+                new ATMState(100, 200, 500, "v1.0.0", new PaperTank(Integer.MAX_VALUE)));
+        persistence.saveAccount(new Account(CARD, PIN, 1e12));
+        stateCache = new ATMStateCache(persistence);
+        service = new ATMService(persistence, stateCache);
+        if (!service.authenticate(CARD, PIN)) throw new IllegalStateException("Benchmark account did not log in");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    // A $20 withdrawal, with the $20 note put back into the cassette afterwards
+    @Benchmark
+    public boolean withdraw() {
+        boolean ok = service.withdraw(20);
+        stateCache.current().addCash(0, 0, 1);
+        return ok;
+    }
+}
@@ -0,0 +1,41 @@
+package benchmarks;
+
+import core.Account;
+import org.openjdk.jmh.annotations.*;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Account operations in isolation. The history is a 1024-entry ring, so every
+// iteration measures the steady state rather than an ever-growing history.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBenchmark {
+    private Account account;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        account = new Account("1234567890", "1234", 1e12, 1024);
+        // No daily limit, so withdrawals keep succeeding for the whole iteration
+        account.restoreLimits(LocalDate.now().plusYears(5), Double.MAX_VALUE, 0, LocalDate.now());
+    }
+
+    @Benchmark
+    public boolean withdraw() {
+        return account.withdraw(20);
+    }
+
+    @Benchmark
+    public double deposit() {
+        account.deposit(20);
+        return account.getBalance();
+    }
+
+    @Benchmark
+    public boolean transfer() {
+        return account.transfer(20, "9876543210");
+    }
+}
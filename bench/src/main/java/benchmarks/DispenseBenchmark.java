@@ -0,0 +1,44 @@
+package benchmarks;
+
+import core.ATMState;
+import core.PaperTank;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+// ATMState.dispenseCash on its own. Each call puts the same notes back, so the
+// cassettes stay level however many operations an iteration runs.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispenseBenchmark {
+    private ATMState state;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        state = new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500));
+    }
+
+    // $120 = one $100 + one $20 out, then the same two notes back in
+    @Benchmark
+    public boolean dispenseAndRefill() {
+        boolean dispensed = state.dispenseCash(120);
+        state.addCash(1, 0, 1);
+        return dispensed;
+    }
+
+    // Same with four threads competing for the cassettes
+    @Benchmark
+    @Threads(4)
+    public boolean dispenseAndRefillContended() {
+        return dispenseAndRefill();
+    }
+
+    // Plan lookup only
+    @Benchmark
+    public boolean canDispense() {
+        return state.canDispense(370);
+    }
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import metrics.ServiceMetrics;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the instrumentation ATMService adds to each operation: counting it, and for
+// the sampled calls reading the clock twice and recording into a histogram. A withdrawal
+// records three times (the operation plus its account and state saves); compare against
+// ATMServiceBenchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private final ServiceMetrics metrics = new ServiceMetrics();
+    private final ServiceMetrics timeEveryCall = new ServiceMetrics(1);
+
+    @Benchmark
+    public void record() {
+        metrics.record(ServiceMetrics.Operation.WITHDRAW, metrics.start(), true);
+    }
+
+    @Benchmark
+    public void recordUnsampled() {
+        timeEveryCall.record(ServiceMetrics.Operation.WITHDRAW, timeEveryCall.start(), true);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        record();
+    }
+}
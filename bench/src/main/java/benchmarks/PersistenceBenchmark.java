@@ -0,0 +1,83 @@
+package benchmarks;
+
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import org.openjdk.jmh.annotations.*;
+import persistence.BinaryFileHandler;
+import persistence.JsonHandler;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// JsonHandler load/save, with BinaryFileHandler alongside for comparison.
+// Both handlers write into a temp directory, so the tracked account.json and
+// atm_state.json in the working directory are left alone.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+    private static final String CARD = "1234567890";
+
+    private JsonHandler json;
+    private BinaryFileHandler binary;
+    private Path dir;
+    private Account account;
+    private ATMState state;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("atm-bench");
+        json = new JsonHandler(dir);
+        binary = new BinaryFileHandler(dir);
+        account = new Account(CARD, "1234", 500);
+        for (int i = 0; i < 50; i++) account.deposit(10);
+        state = new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500));
+        json.saveAccount(account);
+        json.saveATMState(state);
+        binary.saveAccount(account);
+        binary.saveATMState(state);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public Account jsonLoadAccount() {
+        return json.loadAccount(CARD);
+    }
+
+    @Benchmark
+    public void jsonSaveAccount() {
+        json.saveAccount(account);
+    }
+
+    @Benchmark
+    public ATMState jsonLoadState() {
+        return json.loadATMState();
+    }
+
+    @Benchmark
+    public void jsonSaveState() {
+        json.saveATMState(state);
+    }
+
+    @Benchmark
+    public Account binaryLoadAccount() {
+        return binary.loadAccount(CARD);
+    }
+
+    @Benchmark
+    public void binarySaveAccount() {
+        binary.saveAccount(account);
+    }
+}
@@ -1,11 +1,21 @@
 import services.V2Technician;
 import services.ATMService;
+import services.ATMSession;
+import services.ATMStateCache;
 import services.AuthService;
+import persistence.EventLogDrainer;
 import persistence.JsonHandler;
+import core.EventLog;
+import core.HistoryPage;
+import core.HistoryQuery;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 public class Main {
     private static ATMService atm;
+    private static ATMSession session;
+    private static ATMStateCache stateCache;
+    private static EventLogDrainer eventLog;
     private static Scanner sc;
     private static boolean isLoggedIn = false;
 
@@ -13,7 +23,9 @@ public class Main {
         try {
             sc = new Scanner(System.in);
             JsonHandler persistence = new JsonHandler();
-            atm = new ATMService(persistence);
+            eventLog = new EventLogDrainer(EventLog.global(), Paths.get("atm_events.log"));
+            stateCache = new ATMStateCache(persistence, EventLog.global());
+            atm = new ATMService(persistence, stateCache);
 
             displayWelcomeScreen();
 
@@ -22,7 +34,7 @@ public class Main {
                 if (input.equalsIgnoreCase("1")) {
                     customerLogin();
                 } else if (input.equalsIgnoreCase("2")) {
-                    technicianLogin(persistence);
+                    technicianLogin();
                 } else if (input.equalsIgnoreCase("3")) {
                     System.out.println("Thank you for using our ATM. Goodbye!");
                     break;
@@ -39,6 +51,9 @@ public class Main {
             System.out.println("ERROR: " + e.getMessage());
         } finally {
             if (sc != null) sc.close();
+            // Let queued receipts print before the event log closes
+            if (stateCache != null) stateCache.receipts().flush(2000);
+            try { if (eventLog != null) eventLog.close(); } catch (Exception ignored) {}
         }
     }
 
@@ -63,9 +78,10 @@ public class Main {
         System.out.print("Enter PIN (4 digits): ");
         String pin = sc.nextLine().trim();
 
-        if (atm.authenticate(card, pin)) {
+        session = atm.openSession(card, pin);
+        if (session != null) {
             isLoggedIn = true;
-            atm.checkBalance();
+            session.checkBalance();
         } else {
             System.out.println("Login failed. Please try again.\n");
             displayWelcomeScreen();
@@ -73,7 +89,7 @@ public class Main {
     }
 
     // ================== Technician Login ==================
-    private static void technicianLogin(JsonHandler persistence) {
+    private static void technicianLogin() {
         System.out.println("\n========== TECHNICIAN LOGIN ==========");
         System.out.print("Username: ");
         String username = sc.nextLine().trim();
@@ -84,9 +100,8 @@ public class Main {
         AuthService auth = new AuthService();
         if (auth.authenticate(username, password)) {
             System.out.println("Technician login successful!");
-            // RELOAD state from JSON before entering menu to ensure fresh data
-            atm.reloadState();
-            showTechnicianMenu(persistence);
+            // The technician works on the same in-memory state as the customers
+            showTechnicianMenu();
         }
     }
 
@@ -106,14 +121,15 @@ public class Main {
             String choice = sc.nextLine().trim();
 
             switch (choice) {
-                case "1": atm.checkBalance(); break;
+                case "1": session.checkBalance(); break;
                 case "2": handleWithdraw(); break;
                 case "3": handleDeposit(); break;
                 case "4": handleTransfer(); break;
-                case "5": atm.viewTransactionHistory(); break;
+                case "5": handleHistory(); break;
                 case "6": handlePinChange(); break;
                 case "7":
                     System.out.println("Thank you for using our ATM. Please take your card.");
+                    session.close();
                     isLoggedIn = false;
                     displayWelcomeScreen();
                     break;
@@ -146,7 +162,7 @@ public class Main {
             default: System.out.println("Invalid option."); return;
         }
 
-        atm.withdraw(amount);
+        session.withdraw(amount);
     }
 
     private static void handleDeposit() {
@@ -154,7 +170,7 @@ public class Main {
         System.out.print("Enter deposit amount: $");
         try {
             double amount = Double.parseDouble(sc.nextLine().trim());
-            atm.deposit(amount);
+            session.deposit(amount);
         } catch (NumberFormatException e) {
             System.out.println("Invalid amount.");
         }
@@ -168,22 +184,33 @@ public class Main {
         System.out.print("Transfer Amount: $");
         try {
             double amount = Double.parseDouble(sc.nextLine().trim());
-            atm.transfer(recipientCard, amount);
+            session.transfer(recipientCard, amount);
         } catch (NumberFormatException e) {
             System.out.println("Invalid amount.");
         }
     }
 
+    // Newest transactions first, a page at a time
+    private static void handleHistory() {
+        HistoryPage page = session.viewTransactionHistory(HistoryQuery.newest(ATMService.HISTORY_PAGE_SIZE));
+        while (page.hasMore()) {
+            System.out.print("[M] Older transactions  [Enter] Back: ");
+            if (!sc.nextLine().trim().equalsIgnoreCase("m")) return;
+            page = session.viewTransactionHistory(
+                    HistoryQuery.newest(ATMService.HISTORY_PAGE_SIZE).after(page.getNextCursor()));
+        }
+    }
+
     private static void handlePinChange() {
         System.out.println("\n========== CHANGE PIN ==========");
         System.out.print("Enter new PIN (4 digits): ");
         String newPin = sc.nextLine().trim();
-        atm.changePin(newPin);
+        session.changePin(newPin);
     }
 
     // ================== Technician Menu ==================
-    private static void showTechnicianMenu(JsonHandler persistence) {
-        V2Technician tech = new V2Technician(persistence);
+    private static void showTechnicianMenu() {
+        V2Technician tech = new V2Technician(stateCache, eventLog, atm.getMetrics());
         boolean inTechMenu = true;
 
         while (inTechMenu) {
@@ -195,7 +222,9 @@ public class Main {
             System.out.println("[5] Update Firmware");
             System.out.println("[6] View Event Log");
             System.out.println("[7] Perform Maintenance");
-            System.out.println("[8] Logout");
+            System.out.println("[8] View Service Metrics");
+            System.out.println("[9] Cash Demand Forecast");
+            System.out.println("[10] Logout");
             System.out.print("Select option: ");
 
             String choice = sc.nextLine().trim();
@@ -214,7 +243,9 @@ public class Main {
                 case "5": tech.updateFirmware(); break;
                 case "6": tech.viewEventLog(); break;
                 case "7": tech.performMaintenance(); break;
-                case "8":
+                case "8": tech.viewServiceMetrics(); break;
+                case "9": tech.viewCashForecast(); break;
+                case "10":
                     System.out.println("Technician logged out.");
                     inTechMenu = false;
                     displayWelcomeScreen();
@@ -1,96 +1,199 @@
 package core;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
 
 public class ATMState {
-    // Banknote counts
-    private int count100;
-    private int count50;
-    private int count20;
+    // Banknote counts per cassette, swapped as a whole with compare-and-set (see CashInventory)
+    private static final int[] STANDARD_CASSETTES = {100, 50, 20};
+    private final int[] denominations;
+    // Every amount the cassettes can pay is a multiple of this (the notes' greatest common divisor)
+    private final int noteUnit;
+    private final AtomicReference<CashInventory> cash = new AtomicReference<>();
     private int inkLevel;
 
     private String firmwareVersion;
     private PaperTank paperTank;
     private boolean isOperational;
     private LocalDateTime lastMaintenanceDate;
-    private LocalDateTime lastCashRefillDate;
-    private int totalTransactionsProcessed;
-    private double totalAmountDispensed;
-    private List<ATMEvent> eventLog;
+    private volatile LocalDateTime lastCashRefillDate;
+    private final AtomicLong totalTransactionsProcessed = new AtomicLong();
+    private final DoubleAdder totalAmountDispensed = new DoubleAdder();
+    // Attached by whoever runs the machine (see ATMStateCache); until then a small log of
+    // the state's own, created on first use, so copies made by the stores log nothing
+    private volatile EventLog eventLog;
+    private final Object eventLogLock = new Object();
+    private static final int OWN_EVENT_LOG_CAPACITY = 64;
+    private CashDemand demand;
     private static final double MAXIMUM_CASH_CAPACITY = 50000.0;
     private static final double MINIMUM_CASH_THRESHOLD = 500.0;
 
     public ATMState(int c100, int c50, int c20, String firmwareVersion, PaperTank paperTank) {
-        this.count100 = c100;
-        this.count50 = c50;
-        this.count20 = c20;
+        this(STANDARD_CASSETTES, new int[] {c100, c50, c20}, firmwareVersion, paperTank);
+    }
+
+    // Any number of cassettes; denominations[i] is the note loaded in cassette i
+    public ATMState(int[] denominations, int[] counts, String firmwareVersion, PaperTank paperTank) {
+        if (denominations.length != counts.length) {
+            throw new IllegalArgumentException("One note count per cassette is required");
+        }
+        this.denominations = denominations.clone();
+        this.noteUnit = unitOf(this.denominations);
+        this.cash.set(new CashInventory(this.denominations, counts.clone(), (int) MAXIMUM_CASH_CAPACITY));
+        this.demand = new CashDemand(this.denominations.length);
         this.inkLevel = 15;
         this.firmwareVersion = firmwareVersion;
         this.paperTank = paperTank;
         this.isOperational = true;
         this.lastMaintenanceDate = LocalDateTime.now();
         this.lastCashRefillDate = LocalDateTime.now();
-        this.totalTransactionsProcessed = 0;
-        this.totalAmountDispensed = 0;
-        this.eventLog = new ArrayList<>();
-        logEvent("ATM_INITIALIZED", "System ready with mixed denominations.");
     }
 
 
     public ATMState(double cashAvailable, String firmwareVersion, PaperTank paperTank) {
-        this.count100 = 0;
-        this.count50 = (int) (cashAvailable / 50); // Distribute total cash into $50 notes
-        this.count20 = 0;
+        // Distribute total cash into $50 notes
+        this.denominations = STANDARD_CASSETTES;
+        this.noteUnit = unitOf(denominations);
+        this.cash.set(new CashInventory(denominations, new int[] {0, (int) (cashAvailable / 50), 0},
+                (int) MAXIMUM_CASH_CAPACITY));
+        this.demand = new CashDemand(denominations.length);
         this.firmwareVersion = firmwareVersion;
         this.paperTank = paperTank;
         this.isOperational = true;
         this.lastMaintenanceDate = LocalDateTime.now();
         this.lastCashRefillDate = LocalDateTime.now();
-        this.eventLog = new ArrayList<>();
     }
 
     public double getCashAvailable() {
-        return (count100 * 100) + (count50 * 50) + (count20 * 20);
+        return cash.get().getTotal();
     }
 
-    public boolean dispenseCash(double amount) {
-        int remaining = (int) amount;
-
-        // Validation: Must be a multiple of the smallest note
-        if (remaining % 10 != 0 || remaining > getCashAvailable()) return false;
-
-        // Greedy algorithm to calculate notes
-        int t100 = Math.min(remaining / 100, count100);
-        int remAfter100 = remaining - (t100 * 100);
-
-        int t50 = Math.min(remAfter100 / 50, count50);
-        int remAfter50 = remAfter100 - (t50 * 50);
-
-        int t20 = Math.min(remAfter50 / 20, count20);
-        int remAfter20 = remAfter50 - (t20 * 20);
-
-        // Success only if we reached exactly zero
-        if (remAfter20 == 0) {
-            this.count100 -= t100;
-            this.count50 -= t50;
-            this.count20 -= t20;
-            this.totalAmountDispensed += amount;
-            this.totalTransactionsProcessed++;
-            logEvent("CASH_DISPENSED", String.format("Dispensed: $100x%d, $50x%d, $20x%d", t100, t50, t20));
-            return true;
+    public CashInventory getInventory() {
+        return cash.get();
+    }
+
+    public int[] getDenominations() {
+        return denominations.clone();
+    }
+
+    private static int unitOf(int[] denominations) {
+        int unit = 0;
+        for (int d : denominations) unit = gcd(unit, d);
+        return Math.max(unit, 1);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    // Withdrawals must be a multiple of this to be payable at all
+    public int getNoteUnit() {
+        return noteUnit;
+    }
+
+    // The loaded notes, smallest first, e.g. "$20, $50, and $100"
+    public String describeNotes() {
+        int[] sorted = Arrays.stream(denominations).distinct().sorted().toArray();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0) text.append(sorted.length > 2 ? ", " : " ");
+            if (i > 0 && i == sorted.length - 1) text.append("and ");
+            text.append('$').append(sorted[i]);
         }
-        return false;
+        return text.toString();
+    }
+
+    public boolean dispenseCash(double amount) {
+        return dispenseNotes(amount) != null;
+    }
+
+    // Same as dispenseCash, returning the notes taken from each cassette (null if not dispensed)
+    public int[] dispenseNotes(double amount) {
+        int requested = (int) amount;
+
+        // Validation: must be a whole multiple of what the loaded notes can make up
+        if (requested != amount || requested % noteUnit != 0) return null;
+
+        // Plan against a snapshot and publish the result only if nobody changed it meanwhile,
+        // so two concurrent withdrawals can never take the same notes
+        CashInventory current;
+        int[] notes;
+        do {
+            current = cash.get();
+            if (requested > current.getTotal()) return null;
+            // Fewest-notes plan from the precomputed table; null if not payable exactly
+            notes = current.planner().plan(requested);
+            if (notes == null) return null;
+        } while (!cash.compareAndSet(current, current.minus(notes)));
+
+        this.totalAmountDispensed.add(amount);
+        this.totalTransactionsProcessed.incrementAndGet();
+        demand.recordDispense(notes);
+        logNotes(EventLog.EventType.CASH_DISPENSED, notes);
+        return notes;
+    }
+
+    // Puts back exactly the notes of a dispense that was not completed (e.g. the account
+    // refused the withdrawal) and takes it out of the dispensed totals
+    public void returnNotes(int[] notes) {
+        CashInventory current;
+        do {
+            current = cash.get();
+        } while (!cash.compareAndSet(current, current.plus(notes)));
+        this.totalAmountDispensed.add(-valueOf(notes));
+        this.totalTransactionsProcessed.decrementAndGet();
+        demand.recordReturn(notes);
+        logNotes(EventLog.EventType.CASH_RETURNED, notes);
+    }
+
+    private int valueOf(int[] notes) {
+        int value = 0;
+        for (int i = 0; i < notes.length; i++) value += denominations[i] * notes[i];
+        return value;
+    }
+
+    public boolean canDispense(double amount) {
+        return cash.get().planner().canPay((int) amount);
+    }
+
+    // Packs (denomination, notes) per cassette into the event's long arguments; no allocation.
+    // Machines with more cassettes than fit only log the first ones.
+    private void logNotes(EventLog.EventType type, int[] notes) {
+        int n = Math.min(notes.length, EventLog.MAX_ARGS - 1);
+        log().record(type, n,
+                n > 0 ? packNotes(0, notes) : 0, n > 1 ? packNotes(1, notes) : 0,
+                n > 2 ? packNotes(2, notes) : 0, n > 3 ? packNotes(3, notes) : 0);
     }
+
+    private long packNotes(int cassette, int[] notes) {
+        return ((long) denominations[cassette] << 32) | notes[cassette];
+    }
+
     //note-based deposits
     public boolean addCash(int c100, int c50, int c20) {
-        double newTotal = getCashAvailable() + (c100 * 100) + (c50 * 50) + (c20 * 20);
-        if (newTotal > MAXIMUM_CASH_CAPACITY) return false;
+        int[] notes = notesOf(c100, c50, c20);
+        return notes != null && addWithinCapacity(notes);
+    }
+
+    private int[] notesOf(int c100, int c50, int c20) {
+        int[] notes = new int[denominations.length];
+        if (!mapNotes(notes, 100, c100) || !mapNotes(notes, 50, c50) || !mapNotes(notes, 20, c20)) {
+            return null;
+        }
+        return notes;
+    }
+
+    private boolean addWithinCapacity(int[] notes) {
+        CashInventory current, next;
+        do {
+            current = cash.get();
+            next = current.plus(notes);
+            if (next.getTotal() > MAXIMUM_CASH_CAPACITY) return false;
+        } while (!cash.compareAndSet(current, next));
 
-        this.count100 += c100;
-        this.count50 += c50;
-        this.count20 += c20;
         this.lastCashRefillDate = LocalDateTime.now();
         return true;
     }
@@ -100,7 +203,26 @@ public class ATMState {
         return addCash(0, (int)totalAmount/50, (int)(totalAmount%50)/20);
     }
 
-    public boolean addCashDeposit(double amount) { return addCash(amount); }
+    // Customer deposit: same notes as addCash(double), and counted as demand
+    public boolean addCashDeposit(double amount) {
+        int[] notes = notesOf(0, (int) amount / 50, (int) (amount % 50) / 20);
+        if (notes == null || !addWithinCapacity(notes)) return false;
+        demand.recordDeposit(notes);
+        logNotes(EventLog.EventType.CASH_DEPOSITED, notes);
+        return true;
+    }
+
+    // Hands back the notes of a deposit that was accepted but could not be credited
+    public void returnDeposit(double amount) {
+        int[] notes = notesOf(0, (int) amount / 50, (int) (amount % 50) / 20);
+        if (notes == null) return;
+        CashInventory current;
+        do {
+            current = cash.get();
+        } while (!cash.compareAndSet(current, current.minus(notes)));
+        demand.recordDepositReturn(notes);
+        logNotes(EventLog.EventType.DEPOSIT_RETURNED, notes);
+    }
 
     public int getInkLevel() { return inkLevel; }
     public void setInkLevel(int inkLevel) { this.inkLevel = inkLevel; }
@@ -111,20 +233,38 @@ public class ATMState {
         System.out.println("Firmware: " + firmwareVersion);
         System.out.println("Ink Level: [" + inkLevel + "%]");
         System.out.println("Total Cash: $" + String.format("%.2f", getCashAvailable()));
-        System.out.println("Inventory: [$100 x " + count100 + "] [$50 x " + count50 + "] [$20 x " + count20 + "]");
+        System.out.println("Inventory: [$100 x " + getCount100() + "] [$50 x " + getCount50() + "] [$20 x " + getCount20() + "]");
         System.out.println("Paper Tank: " + paperTank.getPaperCount() + " sheets");
         System.out.println("=====================================\n");
     }
 
-    private void logEvent(String eventType, String details) {
-        eventLog.add(new ATMEvent(eventType, details));
+    public EventLog getEventLog() { return log(); }
+
+    // Record into a specific log, e.g. the machine's (see ATMStateCache)
+    public void attachEventLog(EventLog eventLog) { this.eventLog = eventLog; }
+
+    private EventLog log() {
+        EventLog log = eventLog;
+        if (log != null) return log;
+        synchronized (eventLogLock) {
+            if (eventLog == null) {
+                log = new EventLog(OWN_EVENT_LOG_CAPACITY);
+                log.record(EventLog.EventType.ATM_INITIALIZED);
+                eventLog = log;
+            }
+            return eventLog;
+        }
     }
 
+    public CashDemand getCashDemand() { return demand; }
+
+    // Track demand with a specific window or clock instead of the default hour
+    public void attachCashDemand(CashDemand demand) { this.demand = demand; }
+
     public void addCash(int denomination, int count) {
-        if (denomination == 100) this.count100 += count;
-        else if (denomination == 50) this.count50 += count;
-        else if (denomination == 20) this.count20 += count;
-        logEvent("CASH_ADDED", "Technician added " + count + " notes of $" + denomination);
+        int[] notes = new int[denominations.length];
+        if (mapNotes(notes, denomination, count)) addNotes(notes);
+        log().record(EventLog.EventType.CASH_ADDED, denomination, count, 0, 0, 0);
     }
 
 
@@ -132,29 +272,36 @@ public class ATMState {
         return this.firmwareVersion;
     }
 
-    public static class ATMEvent {
-        private LocalDateTime timestamp;
-        private String eventType;
-        private String details;
-        public ATMEvent(String eventType, String details) {
-            this.timestamp = LocalDateTime.now();
-            this.eventType = eventType;
-            this.details = details;
+    // Puts count notes of the given denomination into its cassette slot; false if no cassette holds it
+    private boolean mapNotes(int[] notes, int denomination, int count) {
+        if (count == 0) return true;
+        for (int i = 0; i < denominations.length; i++) {
+            if (denominations[i] == denomination) {
+                notes[i] += count;
+                return true;
+            }
         }
-        @Override
-        public String toString() { return String.format("[%s] %s - %s", timestamp, eventType, details); }
+        return false;
+    }
+
+    // Technician refill: no capacity check, same as before
+    private void addNotes(int[] notes) {
+        CashInventory current;
+        do {
+            current = cash.get();
+        } while (!cash.compareAndSet(current, current.plus(notes)));
     }
 
     public int getCount100() {
-        return this.count100;
+        return cash.get().getCountOf(100);
     }
 
     public int getCount50() {
-        return this.count50;
+        return cash.get().getCountOf(50);
     }
 
     public int getCount20() {
-        return this.count20;
+        return cash.get().getCountOf(20);
     }
 
 
@@ -162,11 +309,36 @@ public class ATMState {
     public PaperTank getPaperTank() { return paperTank; }
     public boolean isOperational() { return isOperational && !paperTank.isEmpty(); }
     public void setOperational(boolean op) { this.isOperational = op; }
-    public void performMaintenance() { this.lastMaintenanceDate = LocalDateTime.now(); }
-    public void updateFirmware(String v) { this.firmwareVersion = v; }
-    public boolean isLowOnCash() { return getCashAvailable() < MINIMUM_CASH_THRESHOLD; }
+    // The switch alone, without the paper check in isOperational()
+    public boolean isMarkedOperational() { return isOperational; }
+    public LocalDateTime getLastMaintenanceDate() { return lastMaintenanceDate; }
+    public LocalDateTime getLastCashRefillDate() { return lastCashRefillDate; }
+    public long getTotalTransactionsProcessed() { return totalTransactionsProcessed.get(); }
+    public double getTotalAmountDispensed() { return totalAmountDispensed.sum(); }
+
+    // Puts back the dates and running totals of a saved state
+    public void restoreStatistics(LocalDateTime lastMaintenanceDate, LocalDateTime lastCashRefillDate,
+                                  long transactionsProcessed, double amountDispensed) {
+        this.lastMaintenanceDate = lastMaintenanceDate;
+        this.lastCashRefillDate = lastCashRefillDate;
+        this.totalTransactionsProcessed.set(transactionsProcessed);
+        this.totalAmountDispensed.reset();
+        this.totalAmountDispensed.add(amountDispensed);
+    }
+    public void performMaintenance() {
+        this.lastMaintenanceDate = LocalDateTime.now();
+        log().record(EventLog.EventType.MAINTENANCE_PERFORMED);
+    }
+    public void updateFirmware(String v) {
+        this.firmwareVersion = v;
+        log().record(EventLog.EventType.FIRMWARE_UPDATED);
+    }
+    public boolean isLowOnCash() { return isLowCashLevel(getCashAvailable()); }
+    // The same check on a cash total read earlier, e.g. from one CashInventory snapshot
+    public static boolean isLowCashLevel(double cash) { return cash < MINIMUM_CASH_THRESHOLD; }
     public boolean isNearCapacity() { return getCashAvailable() > (MAXIMUM_CASH_CAPACITY * 0.9); }
     public void displayEventLog() {
-        for(ATMEvent e : eventLog) System.out.println(e);
+        EventLog log = log();
+        log.print(log.capacity());
     }
 }
\ No newline at end of file
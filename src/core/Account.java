@@ -1,10 +1,7 @@
 package core;
 
+import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
 
 public class Account {
     private String cardNumber;
@@ -14,13 +11,18 @@ public class Account {
     private double dailyWithdrawalLimit;
     private double dailyWithdrawalUsed;
     private LocalDate lastWithdrawalDate;
-    private List<Transaction> transactionHistory;
+    private final TransactionHistory transactionHistory;
 
     private static final double WITHDRAWAL_FEE = 2.50;
     private static final double TRANSFER_FEE = 1.00;
     private static final double DEFAULT_DAILY_LIMIT = 500.0;
 
     public Account(String cardNumber, String pin, double balance) {
+        this(cardNumber, pin, balance, 0);
+    }
+
+    // historyCapacity > 0 keeps only the newest entries, to bound memory on busy accounts
+    public Account(String cardNumber, String pin, double balance, int historyCapacity) {
         this.cardNumber = cardNumber;
         this.pin = pin;
         this.balance = balance;
@@ -28,7 +30,7 @@ public class Account {
         this.dailyWithdrawalLimit = DEFAULT_DAILY_LIMIT;
         this.dailyWithdrawalUsed = 0;
         this.lastWithdrawalDate = LocalDate.now();
-        this.transactionHistory = new ArrayList<>();
+        this.transactionHistory = new TransactionHistory(historyCapacity);
     }
 
     public boolean validatePin(String inputPin) {
@@ -39,9 +41,19 @@ public class Account {
     public String getPin() { return pin; }
     public double getBalance() { return balance; }
     public LocalDate getCardExpirationDate() { return cardExpirationDate; }
-    public List<Transaction> getTransactionHistory() { return transactionHistory; }
+    public TransactionHistory getTransactionHistory() { return transactionHistory; }
     public double getDailyWithdrawalUsed() { return dailyWithdrawalUsed; }
     public double getDailyWithdrawalLimit() { return dailyWithdrawalLimit; }
+    public LocalDate getLastWithdrawalDate() { return lastWithdrawalDate; }
+
+    // Puts back the card and limit fields of a saved account
+    public void restoreLimits(LocalDate cardExpirationDate, double dailyWithdrawalLimit,
+                              double dailyWithdrawalUsed, LocalDate lastWithdrawalDate) {
+        this.cardExpirationDate = cardExpirationDate;
+        this.dailyWithdrawalLimit = dailyWithdrawalLimit;
+        this.dailyWithdrawalUsed = dailyWithdrawalUsed;
+        this.lastWithdrawalDate = lastWithdrawalDate;
+    }
 
     public boolean isCardExpired() {
         return LocalDate.now().isAfter(cardExpirationDate);
@@ -52,7 +64,7 @@ public class Account {
             throw new IllegalArgumentException("Deposit amount must be positive");
         }
         balance += amount;
-        addTransaction("DEPOSIT", amount, "Deposit successful");
+        addTransaction(TransactionType.DEPOSIT, amount, null);
     }
 
     public boolean withdraw(double amount) {
@@ -76,7 +88,7 @@ public class Account {
 
         balance -= totalAmount;
         dailyWithdrawalUsed += amount;
-        addTransaction("WITHDRAWAL", amount, "Withdrawal fee: $" + WITHDRAWAL_FEE);
+        addTransaction(TransactionType.WITHDRAWAL, amount, null);
         return true;
     }
 
@@ -91,8 +103,7 @@ public class Account {
         }
 
         balance -= totalAmount;
-        addTransaction("TRANSFER_OUT", amount,
-                "Transfer to: " + recipientCard + " | Fee: $" + TRANSFER_FEE);
+        addTransaction(TransactionType.TRANSFER_OUT, amount, recipientCard);
         return true;
     }
 
@@ -101,47 +112,95 @@ public class Account {
             throw new IllegalArgumentException("Transfer amount must be positive");
         }
         balance += amount;
-        addTransaction("TRANSFER_IN", amount, "Transfer from: " + senderCard);
+        addTransaction(TransactionType.TRANSFER_IN, amount, senderCard);
+    }
+
+    // Takes back the newest transaction when it could not be saved, so a retry of the
+    // same request starts from the balance the store still holds
+    public void undoLastTransaction() {
+        int last = transactionHistory.size() - 1;
+        if (last < 0) throw new IllegalStateException("No transaction to undo");
+        double amount = transactionHistory.getAmount(last);
+        switch (transactionHistory.getType(last)) {
+            case WITHDRAWAL:
+                balance += amount + WITHDRAWAL_FEE;
+                dailyWithdrawalUsed -= amount;
+                break;
+            case TRANSFER_OUT:
+                balance += amount + TRANSFER_FEE;
+                break;
+            default:
+                balance -= amount;
+        }
+        transactionHistory.removeLast();
     }
 
-    private void addTransaction(String type, double amount, String details) {
-        transactionHistory.add(new Transaction(type, amount, balance, details));
+    private void addTransaction(TransactionType type, double amount, String counterpart) {
+        transactionHistory.add(type, amount, balance, counterpart);
     }
 
     public void printTransactionHistory(int limit) {
+        printTransactionHistory(HistoryQuery.newest(limit));
+    }
+
+    // Prints one page of history; the returned page carries the cursor for the next one
+    public HistoryPage printTransactionHistory(HistoryQuery query) {
+        HistoryPage page = transactionHistory.query(query);
         System.out.println("\n========== TRANSACTION HISTORY ==========");
-        int count = 0;
-        for (int i = transactionHistory.size() - 1; i >= 0 && count < limit; i--) {
-            System.out.println(transactionHistory.get(i));
-            count++;
+        for (Transaction transaction : page.getEntries()) {
+            System.out.println(transaction);
         }
+        if (page.isEmpty()) System.out.println("No transactions found.");
         System.out.println("=========================================\n");
+        return page;
     }
 
     public void setPin(String newPin) {
         this.pin = newPin;
     }
 
+    public enum TransactionType {
+        DEPOSIT, WITHDRAWAL, TRANSFER_OUT, TRANSFER_IN;
+
+        // Detail text, built only when the history is displayed
+        String details(String counterpart) {
+            switch (this) {
+                case DEPOSIT: return "Deposit successful";
+                case WITHDRAWAL: return "Withdrawal fee: $" + WITHDRAWAL_FEE;
+                case TRANSFER_OUT: return "Transfer to: " + counterpart + " | Fee: $" + TRANSFER_FEE;
+                default: return "Transfer from: " + counterpart;
+            }
+        }
+    }
+
+    // One history entry, read out of the columnar TransactionHistory on request
     public static class Transaction {
-        private String type;
-        private double amount;
-        private double balanceAfter;
-        private LocalDateTime timestamp;
-        private String details;
-
-        public Transaction(String type, double amount, double balanceAfter, String details) {
-            this.type = type;
-            this.amount = amount;
-            this.balanceAfter = balanceAfter;
-            this.timestamp = LocalDateTime.now();
-            this.details = details;
+        private final TransactionType type;
+        private final double amount;
+        private final double balanceAfter;
+        private final long timestamp;
+        private final String counterpart;
+
+        Transaction(TransactionHistory history, int index) {
+            this.type = history.getType(index);
+            this.amount = history.getAmount(index);
+            this.balanceAfter = history.getBalanceAfter(index);
+            this.timestamp = history.getTimestamp(index);
+            this.counterpart = history.getCounterpart(index);
         }
 
+        public TransactionType getType() { return type; }
+        public double getAmount() { return amount; }
+        public double getBalanceAfter() { return balanceAfter; }
+        public long getTimestamp() { return timestamp; }
+        public String getCounterpart() { return counterpart; }
+        public String getDetails() { return type.details(counterpart); }
+
         @Override
         public String toString() {
             return String.format("[%s] %s | Amount: $%.2f | Balance: $%.2f | %s",
-                    timestamp.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                    type, amount, balanceAfter, details);
+                    TransactionHistory.TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(timestamp)),
+                    type, amount, balanceAfter, getDetails());
         }
     }
 }
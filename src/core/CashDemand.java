@@ -0,0 +1,179 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+// Recent demand for each cassette's notes, for forecasting when a cassette runs dry.
+// Every dispense and customer deposit is added to the current time bucket; the window
+// is the last `buckets` buckets (one hour in one-minute buckets by default).
+//
+// Recording runs inside ATMState's lock-free dispense path, so it takes no lock: the
+// counters are atomics and each slot of the ring is tagged with the bucket it holds.
+// The first writer into a new bucket marks the slot as resetting, clears it and tags
+// it; writers that meet the mark wait the few stores that takes. Reads add up the
+// slots whose tag is inside the window, which is cheap at forecast rates.
+//
+// Kept in memory only: after a restart the window fills up again from live traffic.
+public class CashDemand {
+    private static final long DEFAULT_BUCKET_MILLIS = 60_000;
+    private static final int DEFAULT_BUCKETS = 60;
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+    private static final long RESETTING = Long.MIN_VALUE;
+
+    private final int cassettes;
+    private final long bucketMillis;
+    private final int buckets;
+    private final LongSupplier clock;
+    private final long startedAt;
+
+    // Per slot and cassette at [slot * cassettes + cassette]
+    private final AtomicLongArray dispensed;
+    private final AtomicLongArray deposited;
+    // Bucket number held by each slot, or RESETTING while it is being cleared
+    private final AtomicLongArray tags;
+
+    public CashDemand(int cassettes) {
+        this(cassettes, DEFAULT_BUCKET_MILLIS, DEFAULT_BUCKETS, System::currentTimeMillis);
+    }
+
+    public CashDemand(int cassettes, long bucketMillis, int buckets, LongSupplier clock) {
+        if (bucketMillis <= 0 || buckets <= 0) throw new IllegalArgumentException("Window must not be empty");
+        this.cassettes = cassettes;
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        this.clock = clock;
+        this.dispensed = new AtomicLongArray(cassettes * buckets);
+        this.deposited = new AtomicLongArray(cassettes * buckets);
+        this.tags = new AtomicLongArray(buckets);
+        this.startedAt = clock.getAsLong();
+        // Tag every slot with a bucket already outside the window, so none counts as current
+        long first = startedAt / bucketMillis;
+        for (int slot = 0; slot < buckets; slot++) tags.set(slot, first - buckets);
+    }
+
+    // notes[i] = notes taken from cassette i
+    public void recordDispense(int[] notes) {
+        add(dispensed, notes, 1);
+    }
+
+    // notes[i] = notes put into cassette i by a customer (technician refills are not demand)
+    public void recordDeposit(int[] notes) {
+        add(deposited, notes, 1);
+    }
+
+    // notes[i] = notes of cassette i handed back from a deposit that did not go through
+    public void recordDepositReturn(int[] notes) {
+        add(deposited, notes, -1);
+    }
+
+    // notes[i] = notes put back into cassette i after a dispense that did not go through
+    public void recordReturn(int[] notes) {
+        add(dispensed, notes, -1);
+    }
+
+    private void add(AtomicLongArray perSlot, int[] notes, int sign) {
+        long bucket = clock.getAsLong() / bucketMillis;
+        int slot = claim(bucket);
+        if (slot < 0) return;
+        int base = slot * cassettes;
+        for (int i = 0; i < cassettes && i < notes.length; i++) {
+            if (notes[i] != 0) perSlot.addAndGet(base + i, sign * notes[i]);
+        }
+    }
+
+    // Returns the slot holding bucket, clearing it first if it still holds an older one;
+    // -1 if the slot has already moved on to a newer bucket (a caller with a stale clock reading)
+    private int claim(long bucket) {
+        int slot = (int) (bucket % buckets);
+        while (true) {
+            long tag = tags.get(slot);
+            if (tag == bucket) return slot;
+            if (tag > bucket) return -1;
+            if (tag == RESETTING) {
+                Thread.onSpinWait();
+            } else if (tags.compareAndSet(slot, tag, RESETTING)) {
+                int base = slot * cassettes;
+                for (int i = 0; i < cassettes; i++) {
+                    dispensed.set(base + i, 0);
+                    deposited.set(base + i, 0);
+                }
+                tags.set(slot, bucket);
+                return slot;
+            }
+        }
+    }
+
+    // Sum of one cassette over the slots whose bucket is inside the window ending now
+    private long windowTotal(AtomicLongArray perSlot, int cassette, long now) {
+        long bucket = now / bucketMillis;
+        long total = 0;
+        for (int slot = 0; slot < buckets; slot++) {
+            long tag = tags.get(slot);
+            if (tag > bucket - buckets && tag <= bucket) total += perSlot.get(slot * cassettes + cassette);
+        }
+        return total;
+    }
+
+    public long getDispensed(int cassette) {
+        return windowTotal(dispensed, cassette, clock.getAsLong());
+    }
+
+    public long getDeposited(int cassette) {
+        return windowTotal(deposited, cassette, clock.getAsLong());
+    }
+
+    // Notes per hour leaving the cassette, net of deposits, over the window (or since start if shorter)
+    public double getNetRatePerHour(int cassette) {
+        long now = clock.getAsLong();
+        long covered = Math.min(now - startedAt, bucketMillis * buckets);
+        if (covered <= 0) return 0;
+        long net = windowTotal(dispensed, cassette, now) - windowTotal(deposited, cassette, now);
+        return net * MILLIS_PER_HOUR / covered;
+    }
+
+    // Hours until the cassette is empty at the current rate; infinite if it is not being drawn down
+    public double hoursUntilEmpty(int cassette, int notesLeft) {
+        if (notesLeft <= 0) return 0;
+        double rate = getNetRatePerHour(cassette);
+        return rate <= 0 ? Double.POSITIVE_INFINITY : notesLeft / rate;
+    }
+
+    // Hours until the first cassette runs dry
+    public double hoursUntilFirstEmpty(CashInventory inventory) {
+        double earliest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < inventory.cassetteCount() && i < cassettes; i++) {
+            earliest = Math.min(earliest, hoursUntilEmpty(i, inventory.getCount(i)));
+        }
+        return earliest;
+    }
+
+    public long getWindowMillis() {
+        return bucketMillis * buckets;
+    }
+
+    public void printForecast(CashInventory inventory) {
+        System.out.println("\n--- CASH DEMAND FORECAST ---");
+        System.out.printf("Window: last %d min%n", getWindowMillis() / 60_000);
+        System.out.printf("%-8s %7s %10s %10s %10s %12s%n", "Cassette", "Notes", "Out", "In", "Net/hour", "Empty in");
+        for (int i = 0; i < inventory.cassetteCount() && i < cassettes; i++) {
+            double hours = hoursUntilEmpty(i, inventory.getCount(i));
+            System.out.printf("$%-7d %7d %10d %10d %10.1f %12s%n", inventory.getDenomination(i), inventory.getCount(i),
+                    getDispensed(i), getDeposited(i), getNetRatePerHour(i), describe(hours));
+        }
+        double first = hoursUntilFirstEmpty(inventory);
+        if (first == 0) {
+            System.out.println("Refill needed: a cassette is empty.");
+        } else if (first < 24) {
+            System.out.println("Schedule a refill: a cassette runs dry in " + describe(first) + ".");
+        }
+        System.out.println("----------------------------\n");
+    }
+
+    private static String describe(double hours) {
+        if (Double.isInfinite(hours)) return "-";
+        if (hours == 0) return "empty";
+        if (hours < 1) return String.format("%.0f min", hours * 60);
+        if (hours < 48) return String.format("%.1f h", hours);
+        return String.format("%.1f days", hours / 24);
+    }
+}
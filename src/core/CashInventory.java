@@ -0,0 +1,105 @@
+package core;
+
+// Immutable snapshot of the note counts in each cassette.
+// ATMState swaps whole snapshots with compare-and-set, so a dispense or refill
+// either applies completely or not at all, without taking a lock.
+// Each snapshot builds its DispensePlanner on first use, deriving it from an
+// earlier table plus the note changes since, instead of starting over.
+public final class CashInventory {
+    private final int[] denominations; // shared, never modified
+    private final int[] counts;
+    private final int total;
+    private final int planLimit;
+
+    private volatile DispensePlanner planner;
+    // Until the planner is built: the table it derives from and the net note change since
+    // then. Unbuilt snapshots pass these on (adding up the changes), so chains never form.
+    private DispensePlanner source;
+    private int[] delta;
+
+    CashInventory(int[] denominations, int[] counts, int planLimit) {
+        this.denominations = denominations;
+        this.counts = counts;
+        this.planLimit = planLimit;
+        int sum = 0;
+        for (int i = 0; i < counts.length; i++) sum += denominations[i] * counts[i];
+        this.total = sum;
+    }
+
+    public int getTotal() { return total; }
+    public int cassetteCount() { return counts.length; }
+    public int getDenomination(int cassette) { return denominations[cassette]; }
+    public int getCount(int cassette) { return counts[cassette]; }
+
+    public int getCountOf(int denomination) {
+        int cassette = cassetteOf(denomination);
+        return cassette < 0 ? 0 : counts[cassette];
+    }
+
+    int cassetteOf(int denomination) {
+        for (int i = 0; i < denominations.length; i++) {
+            if (denominations[i] == denomination) return i;
+        }
+        return -1;
+    }
+
+    public DispensePlanner planner() {
+        DispensePlanner p = planner;
+        if (p == null) {
+            synchronized (this) {
+                p = planner;
+                if (p == null) {
+                    p = source == null ? DispensePlanner.build(denominations, counts, planLimit) : derive(source, delta);
+                    source = null;
+                    delta = null;
+                    planner = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    private static DispensePlanner derive(DispensePlanner from, int[] delta) {
+        int[] removed = new int[delta.length], added = new int[delta.length];
+        boolean anyAdded = false;
+        for (int i = 0; i < delta.length; i++) {
+            if (delta[i] < 0) removed[i] = -delta[i];
+            else if (delta[i] > 0) { added[i] = delta[i]; anyAdded = true; }
+        }
+        DispensePlanner p = from.withRemoved(removed);
+        return anyAdded ? p.withAdded(added) : p;
+    }
+
+    CashInventory minus(int[] notes) {
+        return child(notes, -1);
+    }
+
+    CashInventory plus(int[] notes) {
+        return child(notes, 1);
+    }
+
+    private CashInventory child(int[] notes, int sign) {
+        int[] next = counts.clone();
+        int[] change = new int[notes.length];
+        for (int i = 0; i < next.length; i++) {
+            next[i] += sign * notes[i];
+            change[i] = sign * notes[i];
+        }
+        CashInventory child = new CashInventory(denominations, next, planLimit);
+
+        DispensePlanner built = planner;
+        if (built != null) {
+            child.source = built.latest();
+            child.delta = change;
+        } else {
+            synchronized (this) {
+                if (source != null) {
+                    child.source = source;
+                    child.delta = change;
+                    for (int i = 0; i < change.length; i++) child.delta[i] += delta[i];
+                }
+            }
+        }
+        return child;
+    }
+}
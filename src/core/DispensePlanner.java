@@ -0,0 +1,136 @@
+package core;
+
+import java.util.Arrays;
+
+// Precomputed dispense plans for one cash inventory.
+// For every amount up to the plan limit the table keeps the payable combination with the
+// fewest notes, so "can I pay X, and with which notes" is a table lookup.
+//
+// The table is a bounded-knapsack pass where each cassette is split into 1, 2, 4, ... note
+// bundles, built for some note counts M; the planner answers for the current counts C <= M.
+//  - Adding notes only adds bundles, so they are applied on top of the table (M and C grow).
+//  - Removing notes only shrinks C. A stored plan that still fits C is still the best one,
+//    because the choice only got smaller; the table is rebuilt for C only when a lookup
+//    lands on a plan that no longer fits.
+public final class DispensePlanner {
+    private static final int UNPAYABLE = Integer.MAX_VALUE;
+
+    private final int[] denominations;
+    private final int[] tableCounts; // M: inventory the table was built for
+    private final int[] counts;      // C: current inventory
+    private final int unit;          // every payable amount is a multiple of this
+    private final int slots;         // amounts 0, unit, 2*unit ... (slots - 1) * unit
+    private final int[] fewest;      // notes needed per amount, UNPAYABLE if none
+    private final int[] plans;       // plans[slot * cassettes + cassette] = notes taken
+
+    private volatile DispensePlanner rebuilt;
+
+    private DispensePlanner(int[] denominations, int[] tableCounts, int[] counts, int unit, int slots,
+                            int[] fewest, int[] plans) {
+        this.denominations = denominations;
+        this.tableCounts = tableCounts;
+        this.counts = counts;
+        this.unit = unit;
+        this.slots = slots;
+        this.fewest = fewest;
+        this.plans = plans;
+    }
+
+    static DispensePlanner build(int[] denominations, int[] counts, int maxAmount) {
+        int unit = 0;
+        for (int d : denominations) unit = gcd(unit, d);
+        int slots = maxAmount / unit + 1;
+        int[] fewest = new int[slots];
+        Arrays.fill(fewest, UNPAYABLE);
+        fewest[0] = 0;
+
+        DispensePlanner planner = new DispensePlanner(denominations, counts.clone(), counts.clone(), unit, slots,
+                fewest, new int[slots * denominations.length]);
+        for (int i = 0; i < denominations.length; i++) {
+            planner.addBundles(i, counts[i]);
+        }
+        return planner;
+    }
+
+    // The planner to derive from: the rebuilt table if a lookup already had to rebuild
+    DispensePlanner latest() {
+        DispensePlanner r = rebuilt;
+        return r != null ? r : this;
+    }
+
+    // Exact: the new notes are just more bundles on top of the existing table
+    DispensePlanner withAdded(int[] added) {
+        DispensePlanner planner = new DispensePlanner(denominations, sum(tableCounts, added, 1),
+                sum(counts, added, 1), unit, slots, fewest.clone(), plans.clone());
+        for (int i = 0; i < added.length; i++) {
+            planner.addBundles(i, added[i]);
+        }
+        return planner;
+    }
+
+    // O(cassettes): the table is shared, only the current counts change
+    DispensePlanner withRemoved(int[] removed) {
+        return new DispensePlanner(denominations, tableCounts, sum(counts, removed, -1),
+                unit, slots, fewest, plans);
+    }
+
+    // 0/1 knapsack over bundles of 1, 2, 4, ... notes (plus the remainder) from one cassette
+    private void addBundles(int cassette, int notes) {
+        int n = denominations.length;
+        int step = denominations[cassette] / unit;
+        for (int bundle = 1; notes > 0; bundle <<= 1) {
+            int take = Math.min(bundle, notes);
+            notes -= take;
+            int shift = take * step;
+            for (int slot = slots - 1; slot >= shift; slot--) {
+                int from = slot - shift;
+                if (fewest[from] == UNPAYABLE || fewest[from] + take >= fewest[slot]) continue;
+                fewest[slot] = fewest[from] + take;
+                System.arraycopy(plans, from * n, plans, slot * n, n);
+                plans[slot * n + cassette] += take;
+            }
+        }
+    }
+
+    public boolean canPay(int amount) {
+        return plan(amount) != null;
+    }
+
+    // Notes to take from each cassette, or null if the amount cannot be paid exactly
+    public int[] plan(int amount) {
+        if (amount < 0 || amount % unit != 0 || amount / unit >= slots) return null;
+        int slot = amount / unit;
+        if (fewest[slot] == UNPAYABLE) return null; // not payable even with M >= C
+        int n = denominations.length;
+        for (int i = 0; i < n; i++) {
+            if (plans[slot * n + i] > counts[i]) return rebuilt().plan(amount);
+        }
+        int[] notes = new int[n];
+        System.arraycopy(plans, slot * n, notes, 0, n);
+        return notes;
+    }
+
+    private DispensePlanner rebuilt() {
+        DispensePlanner r = rebuilt;
+        if (r == null) {
+            synchronized (this) {
+                r = rebuilt;
+                if (r == null) {
+                    r = build(denominations, counts, (slots - 1) * unit);
+                    rebuilt = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    private static int[] sum(int[] a, int[] b, int sign) {
+        int[] out = a.clone();
+        for (int i = 0; i < out.length; i++) out[i] += sign * b[i];
+        return out;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,148 @@
+package core;
+
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-size, lock-free ring buffer of machine events.
+// An event is a type plus a few long arguments written into preallocated arrays, so
+// recording one allocates nothing; the text is only produced when the event is shown
+// or written to disk. When the ring is full the oldest events are overwritten.
+//
+// Writers claim a sequence number, fill the slot and then publish the sequence for that
+// slot. Readers check the published sequence before and after copying a slot, and skip
+// it if it was overwritten in between.
+public final class EventLog {
+    public static final int MAX_ARGS = 5;
+    private static final int ARGS = 2;
+    private static final int RECORD_LONGS = ARGS + MAX_ARGS; // timestamp, type, args
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final EventLog GLOBAL = new EventLog(DEFAULT_CAPACITY);
+
+    public enum EventType {
+        ATM_INITIALIZED, CASH_DISPENSED, CASH_ADDED, FIRMWARE_UPDATED, MAINTENANCE_PERFORMED,
+        CASH_RETURNED, CASH_DEPOSITED, DEPOSIT_RETURNED;
+
+        private static final EventType[] VALUES = values();
+
+        // Appends the detail text for a record; its arguments start at ARGS
+        void describe(long[] r, StringBuilder out) {
+            switch (this) {
+                case ATM_INITIALIZED:
+                    out.append("System ready with mixed denominations.");
+                    break;
+                case CASH_DISPENSED:
+                case CASH_RETURNED:
+                case CASH_DEPOSITED:
+                case DEPOSIT_RETURNED:
+                    // first argument = cassettes recorded, then (denomination << 32 | notes) per cassette
+                    out.append(this == CASH_DISPENSED ? "Dispensed: " : this == CASH_RETURNED ? "Returned: "
+                            : this == CASH_DEPOSITED ? "Deposited: " : "Deposit returned: ");
+                    for (int i = 0; i < r[ARGS]; i++) {
+                        long packed = r[ARGS + 1 + i];
+                        if (i > 0) out.append(", ");
+                        out.append('$').append(packed >>> 32).append('x').append((int) packed);
+                    }
+                    break;
+                case CASH_ADDED:
+                    out.append("Technician added ").append(r[ARGS + 1]).append(" notes of $").append(r[ARGS]);
+                    break;
+                case FIRMWARE_UPDATED:
+                    out.append("Firmware updated.");
+                    break;
+                default:
+                    out.append("Maintenance performed.");
+            }
+        }
+    }
+
+    private final int mask;
+    private final long[] records;
+    private final AtomicLongArray published; // sequence + 1 of the event held by each slot
+    private final AtomicLong next = new AtomicLong();
+
+    public EventLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.records = new long[size * RECORD_LONGS];
+        this.published = new AtomicLongArray(size);
+    }
+
+    // Process-wide log, used by the ATM that Main runs
+    public static EventLog global() {
+        return GLOBAL;
+    }
+
+    public int capacity() { return mask + 1; }
+
+    // Sequence number the next event will get; everything below it has been claimed
+    public long nextSequence() { return next.get(); }
+
+    public void record(EventType type, long a0, long a1, long a2, long a3, long a4) {
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & mask);
+        int base = slot * RECORD_LONGS;
+        published.set(slot, 0); // being rewritten
+        VarHandle.storeStoreFence();
+        records[base] = System.currentTimeMillis();
+        records[base + 1] = type.ordinal();
+        records[base + 2] = a0;
+        records[base + 3] = a1;
+        records[base + 4] = a2;
+        records[base + 5] = a3;
+        records[base + 6] = a4;
+        published.setRelease(slot, seq + 1);
+    }
+
+    public void record(EventType type) {
+        record(type, 0, 0, 0, 0, 0);
+    }
+
+    // Copies event seq into out (timestamp, type, args...). Returns false if the event is
+    // not published yet or was already overwritten by a newer one.
+    public boolean read(long seq, long[] out) {
+        int slot = (int) (seq & mask);
+        if (published.getAcquire(slot) != seq + 1) return false;
+        System.arraycopy(records, slot * RECORD_LONGS, out, 0, RECORD_LONGS);
+        VarHandle.acquireFence();
+        return published.getAcquire(slot) == seq + 1;
+    }
+
+    public static long[] newRecordBuffer() {
+        return new long[RECORD_LONGS];
+    }
+
+    // Appends "type - details" for a record copied out by read(); the timestamp is left to the caller
+    public static void describe(long[] record, StringBuilder out) {
+        EventType type = EventType.VALUES[(int) record[1]];
+        out.append(type).append(" - ");
+        type.describe(record, out);
+    }
+
+    public static long timestampOf(long[] record) {
+        return record[0];
+    }
+
+    // The newest events still in the ring, oldest first, as display lines
+    public void print(int max) {
+        long end = next.get();
+        long begin = Math.max(0, Math.max(end - capacity(), end - max));
+        long[] record = newRecordBuffer();
+        StringBuilder line = new StringBuilder();
+        for (long seq = begin; seq < end; seq++) {
+            if (!read(seq, record)) continue;
+            line.setLength(0);
+            line.append('[').append(TIMESTAMP_FORMAT.format(LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(timestampOf(record)), ZoneId.systemDefault())));
+            line.append("] ");
+            describe(record, line);
+            System.out.println(line);
+        }
+    }
+}
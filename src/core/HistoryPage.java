@@ -0,0 +1,20 @@
+package core;
+
+import java.util.List;
+
+// One page of a HistoryQuery, in the query's order. The next cursor is null on the last page.
+public class HistoryPage {
+    private final List<Account.Transaction> entries;
+    private final String nextCursor;
+
+    HistoryPage(List<Account.Transaction> entries, String nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Account.Transaction> getEntries() { return entries; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != null; }
+    public int size() { return entries.size(); }
+    public boolean isEmpty() { return entries.isEmpty(); }
+}
@@ -0,0 +1,73 @@
+package core;
+
+import java.util.EnumSet;
+
+// What to read from a TransactionHistory: a time range [from, to) in epoch millis,
+// which transaction types, the page size and the direction. Pages are chained with
+// the cursor of the previous HistoryPage, which stays valid while new entries arrive.
+//
+//   HistoryQuery.newest(10)
+//   HistoryQuery.oldest(50).between(from, to).types(TransactionType.WITHDRAWAL).after(page.getNextCursor())
+public class HistoryQuery {
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private EnumSet<Account.TransactionType> types = EnumSet.allOf(Account.TransactionType.class);
+    private long cursor = -1;
+    private final int limit;
+    private final boolean newestFirst;
+
+    private HistoryQuery(int limit, boolean newestFirst) {
+        if (limit < 1) throw new IllegalArgumentException("Page size must be positive");
+        this.limit = limit;
+        this.newestFirst = newestFirst;
+    }
+
+    public static HistoryQuery newest(int limit) {
+        return new HistoryQuery(limit, true);
+    }
+
+    public static HistoryQuery oldest(int limit) {
+        return new HistoryQuery(limit, false);
+    }
+
+    public HistoryQuery between(long fromMillis, long toMillis) {
+        this.from = fromMillis;
+        this.to = toMillis;
+        return this;
+    }
+
+    public HistoryQuery types(Account.TransactionType first, Account.TransactionType... rest) {
+        this.types = EnumSet.of(first, rest);
+        return this;
+    }
+
+    // Continue after the page that returned this cursor; null starts from the beginning
+    public HistoryQuery after(String cursor) {
+        if (cursor == null) {
+            this.cursor = -1;
+            return this;
+        }
+        try {
+            this.cursor = Long.parseLong(cursor, 36);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+        }
+        if (this.cursor < 0) throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+        return this;
+    }
+
+    static String cursorOf(long sequence) {
+        return Long.toString(sequence, 36);
+    }
+
+    public long getFrom() { return from; }
+    public long getTo() { return to; }
+    public EnumSet<Account.TransactionType> getTypes() { return EnumSet.copyOf(types); }
+    public int getLimit() { return limit; }
+    public boolean isNewestFirst() { return newestFirst; }
+
+    boolean hasCursor() { return cursor >= 0; }
+    long cursor() { return cursor; }
+    boolean includes(Account.TransactionType type) { return types.contains(type); }
+    boolean allTypes() { return types.size() == Account.TransactionType.values().length; }
+}
@@ -0,0 +1,246 @@
+package core;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Transaction history kept column by column in primitive arrays instead of one object
+// per entry: timestamps in epoch millis, amounts in cents and the type as an enum ordinal.
+// Detail text is only built when an entry is rendered.
+// With a capacity set, the history is a ring buffer that keeps the newest entries.
+//
+// Queries (see HistoryQuery) find their time range by binary search on the sorted
+// timestamps, and their types through a per-type index of entry sequence numbers, so a
+// page costs a few binary searches plus its own length however long the history is.
+public class TransactionHistory {
+    private static final int INITIAL_SIZE = 16;
+    static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final Account.TransactionType[] TYPES = Account.TransactionType.values();
+
+    private long[] timestamps;     // epoch millis, never decreasing
+    private long[] amounts;        // cents
+    private long[] balances;       // cents, balance after the transaction
+    private byte[] types;          // Account.TransactionType ordinal
+    private String[] counterparts; // the other card for transfers, otherwise null
+
+    private final int capacity;    // 0 = unbounded
+    private int start;             // slot of the oldest entry
+    private int size;
+    private long appended;         // entries ever appended; the oldest kept has sequence appended - size
+
+    // Per type, the sequence numbers of its entries in typeIndex[t][indexHead[t] .. indexTail[t]),
+    // oldest first. Entries pushed out of the ring are dropped from the head.
+    private final long[][] typeIndex = new long[TYPES.length][];
+    private final int[] indexHead = new int[TYPES.length];
+    private final int[] indexTail = new int[TYPES.length];
+
+    public TransactionHistory() {
+        this(0);
+    }
+
+    public TransactionHistory(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("History capacity cannot be negative");
+        this.capacity = capacity;
+        int initial = capacity > 0 ? Math.min(capacity, INITIAL_SIZE) : INITIAL_SIZE;
+        timestamps = new long[initial];
+        amounts = new long[initial];
+        balances = new long[initial];
+        types = new byte[initial];
+        counterparts = new String[initial];
+    }
+
+    void add(Account.TransactionType type, double amount, double balanceAfter, String counterpart) {
+        append(System.currentTimeMillis(), type, toCents(amount), toCents(balanceAfter), counterpart);
+    }
+
+    // Raw append, also used to restore a saved history
+    public void append(long timestamp, Account.TransactionType type, long amountCents, long balanceCents,
+                       String counterpart) {
+        // Keep timestamps sorted even if the clock steps back
+        if (size > 0) timestamp = Math.max(timestamp, timestamps[slot(size - 1)]);
+
+        int slot;
+        if (capacity > 0 && size == capacity) {
+            // Full ring: overwrite the oldest entry, which is also the oldest of its type
+            slot = start;
+            indexHead[types[slot]]++;
+            start = (start + 1) % capacity;
+        } else {
+            if (size == timestamps.length) grow();
+            slot = slot(size);
+            size++;
+        }
+        timestamps[slot] = timestamp;
+        amounts[slot] = amountCents;
+        balances[slot] = balanceCents;
+        types[slot] = (byte) type.ordinal();
+        counterparts[slot] = counterpart;
+        index(type.ordinal(), appended++);
+    }
+
+    // Drops the newest entry, e.g. one whose transaction could not be saved. A full ring
+    // does not get back the oldest entry that append pushed out.
+    void removeLast() {
+        if (size == 0) throw new IllegalStateException("History is empty");
+        int slot = slot(size - 1);
+        indexTail[types[slot]]--;
+        counterparts[slot] = null;
+        size--;
+        appended--;
+    }
+
+    private void index(int type, long sequence) {
+        long[] sequences = typeIndex[type];
+        if (sequences == null) {
+            sequences = typeIndex[type] = new long[INITIAL_SIZE];
+        } else if (indexTail[type] == sequences.length) {
+            int live = indexTail[type] - indexHead[type];
+            if (indexHead[type] >= sequences.length / 2) {
+                // Mostly evicted entries: slide the live ones down instead of growing
+                System.arraycopy(sequences, indexHead[type], sequences, 0, live);
+                indexHead[type] = 0;
+                indexTail[type] = live;
+            } else {
+                sequences = typeIndex[type] = Arrays.copyOf(sequences, sequences.length * 2);
+            }
+        }
+        sequences[indexTail[type]++] = sequence;
+    }
+
+    private void grow() {
+        int length = timestamps.length * 2;
+        if (capacity > 0) length = Math.min(length, capacity);
+        timestamps = Arrays.copyOf(timestamps, length);
+        amounts = Arrays.copyOf(amounts, length);
+        balances = Arrays.copyOf(balances, length);
+        types = Arrays.copyOf(types, length);
+        counterparts = Arrays.copyOf(counterparts, length);
+    }
+
+    // Entry i (0 = oldest) to its array slot. The ring only wraps once the arrays are at
+    // full capacity, so before that start is 0 and slots are in order.
+    private int slot(int i) {
+        int s = start + i;
+        return s < timestamps.length ? s : s - timestamps.length;
+    }
+
+    public int size() { return size; }
+    public int getCapacity() { return capacity; }
+
+    public long getTimestamp(int i) { return timestamps[slot(i)]; }
+    public Account.TransactionType getType(int i) { return TYPES[types[slot(i)]]; }
+    public long getAmountCents(int i) { return amounts[slot(i)]; }
+    public long getBalanceCents(int i) { return balances[slot(i)]; }
+    public double getAmount(int i) { return amounts[slot(i)] / 100.0; }
+    public double getBalanceAfter(int i) { return balances[slot(i)] / 100.0; }
+    public String getCounterpart(int i) { return counterparts[slot(i)]; }
+
+    public String getDetails(int i) {
+        return getType(i).details(getCounterpart(i));
+    }
+
+    // Same line format the history has always been printed in
+    public String format(int i) {
+        return String.format("[%s] %s | Amount: $%.2f | Balance: $%.2f | %s",
+                TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(getTimestamp(i))),
+                getType(i), getAmount(i), getBalanceAfter(i), getDetails(i));
+    }
+
+    public Account.Transaction get(int i) {
+        return new Account.Transaction(this, i);
+    }
+
+    public HistoryPage query(HistoryQuery query) {
+        long first = appended - size;
+        // Entries [lo, hi) are in the time range and on the right side of the cursor
+        int lo = firstAtOrAfter(query.getFrom());
+        int hi = Math.max(lo, firstAtOrAfter(query.getTo()));
+        if (query.hasCursor()) {
+            long cursor = query.cursor() - first;
+            if (query.isNewestFirst()) hi = (int) Math.max(lo, Math.min(hi, cursor));
+            else lo = (int) Math.min(hi, Math.max(lo, cursor + 1));
+        }
+
+        int limit = query.getLimit();
+        List<Account.Transaction> entries = new ArrayList<>(Math.min(limit, hi - lo));
+        long last = -1;
+        boolean more;
+        if (query.allTypes()) {
+            int n = Math.min(limit, hi - lo);
+            for (int k = 0; k < n; k++) {
+                int i = query.isNewestFirst() ? hi - 1 - k : lo + k;
+                entries.add(get(i));
+                last = first + i;
+            }
+            more = hi - lo > limit;
+        } else {
+            last = queryByType(query, first + lo, first + hi, entries, first);
+            more = last >= 0;
+        }
+        return new HistoryPage(entries, more ? HistoryQuery.cursorOf(last) : null);
+    }
+
+    // Merges the index lists of the wanted types over sequences [from, to). Returns the
+    // sequence of the last entry taken if more match than fit, otherwise -1.
+    private long queryByType(HistoryQuery query, long from, long to, List<Account.Transaction> out, long first) {
+        boolean newestFirst = query.isNewestFirst();
+        int[] position = new int[TYPES.length];
+        for (int t = 0; t < TYPES.length; t++) {
+            if (typeIndex[t] == null || !query.includes(TYPES[t])) {
+                position[t] = -1;
+                continue;
+            }
+            int p = lowerBound(typeIndex[t], indexHead[t], indexTail[t], newestFirst ? to : from);
+            position[t] = newestFirst ? p - 1 : p;
+        }
+        long taken = -1;
+        while (true) {
+            int pick = -1;
+            long best = 0;
+            for (int t = 0; t < TYPES.length; t++) {
+                int p = position[t];
+                if (p < indexHead[t] || p >= indexTail[t]) continue;
+                long sequence = typeIndex[t][p];
+                if (sequence < from || sequence >= to) continue;
+                if (pick < 0 || (newestFirst ? sequence > best : sequence < best)) {
+                    pick = t;
+                    best = sequence;
+                }
+            }
+            if (pick < 0) return -1;
+            if (out.size() == query.getLimit()) return taken;
+            out.add(get((int) (best - first)));
+            taken = best;
+            position[pick] += newestFirst ? -1 : 1;
+        }
+    }
+
+    // First entry at or after the given time
+    private int firstAtOrAfter(long millis) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[slot(mid)] < millis) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int lowerBound(long[] sorted, int from, int to, long key) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+}
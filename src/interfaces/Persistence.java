@@ -12,4 +12,9 @@ public interface Persistence {
     ATMState loadATMState();
 
     void saveATMState(ATMState state);
+
+    // False for stores that keep only card, PIN and balance and drop the transaction history
+    default boolean storesHistory() {
+        return true;
+    }
 }
@@ -0,0 +1,314 @@
+package loadgen;
+
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import interfaces.Persistence;
+import metrics.LatencyHistogram;
+import persistence.BinaryFileHandler;
+import persistence.CachingPersistence;
+import persistence.InMemoryPersistence;
+import persistence.IndexedAccountStore;
+import services.ATMService;
+import services.ATMSession;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless traffic driver for ATMService. Simulated customers open a session, do one
+// operation from the workload mix and log out, and the latency of every login and
+// operation goes into a histogram per thread; the histograms are merged for the report.
+// Works over any Persistence; console output of the service is discarded while running.
+//
+// Usage: java loadgen.LoadGenerator [store=memory|binary:<dir>|indexed:<file>] [cache=<accounts>]
+//        [workload settings]
+// cache puts a CachingPersistence of that size in front of the store. See Workload for the settings.
+// There is no json store: JsonHandler keeps a single account.json, so every card would share one
+// account and the run would overwrite the working directory's file.
+public class LoadGenerator {
+    public static final String PIN = "1234";
+    private static final long FIRST_CARD = 4_000_000_000L;
+    private static final long POISON = Long.MIN_VALUE;
+
+    private final ATMService service;
+    private final Workload workload;
+    private final double[] popularity; // cumulative Zipf weights, by account
+    private final int[] operationCutoffs;
+    private final Workload.Operation[] operations = Workload.Operation.values();
+
+    // Merged results, filled in when run() finishes
+    private final Stats[] results = newStats();
+    private final Stats logins = new Stats();
+    private final Stats endToEnd = new Stats();
+    private long elapsedNanos;
+    private int backlog;
+
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder declined = new LongAdder();
+
+        void record(long nanos, boolean ok) {
+            latency.record(nanos);
+            if (!ok) declined.increment();
+        }
+
+        void add(Stats other) {
+            latency.add(other.latency);
+            declined.add(other.declined.sum());
+        }
+    }
+
+    public LoadGenerator(Persistence persistence, Workload workload) {
+        this(new ATMService(persistence), workload);
+    }
+
+    public LoadGenerator(ATMService service, Workload workload) {
+        this.service = service;
+        this.workload = workload;
+
+        popularity = new double[workload.getAccounts()];
+        double sum = 0;
+        for (int i = 0; i < popularity.length; i++) {
+            sum += 1 / Math.pow(i + 1, workload.getSkew());
+            popularity[i] = sum;
+        }
+        operationCutoffs = new int[operations.length];
+        int cutoff = 0;
+        for (Workload.Operation op : operations) {
+            cutoff += workload.getWeight(op);
+            operationCutoffs[op.ordinal()] = cutoff;
+        }
+    }
+
+    public static String cardOf(int account) {
+        return String.valueOf(FIRST_CARD + account);
+    }
+
+    // Saves the workload's accounts, all with the same PIN and balance
+    public static void seedAccounts(Persistence persistence, Workload workload) {
+        for (int i = 0; i < workload.getAccounts(); i++) {
+            persistence.saveAccount(new Account(cardOf(i), PIN, workload.getStartingBalance()));
+        }
+    }
+
+    public void run() throws InterruptedException {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            if (workload.getMode() == Workload.Mode.CLOSED) runClosed();
+            else runOpen();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private void runClosed() throws InterruptedException {
+        int clients = workload.getClients();
+        Stats[][] perClient = new Stats[clients][];
+        Stats[] clientLogins = new Stats[clients];
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        long deadline = start + workload.getSeconds() * 1_000_000_000L;
+        long thinkNanos = (long) (workload.getThinkMillis() * 1_000_000);
+
+        for (int c = 0; c < clients; c++) {
+            Stats[] stats = perClient[c] = newStats();
+            Stats login = clientLogins[c] = new Stats();
+            SplittableRandom random = new SplittableRandom(workload.getSeed() + c);
+            threads[c] = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    execute(random, stats, login, null, 0);
+                    if (thinkNanos > 0) LockSupport.parkNanos(exponential(random, thinkNanos));
+                }
+            }, "loadgen-client-" + c);
+            threads[c].start();
+        }
+        for (Thread t : threads) t.join();
+        elapsedNanos = System.nanoTime() - start;
+
+        for (int c = 0; c < clients; c++) merge(perClient[c], clientLogins[c], null);
+    }
+
+    private void runOpen() throws InterruptedException {
+        int workers = workload.getClients();
+        BlockingQueue<Long> arrivals = new LinkedBlockingQueue<>();
+        Stats[][] perWorker = new Stats[workers][];
+        Stats[] workerLogins = new Stats[workers];
+        Stats[] workerEndToEnd = new Stats[workers];
+        Thread[] threads = new Thread[workers];
+
+        for (int w = 0; w < workers; w++) {
+            Stats[] stats = perWorker[w] = newStats();
+            Stats login = workerLogins[w] = new Stats();
+            Stats total = workerEndToEnd[w] = new Stats();
+            SplittableRandom random = new SplittableRandom(workload.getSeed() + w);
+            threads[w] = new Thread(() -> {
+                try {
+                    while (true) {
+                        long arrival = arrivals.take();
+                        if (arrival == POISON) return;
+                        execute(random, stats, login, total, arrival);
+                    }
+                } catch (InterruptedException ignored) {}
+            }, "loadgen-worker-" + w);
+            threads[w].start();
+        }
+
+        // Arrivals follow the schedule, not the ATM: a slow ATM builds a queue instead of
+        // slowing the traffic down, and the wait counts towards end-to-end latency
+        SplittableRandom random = new SplittableRandom(workload.getSeed() - 1);
+        long meanGap = (long) (1e9 / workload.getRate());
+        long start = System.nanoTime();
+        long deadline = start + workload.getSeconds() * 1_000_000_000L;
+        for (long next = start; next < deadline; next += exponential(random, meanGap)) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            arrivals.put(next);
+        }
+        backlog = arrivals.size();
+        for (int w = 0; w < workers; w++) arrivals.put(POISON);
+        for (Thread t : threads) t.join();
+        elapsedNanos = System.nanoTime() - start;
+
+        for (int w = 0; w < workers; w++) merge(perWorker[w], workerLogins[w], workerEndToEnd[w]);
+    }
+
+    // One customer visit: log in, do one operation, log out
+    private void execute(SplittableRandom random, Stats[] stats, Stats login, Stats total, long arrival) {
+        Workload.Operation op = pickOperation(random);
+        int account = pickAccount(random);
+
+        long t0 = System.nanoTime();
+        ATMSession session = service.openSession(cardOf(account), PIN);
+        long t1 = System.nanoTime();
+        login.record(t1 - t0, session != null);
+        if (session == null) return;
+
+        boolean ok;
+        try {
+            switch (op) {
+                case WITHDRAW:
+                    ok = session.withdraw(20 * (1 + random.nextInt(5)));
+                    break;
+                case DEPOSIT:
+                    ok = session.deposit(20 * (1 + random.nextInt(5)));
+                    break;
+                case TRANSFER:
+                    int other = random.nextInt(workload.getAccounts() - 1);
+                    if (other >= account) other++;
+                    ok = session.transfer(cardOf(other), 1 + random.nextInt(100));
+                    break;
+                default:
+                    session.checkBalance();
+                    ok = true;
+            }
+        } finally {
+            session.close();
+        }
+        long t2 = System.nanoTime();
+        stats[op.ordinal()].record(t2 - t1, ok);
+        if (total != null) total.record(t2 - arrival, ok);
+    }
+
+    private Workload.Operation pickOperation(SplittableRandom random) {
+        int r = random.nextInt(operationCutoffs[operationCutoffs.length - 1]);
+        for (int i = 0; i < operationCutoffs.length; i++) {
+            if (r < operationCutoffs[i]) return operations[i];
+        }
+        return operations[operations.length - 1];
+    }
+
+    private int pickAccount(SplittableRandom random) {
+        double r = random.nextDouble() * popularity[popularity.length - 1];
+        int i = Arrays.binarySearch(popularity, r);
+        return i >= 0 ? i : Math.min(-i - 1, popularity.length - 1);
+    }
+
+    private static long exponential(SplittableRandom random, long mean) {
+        return (long) (-mean * Math.log(1 - random.nextDouble()));
+    }
+
+    private static Stats[] newStats() {
+        Stats[] stats = new Stats[Workload.Operation.values().length];
+        for (int i = 0; i < stats.length; i++) stats[i] = new Stats();
+        return stats;
+    }
+
+    private void merge(Stats[] stats, Stats login, Stats total) {
+        for (int i = 0; i < stats.length; i++) results[i].add(stats[i]);
+        logins.add(login);
+        if (total != null) endToEnd.add(total);
+    }
+
+    // ---- results ----
+
+    public long getCount(Workload.Operation op) { return results[op.ordinal()].latency.getCount(); }
+    public long getDeclined(Workload.Operation op) { return results[op.ordinal()].declined.sum(); }
+    public LatencyHistogram getLatency(Workload.Operation op) { return results[op.ordinal()].latency; }
+    public LatencyHistogram getLoginLatency() { return logins.latency; }
+
+    public void printReport(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.println("\n========== LOAD TEST REPORT ==========");
+        out.println(workload);
+        out.printf("elapsed %.1fs%n", seconds);
+        out.printf("%-12s %9s %9s %10s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "declined", "ops/s", "mean(ms)", "p50", "p90", "p99", "p99.9", "max");
+        row(out, "login", logins, seconds);
+        for (Workload.Operation op : operations) row(out, op.name().toLowerCase(), results[op.ordinal()], seconds);
+        if (workload.getMode() == Workload.Mode.OPEN) {
+            row(out, "end-to-end", endToEnd, seconds);
+            out.println("queued at end of schedule: " + backlog);
+        }
+        out.println("======================================\n");
+    }
+
+    private static void row(PrintStream out, String name, Stats stats, double seconds) {
+        LatencyHistogram h = stats.latency;
+        out.printf("%-12s %9d %9d %10.0f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                name, h.getCount(), stats.declined.sum(), h.getCount() / seconds, h.getMean() / 1e6,
+                h.getPercentile(0.50) / 1e6, h.getPercentile(0.90) / 1e6, h.getPercentile(0.99) / 1e6,
+                h.getPercentile(0.999) / 1e6, h.getMax() / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Workload workload = Workload.parse(args);
+        String store = "memory";
+        int cacheSize = 0;
+        for (String arg : args) {
+            if (arg.startsWith("store=")) store = arg.substring("store=".length());
+            if (arg.startsWith("cache=")) cacheSize = Integer.parseInt(arg.substring("cache=".length()));
+        }
+
+        Persistence persistence;
+        if (store.equals("memory")) {
+            // Plenty of paper so a long run is not cut short by the receipt printer
+            persistence = new InMemoryPersistence(new ATMState(150, 200, 400, "v1.0.0", new PaperTank(Integer.MAX_VALUE)));
+        } else if (store.startsWith("binary:")) {
+            persistence = new BinaryFileHandler(Paths.get(store.substring("binary:".length())));
+        } else if (store.startsWith("indexed:")) {
+            persistence = new IndexedAccountStore(Paths.get(store.substring("indexed:".length())), workload.getAccounts());
+        } else {
+            System.out.println("ERROR: Unknown store " + store);
+            return;
+        }
+
+        System.out.println("Seeding " + workload.getAccounts() + " accounts...");
+        seedAccounts(persistence, workload);
+        CachingPersistence cache = cacheSize > 0 ? new CachingPersistence(persistence, cacheSize) : null;
+        LoadGenerator generator = new LoadGenerator(cache != null ? cache : persistence, workload);
+        System.out.println("Running " + workload);
+        generator.run();
+        generator.printReport(System.out);
+        if (cache != null) {
+            cache.close();
+            cache.printStats();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package loadgen;
+
+// What the load generator runs: how many accounts, which operations in what mix,
+// how popularity is skewed across the accounts, and how traffic arrives.
+//
+// Closed loop: `clients` simulated customers, each doing one operation, waiting a
+// random think time (exponential, mean thinkMillis) and doing the next.
+// Open loop: operations arrive at `rate` per second (Poisson) whatever the ATM's
+// speed, and are served by `clients` threads; latency then includes time queued.
+//
+// Settings can be given as key=value arguments, e.g.
+//   accounts=10000 mix=50,20,10,20 skew=1.1 mode=open rate=2000 seconds=30
+public class Workload {
+    public enum Mode { CLOSED, OPEN }
+
+    public enum Operation { WITHDRAW, DEPOSIT, TRANSFER, BALANCE }
+
+    private int accounts = 1000;
+    private double startingBalance = 1_000_000;
+    // Relative weights for withdraw, deposit, transfer, balance
+    private int[] mix = {40, 30, 10, 20};
+    // Zipf exponent: 0 = every account equally likely, around 1 = a few very busy accounts
+    private double skew = 0.99;
+    private Mode mode = Mode.CLOSED;
+    private int clients = 16;
+    private double thinkMillis = 0;
+    private double rate = 1000;
+    private int seconds = 10;
+    private long seed = 42;
+
+    public static Workload parse(String[] args) {
+        Workload w = new Workload();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value but got " + arg);
+            String key = arg.substring(0, eq), value = arg.substring(eq + 1);
+            switch (key) {
+                case "accounts": w.accounts(Integer.parseInt(value)); break;
+                case "balance": w.startingBalance(Double.parseDouble(value)); break;
+                case "mix": {
+                    String[] parts = value.split(",");
+                    if (parts.length != 4) throw new IllegalArgumentException("mix needs 4 weights: withdraw,deposit,transfer,balance");
+                    w.mix(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                            Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+                    break;
+                }
+                case "skew": w.skew(Double.parseDouble(value)); break;
+                case "mode": w.mode(Mode.valueOf(value.toUpperCase())); break;
+                case "clients": w.clients(Integer.parseInt(value)); break;
+                case "think": w.thinkMillis(Double.parseDouble(value)); break;
+                case "rate": w.rate(Double.parseDouble(value)); break;
+                case "seconds": w.seconds(Integer.parseInt(value)); break;
+                case "seed": w.seed(Long.parseLong(value)); break;
+                default: // left for the caller, e.g. the store to use
+            }
+        }
+        return w;
+    }
+
+    public Workload accounts(int accounts) {
+        if (accounts < 2) throw new IllegalArgumentException("At least 2 accounts are needed for transfers");
+        this.accounts = accounts;
+        return this;
+    }
+
+    public Workload startingBalance(double startingBalance) { this.startingBalance = startingBalance; return this; }
+
+    public Workload mix(int withdraw, int deposit, int transfer, int balance) {
+        if (withdraw < 0 || deposit < 0 || transfer < 0 || balance < 0 || withdraw + deposit + transfer + balance == 0) {
+            throw new IllegalArgumentException("Mix weights must be non-negative and not all zero");
+        }
+        this.mix = new int[] {withdraw, deposit, transfer, balance};
+        return this;
+    }
+
+    public Workload skew(double skew) { this.skew = skew; return this; }
+    public Workload mode(Mode mode) { this.mode = mode; return this; }
+    public Workload clients(int clients) { this.clients = clients; return this; }
+    public Workload thinkMillis(double thinkMillis) { this.thinkMillis = thinkMillis; return this; }
+    public Workload rate(double rate) { this.rate = rate; return this; }
+    public Workload seconds(int seconds) { this.seconds = seconds; return this; }
+    public Workload seed(long seed) { this.seed = seed; return this; }
+
+    public int getAccounts() { return accounts; }
+    public double getStartingBalance() { return startingBalance; }
+    public int getWeight(Operation op) { return mix[op.ordinal()]; }
+    public double getSkew() { return skew; }
+    public Mode getMode() { return mode; }
+    public int getClients() { return clients; }
+    public double getThinkMillis() { return thinkMillis; }
+    public double getRate() { return rate; }
+    public int getSeconds() { return seconds; }
+    public long getSeed() { return seed; }
+
+    @Override
+    public String toString() {
+        return "accounts=" + accounts + " mix=" + mix[0] + "," + mix[1] + "," + mix[2] + "," + mix[3]
+                + " skew=" + skew + " mode=" + mode.name().toLowerCase() + " clients=" + clients
+                + (mode == Mode.OPEN ? " rate=" + rate + "/s" : " think=" + thinkMillis + "ms")
+                + " seconds=" + seconds;
+    }
+}
@@ -0,0 +1,84 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear latency histogram in the style of HdrHistogram: values are grouped by
+// power of two, and each power of two is split into 32 equal buckets, so any recorded
+// value is known to within about 3%. Recording is a couple of shifts and a few atomic
+// adds, with no locks and no allocation; the total and sum are LongAdders, so threads
+// recording at the same time do not fight over one counter. The memory use is fixed
+// (about 15KB) whatever the range of values.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        total.increment();
+        sum.add(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { }
+    }
+
+    // Bucket of a value: below 32 every value has its own bucket, above that the top
+    // five bits after the leading one pick the bucket within its power of two
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    // Highest value that falls into a bucket
+    static long highestValueAt(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = (index >> SUB_BITS) - 1;
+        long base = (long) (SUB_COUNT + (index & (SUB_COUNT - 1))) << shift;
+        return base + (1L << shift) - 1;
+    }
+
+    public long getCount() { return total.sum(); }
+    public long getMax() { return max.get(); }
+
+    public double getMean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    // Value at or below which the given fraction of recordings fall, e.g. 0.99.
+    // Exact to the bucket width; never reports more than the largest recording.
+    public long getPercentile(double fraction) {
+        // Walk the buckets, not total: a concurrent record may have bumped one but not the other
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValueAt(i), max.get());
+        }
+        return max.get();
+    }
+
+    // Adds another histogram's recordings to this one, e.g. to combine per-thread histograms
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        long m, o = other.max.get();
+        while (o > (m = max.get()) && !max.compareAndSet(m, o)) { }
+    }
+}
@@ -0,0 +1,113 @@
+package metrics;
+
+import org.json.JSONObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Call counts, failures and latency for the ATM's operations, cheap enough to leave on
+// in the withdraw path. Nothing is locked: counts go into a LongAdder per operation,
+// which spreads contended increments over cells and folds them on read, and latency
+// goes into lock-free LatencyHistograms. The memory used does not depend on how many
+// threads have ever called in.
+//
+// Counts are exact. Latency is measured on a random sample of calls (1 in 16 by
+// default): reading the clock twice costs more than the rest of the bookkeeping
+// together, and a sample is plenty for percentiles.
+public class ServiceMetrics {
+    public enum Operation {
+        AUTHENTICATE, WITHDRAW, DEPOSIT, TRANSFER, PERSISTENCE_LOAD, PERSISTENCE_SAVE, RECEIPT
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final int DEFAULT_SAMPLE_EVERY = 16;
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private final LatencyHistogram[] latency = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] failures = new LongAdder[OPERATIONS.length];
+    private final int sampleMask;
+    private final long startedAt = System.currentTimeMillis();
+
+    public ServiceMetrics() {
+        this(DEFAULT_SAMPLE_EVERY);
+    }
+
+    // sampleEvery: time one call in this many (a power of two; 1 = time every call)
+    public ServiceMetrics(int sampleEvery) {
+        if (sampleEvery < 1 || Integer.bitCount(sampleEvery) != 1) {
+            throw new IllegalArgumentException("Sample rate must be a power of two");
+        }
+        this.sampleMask = sampleEvery - 1;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latency[i] = new LatencyHistogram();
+            calls[i] = new LongAdder();
+            failures[i] = new LongAdder();
+        }
+    }
+
+    // Usage: long start = metrics.start(); ... metrics.record(op, start, ok);
+    public long start() {
+        if (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) return NOT_TIMED;
+        return System.nanoTime();
+    }
+
+    public void record(Operation op, long start, boolean ok) {
+        calls[op.ordinal()].increment();
+        if (!ok) failures[op.ordinal()].increment();
+        if (start != NOT_TIMED) latency[op.ordinal()].record(System.nanoTime() - start);
+    }
+
+    public int getSampleEvery() { return sampleMask + 1; }
+    public long getCount(Operation op) { return calls[op.ordinal()].sum(); }
+    public long getFailures(Operation op) { return failures[op.ordinal()].sum(); }
+    public LatencyHistogram getLatency(Operation op) { return latency[op.ordinal()]; }
+
+    public void printStatus() {
+        System.out.println("\n--- SERVICE METRICS ---");
+        System.out.printf("Up %d s, latency sampled on 1 in %d calls%n",
+                (System.currentTimeMillis() - startedAt) / 1000, getSampleEvery());
+        System.out.printf("%-17s %8s %8s %9s %9s %9s %9s%n", "Operation", "Count", "Failed", "Mean(ms)", "p50", "p99", "Max");
+        for (Operation op : OPERATIONS) {
+            LatencyHistogram h = getLatency(op);
+            System.out.printf("%-17s %8d %8d %9.3f %9.3f %9.3f %9.3f%n", op, getCount(op), getFailures(op),
+                    h.getMean() / 1e6, h.getPercentile(0.5) / 1e6, h.getPercentile(0.99) / 1e6, h.getMax() / 1e6);
+        }
+        System.out.println("-----------------------\n");
+    }
+
+    // One object per operation, latencies in microseconds
+    public JSONObject toJson() {
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("timestamp", System.currentTimeMillis());
+        snapshot.put("startedAt", startedAt);
+        snapshot.put("sampleEvery", getSampleEvery());
+        JSONObject operations = new JSONObject();
+        for (Operation op : OPERATIONS) {
+            LatencyHistogram h = getLatency(op);
+            JSONObject o = new JSONObject();
+            o.put("count", getCount(op));
+            o.put("timed", h.getCount());
+            o.put("failures", getFailures(op));
+            o.put("meanMicros", h.getMean() / 1e3);
+            o.put("p50Micros", h.getPercentile(0.50) / 1e3);
+            o.put("p90Micros", h.getPercentile(0.90) / 1e3);
+            o.put("p99Micros", h.getPercentile(0.99) / 1e3);
+            o.put("p999Micros", h.getPercentile(0.999) / 1e3);
+            o.put("maxMicros", h.getMax() / 1e3);
+            operations.put(op.name().toLowerCase(), o);
+        }
+        snapshot.put("operations", operations);
+        return snapshot;
+    }
+
+    // Written to a temp file and renamed, so readers never see half a snapshot
+    public void writeSnapshot(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, toJson().toString(2));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,242 @@
+package persistence;
+
+import core.ATMState;
+import core.CashInventory;
+import core.Account;
+import core.PaperTank;
+import core.TransactionHistory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Versioned binary format for complete Account and ATMState snapshots.
+// Unlike the JSON files this keeps everything: card dates, daily limit usage, the full
+// transaction history and the note count of every cassette.
+//
+// Every record starts with MAGIC, a kind byte and the format version. Numbers are
+// fixed-width big-endian, strings are a short length plus UTF-8 bytes (-1 = null), dates
+// are epoch days and date-times UTC epoch seconds plus nanos (Long.MIN_VALUE = null).
+// Encoding writes straight into the caller's buffer; ASCII strings are copied char by
+// char, so only decoding allocates, and only the objects it returns.
+//
+// Account, version 1:
+//   card, pin, balance, expiry, daily limit, daily used, last withdrawal date,
+//   history capacity, history size, then per entry:
+//   timestamp, type ordinal, amount cents, balance cents, counterpart
+// ATMState, version 1:
+//   cassettes, (denomination, count) per cassette, firmware, paper, ink, operational,
+//   last maintenance, last refill, transactions processed, amount dispensed
+public final class BinaryCodec {
+    public static final int MAGIC = 0x41544D42; // "ATMB"
+    public static final byte VERSION = 1;
+    private static final byte ACCOUNT = 'A';
+    private static final byte STATE = 'S';
+    private static final int HEADER = 4 + 1 + 1;
+    private static final int HISTORY_ENTRY = 8 + 1 + 8 + 8;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final Account.TransactionType[] TYPES = Account.TransactionType.values();
+
+    private BinaryCodec() {}
+
+    // ---- Account ----
+
+    public static int accountSize(Account account) {
+        TransactionHistory history = account.getTransactionHistory();
+        int size = HEADER + stringSize(account.getCardNumber()) + stringSize(account.getPin())
+                + 8 + 8 + 8 + 8 + 8 + 4 + 4;
+        for (int i = 0; i < history.size(); i++) {
+            size += HISTORY_ENTRY + stringSize(history.getCounterpart(i));
+        }
+        return size;
+    }
+
+    public static ByteBuffer encode(Account account) {
+        ByteBuffer out = ByteBuffer.allocate(accountSize(account));
+        encodeAccount(account, out);
+        return out.flip();
+    }
+
+    // Throws BufferOverflowException if out has less than accountSize() bytes left
+    public static void encodeAccount(Account account, ByteBuffer out) {
+        putHeader(out, ACCOUNT);
+        putString(out, account.getCardNumber());
+        putString(out, account.getPin());
+        out.putDouble(account.getBalance());
+        putDate(out, account.getCardExpirationDate());
+        out.putDouble(account.getDailyWithdrawalLimit());
+        out.putDouble(account.getDailyWithdrawalUsed());
+        putDate(out, account.getLastWithdrawalDate());
+
+        TransactionHistory history = account.getTransactionHistory();
+        out.putInt(history.getCapacity());
+        out.putInt(history.size());
+        for (int i = 0; i < history.size(); i++) {
+            out.putLong(history.getTimestamp(i));
+            out.put((byte) history.getType(i).ordinal());
+            out.putLong(history.getAmountCents(i));
+            out.putLong(history.getBalanceCents(i));
+            putString(out, history.getCounterpart(i));
+        }
+    }
+
+    public static Account decodeAccount(ByteBuffer in) {
+        checkHeader(in, ACCOUNT);
+        String card = getString(in);
+        String pin = getString(in);
+        double balance = in.getDouble();
+        LocalDate expiry = getDate(in);
+        double limit = in.getDouble();
+        double used = in.getDouble();
+        LocalDate lastWithdrawal = getDate(in);
+
+        Account account = new Account(card, pin, balance, in.getInt());
+        account.restoreLimits(expiry, limit, used, lastWithdrawal);
+        TransactionHistory history = account.getTransactionHistory();
+        int entries = in.getInt();
+        for (int i = 0; i < entries; i++) {
+            long timestamp = in.getLong();
+            Account.TransactionType type = TYPES[in.get()];
+            long amount = in.getLong();
+            long balanceAfter = in.getLong();
+            history.append(timestamp, type, amount, balanceAfter, getString(in));
+        }
+        return account;
+    }
+
+    // ---- ATMState ----
+
+    public static int stateSize(ATMState state) {
+        return HEADER + 1 + state.getInventory().cassetteCount() * 8 + stringSize(state.getFirmwareVersion())
+                + 4 + 4 + 1 + 12 + 12 + 8 + 8;
+    }
+
+    public static ByteBuffer encode(ATMState state) {
+        ByteBuffer out = ByteBuffer.allocate(stateSize(state));
+        encodeState(state, out);
+        return out.flip();
+    }
+
+    public static void encodeState(ATMState state, ByteBuffer out) {
+        putHeader(out, STATE);
+        // One snapshot, so the counts are consistent with each other
+        CashInventory cash = state.getInventory();
+        out.put((byte) cash.cassetteCount());
+        for (int i = 0; i < cash.cassetteCount(); i++) {
+            out.putInt(cash.getDenomination(i));
+            out.putInt(cash.getCount(i));
+        }
+        putString(out, state.getFirmwareVersion());
+        out.putInt(state.getPaperTank().getPaperCount());
+        out.putInt(state.getInkLevel());
+        out.put((byte) (state.isMarkedOperational() ? 1 : 0));
+        putDateTime(out, state.getLastMaintenanceDate());
+        putDateTime(out, state.getLastCashRefillDate());
+        out.putLong(state.getTotalTransactionsProcessed());
+        out.putDouble(state.getTotalAmountDispensed());
+    }
+
+    public static ATMState decodeState(ByteBuffer in) {
+        checkHeader(in, STATE);
+        int cassettes = in.get();
+        int[] denominations = new int[cassettes];
+        int[] counts = new int[cassettes];
+        for (int i = 0; i < cassettes; i++) {
+            denominations[i] = in.getInt();
+            counts[i] = in.getInt();
+        }
+        String firmware = getString(in);
+        ATMState state = new ATMState(denominations, counts, firmware, new PaperTank(in.getInt()));
+        state.setInkLevel(in.getInt());
+        state.setOperational(in.get() != 0);
+        LocalDateTime lastMaintenance = getDateTime(in);
+        LocalDateTime lastRefill = getDateTime(in);
+        state.restoreStatistics(lastMaintenance, lastRefill, in.getLong(), in.getDouble());
+        return state;
+    }
+
+    // ---- fields ----
+
+    private static void putHeader(ByteBuffer out, byte kind) {
+        out.putInt(MAGIC);
+        out.put(kind);
+        out.put(VERSION);
+    }
+
+    private static void checkHeader(ByteBuffer in, byte kind) {
+        if (in.getInt() != MAGIC) throw new IllegalArgumentException("Not an ATM binary record");
+        byte found = in.get();
+        if (found != kind) {
+            throw new IllegalArgumentException("Expected record kind " + (char) kind + " but found " + (char) found);
+        }
+        byte version = in.get();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported record version " + version);
+    }
+
+    private static int stringSize(String s) {
+        if (s == null) return 2;
+        return 2 + (isAscii(s) ? s.length() : s.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        if (s == null) {
+            out.putShort((short) -1);
+        } else if (isAscii(s)) {
+            out.putShort((short) s.length());
+            for (int i = 0; i < s.length(); i++) out.put((byte) s.charAt(i));
+        } else {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) utf8.length);
+            out.put(utf8);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) return null;
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    private static boolean isAscii(String s) {
+        if (s.length() > Short.MAX_VALUE) throw new IllegalArgumentException("String too long to encode");
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    private static void putDate(ByteBuffer out, LocalDate date) {
+        out.putLong(date == null ? NO_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate getDate(ByteBuffer in) {
+        long day = in.getLong();
+        return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    private static void putDateTime(ByteBuffer out, LocalDateTime time) {
+        if (time == null) {
+            out.putLong(NO_DATE);
+            out.putInt(0);
+        } else {
+            out.putLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.putInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer in) {
+        long seconds = in.getLong();
+        int nanos = in.getInt();
+        return seconds == NO_DATE ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
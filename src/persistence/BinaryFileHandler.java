@@ -0,0 +1,126 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Persistence in the BinaryCodec format: one <card>.acct file per account plus
+// atm_state.bin, all in one directory. Records are encoded into and read from a
+// reused buffer, and written with the same temp-file-and-rename as JsonHandler.
+// Anything not saved here yet is loaded from the fallback store (the JSON files
+// by default), so an existing installation carries over on first save.
+// Card numbers become file names, so only plain card numbers (1-19 digits) are accepted.
+public class BinaryFileHandler implements Persistence {
+    private static final String ACCOUNT_SUFFIX = ".acct";
+    private static final String ATM_FILE = "atm_state.bin";
+    private static final int INITIAL_BUFFER = 4096;
+
+    private final Path dir;
+    private final Persistence fallback;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER);
+
+    public BinaryFileHandler(Path dir) throws IOException {
+        this(dir, new JsonHandler());
+    }
+
+    public BinaryFileHandler(Path dir, Persistence fallback) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.fallback = fallback;
+    }
+
+    private static boolean isValidCard(String card) {
+        if (card == null || card.isEmpty() || card.length() > 19) return false;
+        for (int i = 0; i < card.length(); i++) {
+            char c = card.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    private Path accountFile(String card) {
+        if (!isValidCard(card)) throw new IllegalArgumentException("Invalid card number: " + card);
+        return dir.resolve(card + ACCOUNT_SUFFIX);
+    }
+
+    @Override
+    public synchronized Account loadAccount(String card) {
+        if (!isValidCard(card)) {
+            System.out.println("ERROR: Invalid card number.");
+            return null;
+        }
+        Path file = accountFile(card);
+        if (!Files.exists(file)) return fallback.loadAccount(card);
+        try {
+            return BinaryCodec.decodeAccount(read(file));
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not read account " + card + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void saveAccount(Account account) {
+        Path file = accountFile(account.getCardNumber());
+        try {
+            ByteBuffer out = buffer(BinaryCodec.accountSize(account));
+            BinaryCodec.encodeAccount(account, out);
+            write(file, out.flip());
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not save account - " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized ATMState loadATMState() {
+        Path file = dir.resolve(ATM_FILE);
+        if (!Files.exists(file)) return fallback.loadATMState();
+        try {
+            return BinaryCodec.decodeState(read(file));
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not read ATM state - " + e.getMessage());
+            return fallback.loadATMState();
+        }
+    }
+
+    @Override
+    public synchronized void saveATMState(ATMState state) {
+        try {
+            ByteBuffer out = buffer(BinaryCodec.stateSize(state));
+            BinaryCodec.encodeState(state, out);
+            write(dir.resolve(ATM_FILE), out.flip());
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not save ATM state - " + e.getMessage());
+        }
+    }
+
+    // The shared buffer, cleared and grown to at least size bytes
+    private ByteBuffer buffer(int size) {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        }
+        return buffer.clear();
+    }
+
+    private ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = buffer((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) { }
+            return in.flip();
+        }
+    }
+
+    private void write(Path target, ByteBuffer data) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) channel.write(data);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
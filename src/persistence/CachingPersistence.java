@@ -0,0 +1,334 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.*;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded account cache in front of another Persistence, with write-behind.
+//
+// Loads are served from memory when the card is cached. Saves only mark the entry
+// dirty and bump its version; a background thread writes dirty accounts to the store
+// every flush interval, so ten saves of a busy account between two flushes cost one
+// write. A write is done for the version seen when it started; if the account was
+// saved again meanwhile it stays dirty for the next round.
+//
+// A save returns before the account reaches the store, so this gives up the durable
+// acknowledgement of the store behind it: over JournalHandler, whose saves return only
+// once fsynced, a crash can still lose the last flush interval of saves. Put it in front
+// of a store only where that window is acceptable.
+//
+// When the cache is full, a new card is only admitted if it has been asked for more
+// often than the least recently used cached card (TinyLFU: the counts are kept
+// approximately, in a small sketch that halves itself now and then so old popularity
+// fades). One-off lookups therefore cannot push out the accounts that are busy all
+// day. Dirty accounts are never evicted before they are written.
+//
+// The cached Account objects are handed out as they are, so callers share them, as
+// sessions already do through ATMService; ATM state calls go straight to the store.
+// The flusher never reads a live Account: a save encodes the account while its caller
+// still holds the account's lock, and the flush writes that image, so the store
+// cannot get a balance from one withdrawal and the history of another.
+public class CachingPersistence implements Persistence, AutoCloseable {
+    private static final long DEFAULT_FLUSH_MILLIS = 200;
+
+    private final Persistence delegate;
+    private final int capacity;
+    // Access order: the eldest entry is the least recently used
+    private final LinkedHashMap<String, Cached> entries;
+    // Dirty entries by card, waiting for the next flush
+    private final Map<String, Cached> dirty = new LinkedHashMap<>();
+    private final FrequencySketch sketch;
+    private final ScheduledExecutorService flusher;
+    // One flush at a time, so a flush cannot write an older image after a later flush's newer one
+    private final Object flushLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    private static final class Cached {
+        final Account account;
+        long version;
+        long writtenVersion;
+        // The account as of its last save (BinaryCodec form); null until first saved
+        ByteBuffer image;
+
+        Cached(Account account, long version, long writtenVersion) {
+            this.account = account;
+            this.version = version;
+            this.writtenVersion = writtenVersion;
+        }
+
+        boolean isDirty() { return version != writtenVersion; }
+    }
+
+    public CachingPersistence(Persistence delegate, int capacity) {
+        this(delegate, capacity, DEFAULT_FLUSH_MILLIS);
+    }
+
+    // flushMillis = 0: no background thread, dirty accounts are written by flush() only
+    public CachingPersistence(Persistence delegate, int capacity, long flushMillis) {
+        if (capacity < 1) throw new IllegalArgumentException("Cache capacity must be positive");
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(Math.min(capacity, 1 << 16), 0.75f, true);
+        this.sketch = new FrequencySketch(capacity);
+        if (flushMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "account-write-behind");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public boolean storesHistory() {
+        return delegate.storesHistory();
+    }
+
+    @Override
+    public Account loadAccount(String cardNumber) {
+        synchronized (this) {
+            sketch.increment(cardNumber);
+            Cached entry = entries.get(cardNumber);
+            if (entry != null) {
+                hits.increment();
+                return entry.account;
+            }
+        }
+        misses.increment();
+        // Read outside the lock; if another thread cached the card meanwhile, use its copy
+        Account loaded = delegate.loadAccount(cardNumber);
+        if (loaded == null) return null;
+        synchronized (this) {
+            Cached entry = entries.get(cardNumber);
+            if (entry != null) return entry.account;
+            admit(cardNumber, new Cached(loaded, 0, 0));
+            return loaded;
+        }
+    }
+
+    @Override
+    public void saveAccount(Account account) {
+        saves.increment();
+        String card = account.getCardNumber();
+        // Taken here, where the caller still holds the account, for the flusher to write
+        ByteBuffer image = BinaryCodec.encode(account);
+        synchronized (this) {
+            sketch.increment(card);
+            Cached entry = entries.get(card);
+            if (entry != null && entry.account == account) {
+                entry.version++;
+                entry.image = image;
+                dirty.put(card, entry);
+                return;
+            }
+            Cached saved = entry != null
+                    // A different object for a cached card replaces it
+                    ? new Cached(account, entry.version + 1, entry.writtenVersion)
+                    : new Cached(account, 1, 0);
+            saved.image = image;
+            if (entry != null) entries.put(card, saved);
+            if (entry != null || admit(card, saved)) {
+                dirty.put(card, saved);
+                return;
+            }
+        }
+        // Not admitted: write through
+        delegate.saveAccount(account);
+        writes.increment();
+    }
+
+    // Caller holds this. Makes room if needed; false if the card is not popular enough to get in.
+    private boolean admit(String card, Cached entry) {
+        if (entries.size() >= capacity) {
+            Iterator<Map.Entry<String, Cached>> it = entries.entrySet().iterator();
+            Map.Entry<String, Cached> victim = null;
+            while (it.hasNext()) {
+                Map.Entry<String, Cached> e = it.next();
+                if (!e.getValue().isDirty()) {
+                    victim = e;
+                    break;
+                }
+            }
+            if (victim != null) {
+                if (sketch.frequency(card) <= sketch.frequency(victim.getKey())) {
+                    rejections.increment();
+                    return false;
+                }
+                it.remove();
+                evictions.increment();
+            }
+            // Everything dirty: let the cache run over until the next flush
+        }
+        entries.put(card, entry);
+        return true;
+    }
+
+    @Override
+    public ATMState loadATMState() {
+        return delegate.loadATMState();
+    }
+
+    @Override
+    public void saveATMState(ATMState state) {
+        delegate.saveATMState(state);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.out.println("ERROR: Account write-behind failed - " + e.getMessage());
+        }
+    }
+
+    // Writes every dirty account to the store
+    public void flush() {
+        synchronized (flushLock) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() {
+        Cached[] batch;
+        long[] versions;
+        ByteBuffer[] images;
+        synchronized (this) {
+            batch = dirty.values().toArray(new Cached[0]);
+            dirty.clear();
+            versions = new long[batch.length];
+            images = new ByteBuffer[batch.length];
+            for (int i = 0; i < batch.length; i++) {
+                versions[i] = batch[i].version;
+                images[i] = batch[i].image;
+            }
+        }
+        for (int i = 0; i < batch.length; i++) {
+            Cached entry = batch[i];
+            try {
+                delegate.saveAccount(BinaryCodec.decodeAccount(images[i].duplicate()));
+                writes.increment();
+            } catch (RuntimeException e) {
+                // Keep this and the rest of the batch for the next round
+                synchronized (this) {
+                    for (int j = i; j < batch.length; j++) dirty.putIfAbsent(batch[j].account.getCardNumber(), batch[j]);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                entry.writtenVersion = Math.max(entry.writtenVersion, versions[i]);
+                // Saved again while being written: write again next round
+                if (entry.isDirty()) dirty.putIfAbsent(entry.account.getCardNumber(), entry);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    // ---- statistics ----
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized int getDirtyCount() { return dirty.size(); }
+    public int getCapacity() { return capacity; }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getRejections() { return rejections.sum(); }
+    public long getSaves() { return saves.sum(); }
+    public long getWrites() { return writes.sum(); }
+
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void printStats() {
+        System.out.println("\n--- ACCOUNT CACHE ---");
+        System.out.printf("Entries: %d / %d (%d dirty)%n", size(), capacity, getDirtyCount());
+        System.out.printf("Hit rate: %.1f%% (%d hits, %d misses)%n", getHitRate() * 100, getHits(), getMisses());
+        System.out.printf("Evictions: %d, admissions refused: %d%n", getEvictions(), getRejections());
+        System.out.printf("Saves: %d, written: %d%n", getSaves(), getWrites());
+        System.out.println("---------------------\n");
+    }
+
+    // Count-min sketch of 4-bit counters: four counters per key, the estimate is the
+    // smallest. After 10 x capacity increments every counter is halved.
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+        private final long[] table; // 16 counters of 4 bits per long
+        private final int mask;
+        private final int resetAfter;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int counters = Integer.highestOneBit(Math.max(16, Math.min(capacity, 1 << 24)) * 4 - 1) << 1;
+            this.table = new long[counters / 16];
+            this.mask = counters - 1;
+            this.resetAfter = (int) Math.min(Integer.MAX_VALUE, 10L * capacity);
+        }
+
+        private int indexOf(String key, int row) {
+            long h = (key.hashCode() + SEEDS[row]) * SEEDS[row];
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        void increment(String key) {
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int i = indexOf(key, row);
+                int shift = (i & 15) << 2;
+                long word = table[i >>> 4];
+                if (((word >>> shift) & 15) < 15) {
+                    table[i >>> 4] = word + (1L << shift);
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAfter) halve();
+        }
+
+        int frequency(String key) {
+            int min = 15;
+            for (int row = 0; row < DEPTH; row++) {
+                int i = indexOf(key, row);
+                min = Math.min(min, (int) ((table[i >>> 4] >>> ((i & 15) << 2)) & 15));
+            }
+            return min;
+        }
+
+        private void halve() {
+            for (int i = 0; i < table.length; i++) {
+                // Shift each 4-bit counter right by one, dropping the bit that moves in from its neighbour
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+    }
+}
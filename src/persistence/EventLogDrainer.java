@@ -0,0 +1,202 @@
+package persistence;
+
+import core.EventLog;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Copies events from an EventLog ring to a rolling text file on a background thread,
+// so the machine never waits on disk to log an event. Lines are formatted into reused
+// buffers; when the file grows past its limit it is rolled to .1, .2, ...
+// If the ring laps the drainer, the number of lost events is written instead.
+// Hosts with many logs (see ATMFleet) pass one scheduler for all their drainers
+// instead of starting a thread per log.
+public class EventLogDrainer implements AutoCloseable {
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // Drainers that share a scheduler usually come in large numbers, each with a quiet log
+    private static final int SHARED_BUFFER_BYTES = 8 * 1024;
+    private static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    private static final int DEFAULT_ARCHIVES = 3;
+    private static final long DEFAULT_INTERVAL_MILLIS = 500;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final EventLog log;
+    private final Path path;
+    private final long maxBytes;
+    private final int archives;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final ScheduledFuture<?> task;
+    private boolean closed;
+
+    private FileChannel channel;
+    private long cursor; // next event sequence to write
+    private final long[] record = EventLog.newRecordBuffer();
+    private final StringBuilder line = new StringBuilder(128);
+    private final ByteBuffer out;
+    // Events arrive in time order, so the formatted second only changes once per second
+    private long stampSecond = -1;
+    private String stamp;
+
+    public EventLogDrainer(EventLog log, Path path) throws IOException {
+        this(log, path, DEFAULT_INTERVAL_MILLIS, DEFAULT_MAX_BYTES, DEFAULT_ARCHIVES);
+    }
+
+    public EventLogDrainer(EventLog log, Path path, long intervalMillis, long maxBytes, int archives) throws IOException {
+        this(log, path, intervalMillis, maxBytes, archives, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "event-log-drainer");
+            t.setDaemon(true);
+            return t;
+        }), true, BUFFER_BYTES);
+    }
+
+    // Drains on the given scheduler, shared with other drainers; close() leaves it running
+    public EventLogDrainer(EventLog log, Path path, ScheduledExecutorService scheduler) throws IOException {
+        this(log, path, DEFAULT_INTERVAL_MILLIS, DEFAULT_MAX_BYTES, DEFAULT_ARCHIVES, scheduler, false,
+                SHARED_BUFFER_BYTES);
+    }
+
+    private EventLogDrainer(EventLog log, Path path, long intervalMillis, long maxBytes, int archives,
+                            ScheduledExecutorService scheduler, boolean ownScheduler, int bufferBytes) throws IOException {
+        this.log = log;
+        this.path = path;
+        this.maxBytes = maxBytes;
+        this.archives = archives;
+        this.out = ByteBuffer.allocate(bufferBytes);
+        this.channel = open();
+        // Start with whatever is still in the ring, e.g. events from start-up
+        this.cursor = Math.max(0, log.nextSequence() - log.capacity());
+
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+        this.task = scheduler.scheduleWithFixedDelay(this::drainQuietly, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void drainQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.out.println("ERROR: Event log write failed - " + e.getMessage());
+        }
+    }
+
+    // Writes every event recorded so far
+    public synchronized void flush() throws IOException {
+        if (closed) return;
+        long end = log.nextSequence();
+        long oldest = end - log.capacity();
+        if (cursor < oldest) {
+            line.setLength(0);
+            line.append("... ").append(oldest - cursor).append(" events lost (log overflow)\n");
+            put(line);
+            cursor = oldest;
+        }
+
+        for (; cursor < end; cursor++) {
+            if (!log.read(cursor, record)) {
+                // Still being written: pick it up next time. Overwritten meanwhile: skip it.
+                if (cursor >= log.nextSequence() - log.capacity()) break;
+                continue;
+            }
+            line.setLength(0);
+            line.append('[').append(stampFor(EventLog.timestampOf(record))).append("] ");
+            EventLog.describe(record, line);
+            line.append('\n');
+            put(line);
+        }
+        writeOut();
+        if (channel.size() > maxBytes) roll();
+    }
+
+    private String stampFor(long millis) {
+        long second = millis / 1000;
+        if (second != stampSecond) {
+            stampSecond = second;
+            stamp = TIMESTAMP_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+        }
+        return stamp;
+    }
+
+    // Event text is plain ASCII, so chars go straight into the byte buffer
+    private void put(CharSequence text) throws IOException {
+        if (out.remaining() < text.length()) writeOut();
+        for (int i = 0; i < text.length(); i++) out.put((byte) text.charAt(i));
+    }
+
+    private void writeOut() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) channel.write(out);
+        out.clear();
+    }
+
+    private void roll() throws IOException {
+        channel.close();
+        for (int i = archives - 1; i >= 1; i--) {
+            Path from = archive(i);
+            if (Files.exists(from)) Files.move(from, archive(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (archives > 0) Files.move(path, archive(1), StandardCopyOption.REPLACE_EXISTING);
+        else Files.delete(path);
+        channel = open();
+    }
+
+    private Path archive(int n) {
+        return path.resolveSibling(path.getFileName() + "." + n);
+    }
+
+    // The last lines of the current file (after writing out pending events)
+    public List<String> tail(int lines) throws IOException {
+        byte[] chunk;
+        synchronized (this) {
+            flush();
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+                long length = file.length();
+                int size = (int) Math.min(length, 256L * lines);
+                chunk = new byte[size];
+                file.seek(length - size);
+                file.readFully(chunk);
+            }
+        }
+        String[] all = new String(chunk, StandardCharsets.US_ASCII).split("\n");
+        List<String> result = new ArrayList<>();
+        // The first piece may be a cut-off line unless we read from the start of the file
+        int first = Math.max(chunk.length < 256L * lines ? 0 : 1, all.length - lines);
+        for (int i = first; i < all.length; i++) {
+            if (!all[i].isEmpty()) result.add(all[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        task.cancel(false);
+        if (ownScheduler) scheduler.shutdown();
+        synchronized (this) {
+            if (closed) return;
+            flush();
+            closed = true;
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Group commit for the journal file.
+// Appends from concurrent callers are collected for a short window and written by a
+// single flusher thread with one fsync per batch. Callers wait on the returned future,
+// which completes only once their record is on disk.
+//
+// A batch that fails to write is cut off again, so the file never keeps a torn frame
+// that later, acknowledged batches would sit behind (replay stops at the first bad
+// frame). If the file cannot be restored, or cannot be reopened after a rotation, the
+// log fails: every later append is refused instead of being written where replay
+// would not reach it.
+class GroupCommitLog {
+
+    // Marker that asks the flusher to rotate the file at this point in the stream
+    private static final ByteBuffer ROTATE = ByteBuffer.allocate(0);
+
+    private final Path path;
+    private final Path rotatedPath;
+    private final long windowNanos;
+    private FileChannel channel; // only used by the flusher thread once started
+
+    private List<ByteBuffer> batch = new ArrayList<>();
+    private CompletableFuture<Void> batchDone = new CompletableFuture<>();
+    private boolean closed;
+    // Set once the file can no longer be appended to safely
+    private volatile IOException failure;
+    private final Thread flusher;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+
+    GroupCommitLog(Path path, Path rotatedPath, long windowMicros) throws IOException {
+        this.path = path;
+        this.rotatedPath = rotatedPath;
+        this.windowNanos = windowMicros * 1000;
+        this.channel = open();
+        this.flusher = new Thread(this::runFlusher, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    synchronized CompletableFuture<Void> append(ByteBuffer frame) {
+        if (closed) throw new IllegalStateException("Journal is closed");
+        if (failure != null) throw new IllegalStateException("Journal failed: " + failure.getMessage(), failure);
+        batch.add(frame);
+        if (batch.size() == 1) notifyAll();
+        return batchDone;
+    }
+
+    // Everything appended before this call ends up in the rotated file, everything after in the new one
+    CompletableFuture<Void> rotate() {
+        return append(ROTATE);
+    }
+
+    static void await(CompletableFuture<Void> durable) {
+        try {
+            durable.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Journal write failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (batch.isEmpty() && !closed) wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (batch.isEmpty()) return; // closed and fully drained
+            }
+
+            // Give other writers a chance to join this batch
+            if (windowNanos > 0) LockSupport.parkNanos(windowNanos);
+
+            List<ByteBuffer> toWrite;
+            CompletableFuture<Void> done;
+            synchronized (this) {
+                toWrite = batch;
+                done = batchDone;
+                batch = new ArrayList<>();
+                batchDone = new CompletableFuture<>();
+            }
+
+            try {
+                write(toWrite);
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void write(List<ByteBuffer> frames) throws IOException {
+        if (failure != null) throw new IOException("Journal failed: " + failure.getMessage(), failure);
+        int start = 0;
+        for (int i = 0; i < frames.size(); i++) {
+            if (frames.get(i) == ROTATE) {
+                writeAndSync(frames, start, i);
+                rotateFile();
+                start = i + 1;
+            }
+        }
+        writeAndSync(frames, start, frames.size());
+        batches.increment();
+        records.add(frames.size());
+    }
+
+    private void writeAndSync(List<ByteBuffer> frames, int from, int to) throws IOException {
+        if (from == to) return;
+        ByteBuffer[] group = frames.subList(from, to).toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (ByteBuffer b : group) remaining += b.remaining();
+        long size = channel.size();
+        try {
+            while (remaining > 0) remaining -= channel.write(group);
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            // Cut the partial batch off, so the next batch follows the last good frame
+            try {
+                channel.truncate(size);
+                channel.force(false);
+            } catch (IOException | RuntimeException t) {
+                failure = t instanceof IOException ? (IOException) t : new IOException(t);
+                e.addSuppressed(t);
+            }
+            throw e;
+        }
+    }
+
+    // Moves the current file aside and starts a new one. The channel is reopened whether or
+    // not the move worked: if it did not, appends simply carry on in the same file.
+    private void rotateFile() throws IOException {
+        channel.close();
+        IOException moveFailed = null;
+        try {
+            Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            moveFailed = e;
+        }
+        try {
+            channel = open();
+        } catch (IOException e) {
+            failure = e;
+            if (moveFailed != null) e.addSuppressed(moveFailed);
+            throw e;
+        }
+        if (moveFailed != null) throw moveFailed;
+    }
+
+    long getBatchCount() { return batches.sum(); }
+    long getRecordCount() { return records.sum(); }
+
+    void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,65 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Persistence kept entirely in memory, for benchmarks and load tests.
+// Like the file-backed stores it hands out fresh copies, so callers cannot
+// change stored data without going through save.
+public class InMemoryPersistence implements Persistence {
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private ATMState state;
+
+    public InMemoryPersistence() {
+        this(new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500)));
+    }
+
+    public InMemoryPersistence(ATMState initialState) {
+        this.state = copyOf(initialState);
+    }
+
+    // Keeps card, PIN and balance only
+    @Override
+    public boolean storesHistory() {
+        return false;
+    }
+
+    @Override
+    public Account loadAccount(String cardNumber) {
+        Account stored = accounts.get(cardNumber);
+        return stored == null ? null : copyOf(stored);
+    }
+
+    @Override
+    public void saveAccount(Account account) {
+        accounts.put(account.getCardNumber(), copyOf(account));
+    }
+
+    @Override
+    public synchronized ATMState loadATMState() {
+        return copyOf(state);
+    }
+
+    @Override
+    public synchronized void saveATMState(ATMState atmState) {
+        this.state = copyOf(atmState);
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
+    private static Account copyOf(Account a) {
+        return new Account(a.getCardNumber(), a.getPin(), a.getBalance());
+    }
+
+    private static ATMState copyOf(ATMState s) {
+        ATMState copy = new ATMState(s.getCount100(), s.getCount50(), s.getCount20(),
+                s.getFirmwareVersion(), new PaperTank(s.getPaperTank().getPaperCount()));
+        copy.setInkLevel(s.getInkLevel());
+        return copy;
+    }
+}
@@ -0,0 +1,258 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.*;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Account store for large account bases: a hash index of fixed-size records
+// in a memory-mapped file. Every load/save touches exactly one probe chain,
+// so the I/O per call does not grow with the number of accounts.
+// The ATM state is small and is delegated to another Persistence (JSON by default).
+public class IndexedAccountStore implements Persistence {
+
+    // Header layout
+    private static final int MAGIC = 0x41544D31; // "ATM1"
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_CAPACITY = 4;
+    private static final int H_COUNT = 12;
+
+    // Record layout (one slot per account)
+    static final int RECORD_SIZE = 64;
+    private static final int R_STATUS = 0;
+    private static final int R_CARD_LEN = 1;
+    private static final int R_PIN_LEN = 2;
+    private static final int R_CARD = 3;
+    private static final int R_PIN = 27;
+    private static final int R_BALANCE = 48;
+    static final int MAX_CARD_LENGTH = 24;
+    static final int MAX_PIN_LENGTH = 16;
+
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_USED = 1;
+
+    // A single mapping is limited to 2GB, so the slots are split into segments
+    private static final int SEGMENT_SHIFT = 24; // 16M slots = 1GB per segment
+    private static final long SEGMENT_SLOTS = 1L << SEGMENT_SHIFT;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final long capacity;
+    private final long mask;
+    private long count;
+    private final Persistence stateStore;
+    private boolean syncOnSave = true;
+
+    public IndexedAccountStore(Path path, long expectedAccounts) throws IOException {
+        this(path, expectedAccounts, new JsonHandler());
+    }
+
+    public IndexedAccountStore(Path path, long expectedAccounts, Persistence stateStore) throws IOException {
+        this.stateStore = stateStore;
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        FileChannel channel = file.getChannel();
+
+        boolean existing = channel.size() >= HEADER_SIZE;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+        if (existing) {
+            if (header.getInt(H_MAGIC) != MAGIC) {
+                throw new IOException("Not an account store: " + path);
+            }
+            this.capacity = header.getLong(H_CAPACITY);
+            this.count = header.getLong(H_COUNT);
+        } else {
+            this.capacity = tableSizeFor(expectedAccounts);
+            this.count = 0;
+            header.putInt(H_MAGIC, MAGIC);
+            header.putLong(H_CAPACITY, capacity);
+            header.putLong(H_COUNT, 0);
+        }
+        this.mask = capacity - 1;
+
+        int segmentCount = (int) ((capacity + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long slots = Math.min(SEGMENT_SLOTS, capacity - i * SEGMENT_SLOTS);
+            long offset = HEADER_SIZE + i * SEGMENT_SLOTS * RECORD_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, slots * RECORD_SIZE);
+        }
+    }
+
+    // Power of two so that the hash can be masked instead of divided
+    private static long tableSizeFor(long expectedAccounts) {
+        long needed = (long) Math.ceil(Math.max(expectedAccounts, 16) / MAX_LOAD_FACTOR);
+        return Long.highestOneBit(needed - 1) << 1;
+    }
+
+    // Keeps card, PIN and balance only
+    @Override
+    public boolean storesHistory() {
+        return false;
+    }
+
+    @Override
+    public synchronized Account loadAccount(String card) {
+        if (card == null || card.length() > MAX_CARD_LENGTH) return null;
+        byte[] key = card.getBytes(StandardCharsets.US_ASCII);
+
+        long slot = findSlot(key);
+        MappedByteBuffer seg = segmentFor(slot);
+        int pos = positionOf(slot);
+        if (seg.get(pos + R_STATUS) != SLOT_USED) return null;
+
+        byte[] pin = new byte[seg.get(pos + R_PIN_LEN)];
+        seg.get(pos + R_PIN, pin);
+        return new Account(card, new String(pin, StandardCharsets.US_ASCII), seg.getDouble(pos + R_BALANCE));
+    }
+
+    @Override
+    public synchronized void saveAccount(Account account) {
+        byte[] key = account.getCardNumber().getBytes(StandardCharsets.US_ASCII);
+        byte[] pin = account.getPin().getBytes(StandardCharsets.US_ASCII);
+        if (key.length > MAX_CARD_LENGTH || pin.length > MAX_PIN_LENGTH) {
+            throw new IllegalArgumentException("Card number or PIN too long for the account store");
+        }
+
+        long slot = findSlot(key);
+        MappedByteBuffer seg = segmentFor(slot);
+        int pos = positionOf(slot);
+        boolean isNew = seg.get(pos + R_STATUS) != SLOT_USED;
+
+        if (isNew) {
+            if (count + 1 > capacity * MAX_LOAD_FACTOR) {
+                throw new IllegalStateException("Account store is full (" + count + " accounts)");
+            }
+            seg.put(pos + R_CARD_LEN, (byte) key.length);
+            seg.put(pos + R_CARD, key);
+        }
+        seg.put(pos + R_PIN_LEN, (byte) pin.length);
+        seg.put(pos + R_PIN, pin);
+        seg.putDouble(pos + R_BALANCE, account.getBalance());
+
+        // The status byte goes last so a half-written record is never visible
+        if (isNew) {
+            seg.put(pos + R_STATUS, SLOT_USED);
+            count++;
+            header.putLong(H_COUNT, count);
+            if (syncOnSave) header.force();
+        }
+        if (syncOnSave) seg.force(pos, RECORD_SIZE);
+    }
+
+    // Bulk loads turn per-save syncing off and call force() once at the end
+    public synchronized void setSyncOnSave(boolean syncOnSave) {
+        this.syncOnSave = syncOnSave;
+    }
+
+    public synchronized void force() {
+        for (MappedByteBuffer seg : segments) seg.force();
+        header.force();
+    }
+
+    // Card numbers of all stored accounts, in slot order. Reads one slot at a time,
+    // so walking millions of accounts needs no extra memory.
+    public Iterable<String> cards() {
+        return () -> new Iterator<String>() {
+            private long nextUsed = advance(-1);
+
+            private long advance(long from) {
+                synchronized (IndexedAccountStore.this) {
+                    for (long s = from + 1; s < capacity; s++) {
+                        if (segmentFor(s).get(positionOf(s) + R_STATUS) == SLOT_USED) return s;
+                    }
+                    return capacity;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextUsed < capacity;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                long slot = nextUsed;
+                nextUsed = advance(slot);
+                synchronized (IndexedAccountStore.this) {
+                    MappedByteBuffer seg = segmentFor(slot);
+                    int pos = positionOf(slot);
+                    byte[] card = new byte[seg.get(pos + R_CARD_LEN)];
+                    seg.get(pos + R_CARD, card);
+                    return new String(card, StandardCharsets.US_ASCII);
+                }
+            }
+        };
+    }
+
+    // Linear probing: returns the slot holding the key, or the empty slot where it belongs
+    private long findSlot(byte[] key) {
+        long slot = spread(key) & mask;
+        while (true) {
+            MappedByteBuffer seg = segmentFor(slot);
+            int pos = positionOf(slot);
+            if (seg.get(pos + R_STATUS) == SLOT_EMPTY || keyEquals(seg, pos, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static boolean keyEquals(MappedByteBuffer seg, int pos, byte[] key) {
+        if (seg.get(pos + R_CARD_LEN) != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (seg.get(pos + R_CARD + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    // FNV-1a over the card digits, then mixed so sequential card numbers spread out
+    private static long spread(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return h ^ (h >>> 29);
+    }
+
+    private MappedByteBuffer segmentFor(long slot) {
+        return segments[(int) (slot >>> SEGMENT_SHIFT)];
+    }
+
+    private static int positionOf(long slot) {
+        return (int) (slot & (SEGMENT_SLOTS - 1)) * RECORD_SIZE;
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    @Override
+    public ATMState loadATMState() {
+        return stateStore.loadATMState();
+    }
+
+    @Override
+    public void saveATMState(ATMState state) {
+        stateStore.saveATMState(state);
+    }
+}
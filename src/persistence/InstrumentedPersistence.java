@@ -0,0 +1,70 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.*;
+import metrics.ServiceMetrics;
+
+// Times every call to another Persistence into ServiceMetrics
+// (PERSISTENCE_LOAD / PERSISTENCE_SAVE). A load that finds nothing counts as failed.
+public class InstrumentedPersistence implements Persistence {
+    private final Persistence delegate;
+    private final ServiceMetrics metrics;
+
+    public InstrumentedPersistence(Persistence delegate, ServiceMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean storesHistory() {
+        return delegate.storesHistory();
+    }
+
+    @Override
+    public Account loadAccount(String cardNumber) {
+        long start = metrics.start();
+        Account account = null;
+        try {
+            account = delegate.loadAccount(cardNumber);
+            return account;
+        } finally {
+            metrics.record(ServiceMetrics.Operation.PERSISTENCE_LOAD, start, account != null);
+        }
+    }
+
+    @Override
+    public void saveAccount(Account account) {
+        long start = metrics.start();
+        boolean ok = false;
+        try {
+            delegate.saveAccount(account);
+            ok = true;
+        } finally {
+            metrics.record(ServiceMetrics.Operation.PERSISTENCE_SAVE, start, ok);
+        }
+    }
+
+    @Override
+    public ATMState loadATMState() {
+        long start = metrics.start();
+        ATMState state = null;
+        try {
+            state = delegate.loadATMState();
+            return state;
+        } finally {
+            metrics.record(ServiceMetrics.Operation.PERSISTENCE_LOAD, start, state != null);
+        }
+    }
+
+    @Override
+    public void saveATMState(ATMState state) {
+        long start = metrics.start();
+        boolean ok = false;
+        try {
+            delegate.saveATMState(state);
+            ok = true;
+        } finally {
+            metrics.record(ServiceMetrics.Operation.PERSISTENCE_SAVE, start, ok);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Write-ahead journal in front of another Persistence.
+// Saves append a small record to a sequential log instead of rewriting whole files;
+// a background task periodically compacts the log into the base store (the snapshot).
+// Appends from concurrent sessions share one fsync through GroupCommitLog; a save
+// returns only once its record is durable. A load never returns a change that is not
+// durable yet: it waits for the record's fsync, and if that fails it falls back to the
+// value saved before.
+// Records carry the values after the change, so replaying them is idempotent even
+// if a compaction was interrupted half way.
+public class JournalHandler implements Persistence {
+
+    private static final String JOURNAL_FILE = "atm.journal";
+    private static final String COMPACTING_FILE = "atm.journal.compacting";
+
+    private static final byte TYPE_ACCOUNT = 'A';
+    private static final byte TYPE_STATE = 'S';
+    // length (int) + type (byte) ... payload ... crc (int)
+    private static final int FRAME_OVERHEAD = 4 + 1 + 4;
+    private static final int MAX_RECORD_SIZE = 1024;
+
+    private final Persistence base;
+    private final Path journalPath;
+    private final Path compactingPath;
+    private final GroupCommitLog log;
+
+    // Changes written since the last compaction (newest wins)
+    private Map<String, AccountRecord> accounts = new HashMap<>();
+    private StateRecord state;
+    // Changes currently being copied into the base store
+    private Map<String, AccountRecord> compactingAccounts = new HashMap<>();
+    private StateRecord compactingState;
+
+    private final ScheduledExecutorService compactor;
+    private final Object compactionLock = new Object();
+
+    public JournalHandler(Persistence base, Path directory) throws IOException {
+        this(base, directory, 5000, 0);
+    }
+
+    public JournalHandler(Persistence base, Path directory, long compactIntervalMillis) throws IOException {
+        this(base, directory, compactIntervalMillis, 0);
+    }
+
+    // commitWindowMicros: how long the flusher waits for more writers before syncing a batch.
+    // With 0 it syncs right away; writers that arrive during an fsync still share the next one.
+    public JournalHandler(Persistence base, Path directory, long compactIntervalMillis,
+                          long commitWindowMicros) throws IOException {
+        this.base = base;
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.compactingPath = directory.resolve(COMPACTING_FILE);
+
+        // A leftover compacting file means we crashed during compaction: replay it first,
+        // then bring the base store up to date before accepting new writes
+        if (Files.exists(compactingPath)) {
+            replay(compactingPath);
+        }
+        if (Files.exists(journalPath)) {
+            replay(journalPath);
+        }
+        applyToBase(accounts, state);
+        accounts.clear();
+        state = null;
+        Files.deleteIfExists(compactingPath);
+        Files.deleteIfExists(journalPath);
+        this.log = new GroupCommitLog(journalPath, compactingPath, commitWindowMicros);
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compactQuietly,
+                compactIntervalMillis, compactIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // ================== Persistence ==================
+
+    // Journal records keep card, PIN and balance only
+    @Override
+    public boolean storesHistory() {
+        return false;
+    }
+
+    @Override
+    public Account loadAccount(String cardNumber) {
+        AccountRecord rec;
+        synchronized (this) {
+            rec = accounts.get(cardNumber);
+            if (rec == null) rec = compactingAccounts.get(cardNumber);
+        }
+        rec = Pending.durable(rec);
+        if (rec != null) {
+            return new Account(rec.card, rec.pin, rec.balance);
+        }
+        return base.loadAccount(cardNumber);
+    }
+
+    @Override
+    public void saveAccount(Account account) {
+        AccountRecord rec = new AccountRecord(account.getCardNumber(), account.getPin(), account.getBalance());
+        synchronized (this) {
+            AccountRecord previous = accounts.get(rec.card);
+            rec.pending(log.append(frame(TYPE_ACCOUNT, rec.encode())),
+                    previous != null ? previous : compactingAccounts.get(rec.card));
+            accounts.put(rec.card, rec);
+        }
+        rec.await();
+    }
+
+    @Override
+    public ATMState loadATMState() {
+        StateRecord rec;
+        synchronized (this) {
+            rec = state != null ? state : compactingState;
+        }
+        rec = Pending.durable(rec);
+        if (rec != null) {
+            return rec.toState();
+        }
+        return base.loadATMState();
+    }
+
+    @Override
+    public void saveATMState(ATMState atmState) {
+        StateRecord rec = StateRecord.of(atmState);
+        synchronized (this) {
+            rec.pending(log.append(frame(TYPE_STATE, rec.encode())), state != null ? state : compactingState);
+            state = rec;
+        }
+        rec.await();
+    }
+
+    // ================== Journal ==================
+
+    private static ByteBuffer frame(byte type, ByteBuffer payload) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_OVERHEAD + payload.remaining());
+        frame.putInt(payload.remaining());
+        frame.put(type);
+        int payloadStart = frame.position();
+        frame.put(payload);
+        frame.putInt(crc(frame.array(), payloadStart - 1, frame.position() - payloadStart + 1));
+        return frame.flip();
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    // Reads every intact record; a torn record at the tail (crash mid-append) is cut off
+    private void replay(Path path) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) in.size());
+            while (buf.hasRemaining() && in.read(buf) > 0) { }
+            buf.flip();
+
+            long validEnd = 0;
+            while (buf.remaining() >= FRAME_OVERHEAD) {
+                int start = buf.position();
+                int length = buf.getInt();
+                if (length < 0 || length > MAX_RECORD_SIZE || buf.remaining() < length + 5) break;
+                byte type = buf.get();
+                ByteBuffer payload = buf.slice(buf.position(), length);
+                buf.position(buf.position() + length);
+                int expected = buf.getInt();
+                if (crc(buf.array(), start + 4, length + 1) != expected) break;
+
+                if (type == TYPE_ACCOUNT) {
+                    AccountRecord rec = AccountRecord.decode(payload);
+                    accounts.put(rec.card, rec);
+                } else if (type == TYPE_STATE) {
+                    state = StateRecord.decode(payload);
+                }
+                validEnd = buf.position();
+            }
+            if (validEnd < in.size()) {
+                System.out.println("WARNING: Discarding torn journal tail in " + path.getFileName());
+                in.truncate(validEnd);
+            }
+        }
+    }
+
+    // ================== Compaction ==================
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            System.out.println("ERROR: Journal compaction failed - " + e.getMessage());
+        }
+    }
+
+    // Rotates the journal, copies the rotated changes into the base store, then drops the old log.
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            CompletableFuture<Void> rotated;
+            synchronized (this) {
+                if (accounts.isEmpty() && state == null) return;
+                rotated = log.rotate();
+                compactingAccounts = accounts;
+                compactingState = state;
+                accounts = new HashMap<>();
+                state = null;
+            }
+            try {
+                GroupCommitLog.await(rotated);
+            } catch (RuntimeException e) {
+                // Not rotated: the records are still in the live journal, so they go back to
+                // the current map, behind anything saved since
+                synchronized (this) {
+                    compactingAccounts.forEach(accounts::putIfAbsent);
+                    if (state == null) state = compactingState;
+                    compactingAccounts = new HashMap<>();
+                    compactingState = null;
+                }
+                throw e;
+            }
+
+            applyToBase(compactingAccounts, compactingState);
+
+            synchronized (this) {
+                compactingAccounts = new HashMap<>();
+                compactingState = null;
+            }
+            Files.deleteIfExists(compactingPath);
+        }
+    }
+
+    // Records whose write failed are skipped in favour of the last durable one
+    private void applyToBase(Map<String, AccountRecord> changed, StateRecord changedState) {
+        for (AccountRecord rec : changed.values()) {
+            rec = Pending.durable(rec);
+            if (rec != null) base.saveAccount(new Account(rec.card, rec.pin, rec.balance));
+        }
+        changedState = Pending.durable(changedState);
+        if (changedState != null) {
+            base.saveATMState(changedState.toState());
+        }
+    }
+
+    public void close() throws IOException {
+        compactor.shutdown();
+        compact();
+        log.close();
+    }
+
+    // Average records per fsync, to see how well concurrent saves are being grouped
+    public double getAverageBatchSize() {
+        long batches = log.getBatchCount();
+        return batches == 0 ? 0 : (double) log.getRecordCount() / batches;
+    }
+
+    // ================== Records ==================
+
+    // A record until its journal write is durable. Until then it remembers the record it
+    // replaced, so readers can fall back to that one if the write fails.
+    private abstract static class Pending<R extends Pending<R>> {
+        volatile CompletableFuture<Void> durable; // null: read back from the journal, durable
+        volatile R previous;
+
+        void pending(CompletableFuture<Void> durable, R previous) {
+            this.durable = durable;
+            this.previous = previous;
+        }
+
+        // Waits for the write; the record it replaced is no longer needed once it is durable
+        void await() {
+            GroupCommitLog.await(durable);
+            previous = null;
+        }
+
+        boolean isDurable() {
+            CompletableFuture<Void> d = durable;
+            if (d == null) return true;
+            try {
+                d.join();
+                return true;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        // The newest durable record in the chain, waiting for pending writes; null if none
+        static <R extends Pending<R>> R durable(R rec) {
+            while (rec != null && !rec.isDurable()) rec = rec.previous;
+            return rec;
+        }
+    }
+
+    private static final class AccountRecord extends Pending<AccountRecord> {
+        final String card;
+        final String pin;
+        final double balance;
+
+        AccountRecord(String card, String pin, double balance) {
+            this.card = card;
+            this.pin = pin;
+            this.balance = balance;
+        }
+
+        ByteBuffer encode() {
+            byte[] c = card.getBytes(StandardCharsets.UTF_8);
+            byte[] p = pin.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buf = ByteBuffer.allocate(2 + c.length + 2 + p.length + 8);
+            buf.putShort((short) c.length).put(c);
+            buf.putShort((short) p.length).put(p);
+            buf.putDouble(balance);
+            return buf.flip();
+        }
+
+        static AccountRecord decode(ByteBuffer buf) {
+            String card = readString(buf);
+            String pin = readString(buf);
+            return new AccountRecord(card, pin, buf.getDouble());
+        }
+    }
+
+    private static final class StateRecord extends Pending<StateRecord> {
+        final int count100, count50, count20;
+        final int paper;
+        final int ink;
+        final String firmware;
+
+        StateRecord(int count100, int count50, int count20, int paper, int ink, String firmware) {
+            this.count100 = count100;
+            this.count50 = count50;
+            this.count20 = count20;
+            this.paper = paper;
+            this.ink = ink;
+            this.firmware = firmware;
+        }
+
+        static StateRecord of(ATMState s) {
+            return new StateRecord(s.getCount100(), s.getCount50(), s.getCount20(),
+                    s.getPaperTank().getPaperCount(), s.getInkLevel(), s.getFirmwareVersion());
+        }
+
+        ATMState toState() {
+            ATMState s = new ATMState(count100, count50, count20, firmware, new PaperTank(paper));
+            s.setInkLevel(ink);
+            return s;
+        }
+
+        ByteBuffer encode() {
+            byte[] fw = firmware.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buf = ByteBuffer.allocate(5 * 4 + 2 + fw.length);
+            buf.putInt(count100).putInt(count50).putInt(count20).putInt(paper).putInt(ink);
+            buf.putShort((short) fw.length).put(fw);
+            return buf.flip();
+        }
+
+        static StateRecord decode(ByteBuffer buf) {
+            int c100 = buf.getInt(), c50 = buf.getInt(), c20 = buf.getInt();
+            int paper = buf.getInt(), ink = buf.getInt();
+            return new StateRecord(c100, c50, c20, paper, ink, readString(buf));
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -3,18 +3,42 @@ package persistence;
 import interfaces.Persistence;
 import core.*;
 import org.json.JSONObject;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 public class JsonHandler implements Persistence {
 
     private static final String ACCOUNT_FILE = "account.json";
     private static final String ATM_FILE = "atm_state.json"; // Changed name to be safe
 
+    private final Path accountFile;
+    private final Path atmFile;
+
+    // Reads and writes account.json and atm_state.json in the working directory
+    public JsonHandler() {
+        this(Paths.get(""));
+    }
+
+    // Keeps both files under dir instead, so tools and benchmarks can stay
+    // away from the tracked files in the working directory
+    public JsonHandler(Path dir) {
+        this.accountFile = dir.resolve(ACCOUNT_FILE);
+        this.atmFile = dir.resolve(ATM_FILE);
+    }
+
+    // Keeps card, PIN and balance only
+    @Override
+    public boolean storesHistory() {
+        return false;
+    }
+
     @Override
     public Account loadAccount(String card) {
         try {
-            JSONObject obj = new JSONObject(Files.readString(Paths.get(ACCOUNT_FILE)));
+            JSONObject obj = new JSONObject(Files.readString(accountFile));
             return new Account(
                     obj.getString("card"),
                     obj.getString("pin"),
@@ -32,14 +56,14 @@ public class JsonHandler implements Persistence {
             obj.put("card", account.getCardNumber());
             obj.put("pin", account.getPin());
             obj.put("balance", account.getBalance());
-            Files.writeString(Paths.get(ACCOUNT_FILE), obj.toString(2));
+            writeAtomically(accountFile, obj.toString(2));
         } catch (Exception ignored) {}
     }
 
     @Override
     public ATMState loadATMState() {
         try {
-            JSONObject obj = new JSONObject(Files.readString(Paths.get(ATM_FILE)));
+            JSONObject obj = new JSONObject(Files.readString(atmFile));
 
             // 1. Create the state object
             ATMState state = new ATMState(
@@ -73,9 +97,17 @@ public class JsonHandler implements Persistence {
             // 3. SAVE THE INK LEVEL TO JSON
             obj.put("ink", state.getInkLevel());
 
-            Files.writeString(Paths.get(ATM_FILE), obj.toString(2));
+            writeAtomically(atmFile, obj.toString(2));
         } catch (Exception ignored) {
             System.out.println("DEBUG: Save failed!");
         }
     }
+
+    // Write to a temp file and rename it over the target, so a crash mid-write
+    // leaves the previous file intact instead of a truncated one
+    private static void writeAtomically(Path target, String content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(tmp, content);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.Account;
+import core.TransactionHistory;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Bulk export of accounts and their transactions as NDJSON, one flat object per line:
+//   {"record":"account","card":"...","pin":"...","balance":500.00,"expiry":"2030-01-31",
+//    "dailyLimit":500.00,"dailyUsed":0.00,"lastWithdrawal":"2026-01-01","historyCapacity":0}
+//   {"record":"transaction","card":"...","ts":1700000000000,"type":"TRANSFER_OUT",
+//    "amount":20.00,"balance":480.00,"counterpart":"..."}
+// Each account is followed by its transactions, oldest first, which is the order
+// NdjsonImporter reads back. Lines are built in a reused buffer and written through
+// a buffered writer, one account at a time.
+public class NdjsonExporter implements AutoCloseable {
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] chars = new char[256];
+    private long records;
+
+    public NdjsonExporter(Path file) throws IOException {
+        this(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+    }
+
+    public NdjsonExporter(Writer out) {
+        this.out = out;
+    }
+
+    public long getRecordsWritten() { return records; }
+
+    public void write(Account account) throws IOException {
+        line.setLength(0);
+        line.append("{\"record\":\"account\",\"card\":");
+        string(account.getCardNumber());
+        line.append(",\"pin\":");
+        string(account.getPin());
+        line.append(",\"balance\":");
+        money(Math.round(account.getBalance() * 100));
+        line.append(",\"expiry\":\"").append(account.getCardExpirationDate()).append('"');
+        line.append(",\"dailyLimit\":");
+        money(Math.round(account.getDailyWithdrawalLimit() * 100));
+        line.append(",\"dailyUsed\":");
+        money(Math.round(account.getDailyWithdrawalUsed() * 100));
+        line.append(",\"lastWithdrawal\":\"").append(account.getLastWithdrawalDate()).append('"');
+        line.append(",\"historyCapacity\":").append(account.getTransactionHistory().getCapacity());
+        line.append("}\n");
+        flushLine();
+
+        TransactionHistory history = account.getTransactionHistory();
+        for (int i = 0; i < history.size(); i++) {
+            line.setLength(0);
+            line.append("{\"record\":\"transaction\",\"card\":");
+            string(account.getCardNumber());
+            line.append(",\"ts\":").append(history.getTimestamp(i));
+            line.append(",\"type\":\"").append(history.getType(i).name()).append('"');
+            line.append(",\"amount\":");
+            money(history.getAmountCents(i));
+            line.append(",\"balance\":");
+            money(history.getBalanceCents(i));
+            if (history.getCounterpart(i) != null) {
+                line.append(",\"counterpart\":");
+                string(history.getCounterpart(i));
+            }
+            line.append("}\n");
+            flushLine();
+        }
+    }
+
+    // Exports the given cards from a store, loading one account at a time
+    public long writeAll(Persistence source, Iterable<String> cards) throws IOException {
+        long before = records;
+        for (String card : cards) {
+            Account account = source.loadAccount(card);
+            if (account != null) write(account);
+        }
+        return records - before;
+    }
+
+    // Cents as a plain decimal with two places, without going through String.format
+    private void money(long cents) {
+        if (cents < 0) {
+            line.append('-');
+            cents = -cents;
+        }
+        line.append(cents / 100).append('.');
+        long rest = cents % 100;
+        if (rest < 10) line.append('0');
+        line.append(rest);
+    }
+
+    private void string(String s) {
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void flushLine() throws IOException {
+        if (chars.length < line.length()) chars = new char[line.length() * 2];
+        line.getChars(0, line.length(), chars, 0);
+        out.write(chars, 0, line.length());
+        records++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
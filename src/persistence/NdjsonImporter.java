@@ -0,0 +1,368 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.Account;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+// Bulk import of accounts and transactions from NDJSON (one flat JSON object per line),
+// feeding them into any Persistence. See NdjsonExporter for the record layout.
+//
+// The input is tokenized character by character into reused buffers instead of building
+// a JSONObject per line, and only one account is held at a time: it is saved when the
+// next account starts, so memory use does not depend on the size of the file.
+// Transactions are expected right after their account (as the exporter writes them);
+// a transaction for another card loads that account from the target first.
+// A malformed line is reported and skipped, and the import carries on.
+// Stores that do not keep transaction history (see Persistence.storesHistory) get the
+// accounts only: their transactions are counted as dropped, not imported, with a warning.
+public class NdjsonImporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int NONE = 0, ACCOUNT = 1, TRANSACTION = 2;
+    private static final Account.TransactionType[] TYPES = Account.TransactionType.values();
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    private final Persistence target;
+    private long accounts;
+    private long transactions;
+    private long dropped;
+    private long skipped;
+    private boolean keepsHistory;
+
+    // Reader state
+    private Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos, limit;
+    private long line;
+    private final StringBuilder key = new StringBuilder(32);
+    private final StringBuilder value = new StringBuilder(64);
+
+    // Fields of the current line
+    private int record;
+    private final StringBuilder card = new StringBuilder(24);
+    private boolean hasCard;
+    private String pin, counterpart;
+    private Account.TransactionType type;
+    private LocalDate expiry, lastWithdrawal;
+    private double balance, amount, dailyLimit, dailyUsed;
+    private boolean hasBalance, hasAmount, hasDailyLimit, hasDailyUsed, hasTimestamp;
+    private long timestamp;
+    private int historyCapacity;
+
+    // Account being filled; saved when the next one starts
+    private Account pending;
+
+    public NdjsonImporter(Persistence target) {
+        this.target = target;
+    }
+
+    public long getAccountsImported() { return accounts; }
+    public long getTransactionsImported() { return transactions; }
+    public long getTransactionsDropped() { return dropped; }
+    public long getLinesSkipped() { return skipped; }
+
+    public long importFrom(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader);
+        }
+    }
+
+    // Returns the number of records imported
+    public long importFrom(Reader reader) throws IOException {
+        IndexedAccountStore bulk = target instanceof IndexedAccountStore ? (IndexedAccountStore) target : null;
+        if (bulk != null) bulk.setSyncOnSave(false);
+        long before = accounts + transactions;
+        long droppedBefore = dropped;
+        keepsHistory = target.storesHistory();
+        this.in = reader;
+        pos = limit = 0;
+        line = 0;
+        try {
+            while (true) {
+                line++;
+                try {
+                    if (!readLine()) break;
+                    apply();
+                } catch (IllegalArgumentException | IllegalStateException | DateTimeException e) {
+                    skipped++;
+                    System.out.println("ERROR: Line " + line + " skipped - " + e.getMessage());
+                    skipRestOfLine();
+                }
+            }
+            savePending();
+            if (dropped > droppedBefore) {
+                System.out.println("WARNING: " + (dropped - droppedBefore)
+                        + " transactions not imported - the target store does not keep transaction history.");
+            }
+        } finally {
+            if (bulk != null) {
+                bulk.force();
+                bulk.setSyncOnSave(true);
+            }
+        }
+        return accounts + transactions - before;
+    }
+
+    // ---- records ----
+
+    private void apply() {
+        if (record == ACCOUNT) {
+            if (!hasCard || pin == null || !hasBalance) throw new IllegalArgumentException("account needs card, pin and balance");
+            savePending();
+            Account account = new Account(card.toString(), pin, balance, historyCapacity);
+            account.restoreLimits(
+                    expiry != null ? expiry : account.getCardExpirationDate(),
+                    hasDailyLimit ? dailyLimit : account.getDailyWithdrawalLimit(),
+                    hasDailyUsed ? dailyUsed : 0,
+                    lastWithdrawal != null ? lastWithdrawal : account.getLastWithdrawalDate());
+            pending = account;
+            accounts++;
+        } else if (record == TRANSACTION) {
+            if (!hasCard || type == null || !hasAmount || !hasBalance || !hasTimestamp) {
+                throw new IllegalArgumentException("transaction needs card, ts, type, amount and balance");
+            }
+            if (!keepsHistory) {
+                dropped++;
+                return;
+            }
+            if (pending == null || !equals(card, pending.getCardNumber())) {
+                savePending();
+                pending = target.loadAccount(card.toString());
+                if (pending == null) throw new IllegalArgumentException("unknown card " + card);
+            }
+            pending.getTransactionHistory().append(timestamp, type,
+                    Math.round(amount * 100), Math.round(balance * 100), counterpart);
+            transactions++;
+        }
+        // Blank lines have no record and are ignored
+    }
+
+    private void savePending() {
+        if (pending != null) {
+            target.saveAccount(pending);
+            pending = null;
+        }
+    }
+
+    private void resetFields() {
+        record = NONE;
+        card.setLength(0);
+        hasCard = hasBalance = hasAmount = hasDailyLimit = hasDailyUsed = hasTimestamp = false;
+        pin = counterpart = null;
+        type = null;
+        expiry = lastWithdrawal = null;
+        historyCapacity = 0;
+    }
+
+    private void onString(CharSequence text) {
+        if (is("record")) {
+            if (equals(text, "account")) record = ACCOUNT;
+            else if (equals(text, "transaction")) record = TRANSACTION;
+            else throw new IllegalArgumentException("unknown record type " + text);
+        } else if (is("card")) {
+            card.setLength(0);
+            card.append(text);
+            hasCard = true;
+        } else if (is("pin")) {
+            pin = text.toString();
+        } else if (is("counterpart")) {
+            counterpart = text.toString();
+        } else if (is("type")) {
+            type = null;
+            for (Account.TransactionType t : TYPES) {
+                if (equals(text, t.name())) type = t;
+            }
+            if (type == null) throw new IllegalArgumentException("unknown transaction type " + text);
+        } else if (is("expiry")) {
+            expiry = LocalDate.parse(text);
+        } else if (is("lastWithdrawal")) {
+            lastWithdrawal = LocalDate.parse(text);
+        }
+        // Unknown keys are ignored, so newer exports can still be read
+    }
+
+    private void onNumber(double number) {
+        if (is("balance")) { balance = number; hasBalance = true; }
+        else if (is("amount")) { amount = number; hasAmount = true; }
+        else if (is("dailyLimit")) { dailyLimit = number; hasDailyLimit = true; }
+        else if (is("dailyUsed")) { dailyUsed = number; hasDailyUsed = true; }
+        else if (is("ts")) { timestamp = (long) number; hasTimestamp = true; }
+        else if (is("historyCapacity")) historyCapacity = (int) number;
+    }
+
+    private boolean is(String name) {
+        return equals(key, name);
+    }
+
+    private static boolean equals(CharSequence a, String b) {
+        if (a.length() != b.length()) return false;
+        for (int i = 0; i < b.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // ---- tokenizer ----
+
+    // Parses one line into the fields. Returns false at end of input.
+    private boolean readLine() throws IOException {
+        resetFields();
+        int c = skipSpaces();
+        if (c == -1) return false;
+        if (c == '\n') return true; // blank line
+        if (c != '{') throw new IllegalArgumentException("expected '{'");
+
+        c = skipSpaces();
+        if (c != '}') {
+            while (true) {
+                if (c != '"') throw new IllegalArgumentException("expected a key");
+                readString(key);
+                if (skipSpaces() != ':') throw new IllegalArgumentException("expected ':' after " + key);
+                readValue(skipSpaces());
+                c = skipSpaces();
+                if (c == '}') break;
+                if (c != ',') throw new IllegalArgumentException("expected ',' or '}'");
+                c = skipSpaces();
+            }
+        }
+        c = skipSpaces();
+        if (c != '\n' && c != -1) throw new IllegalArgumentException("text after the object");
+        return true;
+    }
+
+    private void readValue(int c) throws IOException {
+        if (c == '"') {
+            readString(value);
+            onString(value);
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            value.setLength(0);
+            value.append((char) c);
+            while (isNumberChar(peek())) value.append((char) next());
+            onNumber(parseNumber(value));
+        } else if (c == 't' || c == 'f' || c == 'n') {
+            value.setLength(0);
+            value.append((char) c);
+            while (peek() >= 'a' && peek() <= 'z') value.append((char) next());
+            if (!equals(value, "true") && !equals(value, "false") && !equals(value, "null")) {
+                throw new IllegalArgumentException("bad literal " + value);
+            }
+            // No field takes a boolean; null leaves the field unset
+        } else if (c == '{' || c == '[') {
+            throw new IllegalArgumentException("nested values are not supported (" + key + ")");
+        } else {
+            throw new IllegalArgumentException("expected a value for " + key);
+        }
+    }
+
+    private static boolean isNumberChar(int c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E';
+    }
+
+    // Plain decimals (the exporter only writes those) are computed from the digits directly;
+    // anything else goes through Double.parseDouble
+    private static double parseNumber(StringBuilder text) {
+        int i = 0, n = text.length();
+        boolean negative = text.charAt(0) == '-';
+        if (negative) i++;
+        long mantissa = 0;
+        int digits = 0, scale = -1;
+        for (; i < n; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                digits = Integer.MAX_VALUE; // exponent or malformed
+                break;
+            }
+        }
+        if (digits == 0 || digits > 18) {
+            try {
+                return Double.parseDouble(text.toString());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad number " + text);
+            }
+        }
+        // Both parts are exact doubles, so the division is correctly rounded
+        double result = mantissa / POWERS_OF_TEN[Math.max(scale, 0)];
+        return negative ? -result : result;
+    }
+
+    private void readString(StringBuilder out) throws IOException {
+        out.setLength(0);
+        while (true) {
+            int c = next();
+            if (c == -1 || c == '\n') throw new IllegalArgumentException("unterminated string");
+            if (c == '"') return;
+            if (c == '\\') {
+                c = next();
+                switch (c) {
+                    case '"': case '\\': case '/': out.append((char) c); break;
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(next(), 16);
+                            if (digit < 0) throw new IllegalArgumentException("bad \\u escape");
+                            code = code * 16 + digit;
+                        }
+                        out.append((char) code);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad escape");
+                }
+            } else {
+                out.append((char) c);
+            }
+        }
+    }
+
+    // Next character that is not a space, tab or CR; a newline is returned as is
+    private int skipSpaces() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (c == ' ' || c == '\t' || c == '\r');
+        return c;
+    }
+
+    private void skipRestOfLine() throws IOException {
+        // The error may have been raised on the newline itself
+        if (pos > 0 && buf[pos - 1] == '\n') return;
+        int c;
+        do {
+            c = next();
+        } while (c != '\n' && c != -1);
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private int next() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package persistence;
+
+import interfaces.Persistence;
+import core.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Persistence for one terminal of a fleet. Accounts are the bank's and go to the
+// shared account store; the machine state (cassettes, paper, ink) is this terminal's
+// own and is kept in <stateDir>/<terminalId>.bin in the BinaryCodec format.
+// A terminal with no state saved yet starts from the account store's ATM state.
+public class TerminalPersistence implements Persistence {
+    public static final String STATE_SUFFIX = ".bin";
+
+    private final String terminalId;
+    private final Persistence accounts;
+    private final Path stateFile;
+
+    public TerminalPersistence(String terminalId, Persistence accounts, Path stateDir) throws IOException {
+        if (terminalId.isEmpty() || terminalId.indexOf('/') >= 0 || terminalId.indexOf('\\') >= 0) {
+            throw new IllegalArgumentException("Invalid terminal ID: " + terminalId);
+        }
+        this.terminalId = terminalId;
+        this.accounts = accounts;
+        this.stateFile = Files.createDirectories(stateDir).resolve(terminalId + STATE_SUFFIX);
+    }
+
+    public String getTerminalId() {
+        return terminalId;
+    }
+
+    @Override
+    public boolean storesHistory() {
+        return accounts.storesHistory();
+    }
+
+    @Override
+    public Account loadAccount(String cardNumber) {
+        return accounts.loadAccount(cardNumber);
+    }
+
+    @Override
+    public void saveAccount(Account account) {
+        accounts.saveAccount(account);
+    }
+
+    @Override
+    public synchronized ATMState loadATMState() {
+        if (!Files.exists(stateFile)) return accounts.loadATMState();
+        try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) { }
+            return BinaryCodec.decodeState(in.flip());
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not read state of terminal " + terminalId + " - " + e.getMessage());
+            return accounts.loadATMState();
+        }
+    }
+
+    @Override
+    public synchronized void saveATMState(ATMState state) {
+        Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = BinaryCodec.encode(state);
+            while (out.hasRemaining()) channel.write(out);
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not save state of terminal " + terminalId + " - " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("ERROR: Could not save state of terminal " + terminalId + " - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package services;
+
+import core.ATMState;
+import interfaces.Persistence;
+import metrics.ServiceMetrics;
+import persistence.EventLogDrainer;
+import persistence.TerminalPersistence;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Many ATMs hosted in one process, keyed by terminal ID. Each terminal has its own
+// ATMState (cassettes, paper, ink), state cache and ATMService, and its state is saved
+// to its own file (see TerminalPersistence). Accounts are shared: all terminals load
+// them from the same store and lock them through the same LiveAccounts, so a card used
+// at two terminals at once is still one account. Wrong PINs count across the fleet.
+// Each terminal also has its own event log; with an event directory, each log is
+// written to <id>.log there, the layout Reconciliation reads. One scheduler thread
+// drains the logs of all terminals, however many there are.
+//
+// summarize() looks at every terminal in parallel. It only reads: the cash comes from
+// the terminal's current CashInventory snapshot and no state lock is taken, so
+// withdrawals keep going while the fleet report is built.
+public class ATMFleet implements AutoCloseable {
+    public static final int LOW_PAPER_THRESHOLD = 50;
+
+    private final Persistence accounts;
+    private final Path stateDir;
+    private final ServiceMetrics metrics;
+    private final Path eventDir; // null: event logs are kept in memory only
+    private final ScheduledExecutorService eventDrain; // null without an event directory
+    private final LiveAccounts liveAccounts = new LiveAccounts();
+    private final PinLockout pinLockout = PinLockout.global();
+    private final IdempotencyTable requests = IdempotencyTable.global();
+    private final Map<String, Terminal> terminals = new ConcurrentHashMap<>();
+
+    // One ATM of the fleet
+    public static final class Terminal {
+        private final String id;
+        private final ATMStateCache stateCache;
+        private final ATMService service;
+        private final EventLogDrainer events;
+
+        private Terminal(String id, ATMStateCache stateCache, ATMService service, EventLogDrainer events) {
+            this.id = id;
+            this.stateCache = stateCache;
+            this.service = service;
+            this.events = events;
+        }
+
+        public String getId() { return id; }
+        public ATMStateCache getStateCache() { return stateCache; }
+        public ATMService getService() { return service; }
+        public ATMState getState() { return stateCache.current(); }
+    }
+
+    public ATMFleet(Persistence accounts, Path stateDir) {
+        this(accounts, stateDir, new ServiceMetrics());
+    }
+
+    // All terminals count into the same metrics
+    public ATMFleet(Persistence accounts, Path stateDir, ServiceMetrics metrics) {
+        this(accounts, stateDir, metrics, null);
+    }
+
+    // Each terminal's events are written to eventDir/<id>.log
+    public ATMFleet(Persistence accounts, Path stateDir, ServiceMetrics metrics, Path eventDir) {
+        this.accounts = accounts;
+        this.stateDir = stateDir;
+        this.metrics = metrics;
+        this.eventDir = eventDir;
+        this.eventDrain = eventDir == null ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fleet-event-drainer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // The terminal with this ID, brought up (from its saved state, if any) on first use
+    public Terminal terminal(String terminalId) {
+        Terminal terminal = terminals.get(terminalId);
+        return terminal != null ? terminal : terminals.computeIfAbsent(terminalId, this::open);
+    }
+
+    private Terminal open(String terminalId) {
+        TerminalPersistence persistence;
+        EventLogDrainer events = null;
+        ATMStateCache cache;
+        try {
+            persistence = new TerminalPersistence(terminalId, accounts, stateDir);
+            cache = new ATMStateCache(persistence);
+            if (eventDir != null) {
+                events = new EventLogDrainer(cache.getEventLog(),
+                        Files.createDirectories(eventDir).resolve(terminalId + ".log"), eventDrain);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open terminal " + terminalId + " - " + e.getMessage(), e);
+        }
+        ATMService service = new ATMService(persistence, cache, metrics, pinLockout, requests, liveAccounts);
+        return new Terminal(terminalId, cache, service, events);
+    }
+
+    public ATMService service(String terminalId) {
+        return terminal(terminalId).getService();
+    }
+
+    // Brings up every terminal that has a saved state; returns how many there were
+    public int openSaved() {
+        int opened = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stateDir, "*" + TerminalPersistence.STATE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                terminal(name.substring(0, name.length() - TerminalPersistence.STATE_SUFFIX.length()));
+                opened++;
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: Could not list terminal states - " + e.getMessage());
+        }
+        return opened;
+    }
+
+    public int size() {
+        return terminals.size();
+    }
+
+    public Set<String> terminalIds() {
+        return Collections.unmodifiableSet(new TreeSet<>(terminals.keySet()));
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Writes out what is left in the terminals' event logs
+    @Override
+    public void close() {
+        for (Terminal terminal : terminals.values()) {
+            if (terminal.events == null) continue;
+            try {
+                terminal.events.close();
+            } catch (IOException e) {
+                System.out.println("ERROR: Could not close event log of " + terminal.id + " - " + e.getMessage());
+            }
+        }
+        if (eventDrain != null) eventDrain.shutdown();
+    }
+
+    // ================== Fleet report ==================
+
+    public FleetSummary summarize() {
+        return terminals.values().parallelStream()
+                .collect(FleetSummary::new, FleetSummary::add, FleetSummary::combine)
+                .sorted();
+    }
+
+    public void printSummary() {
+        summarize().print();
+    }
+
+    // Totals over the fleet at one moment; terminal lists are sorted by ID
+    public static final class FleetSummary {
+        private int terminals;
+        private long totalCash;
+        private int outOfService;
+        private List<String> lowOnCash = new ArrayList<>();
+        private List<String> lowOnPaper = new ArrayList<>();
+
+        private void add(Terminal terminal) {
+            ATMState state = terminal.getState();
+            // One snapshot, so the total and the low-cash check agree
+            int cash = state.getInventory().getTotal();
+            terminals++;
+            totalCash += cash;
+            if (!state.isOperational()) outOfService++;
+            if (ATMState.isLowCashLevel(cash)) lowOnCash.add(terminal.getId());
+            if (state.getPaperTank().getPaperCount() < LOW_PAPER_THRESHOLD) lowOnPaper.add(terminal.getId());
+        }
+
+        private void combine(FleetSummary other) {
+            terminals += other.terminals;
+            totalCash += other.totalCash;
+            outOfService += other.outOfService;
+            lowOnCash.addAll(other.lowOnCash);
+            lowOnPaper.addAll(other.lowOnPaper);
+        }
+
+        private FleetSummary sorted() {
+            Collections.sort(lowOnCash);
+            Collections.sort(lowOnPaper);
+            lowOnCash = Collections.unmodifiableList(lowOnCash);
+            lowOnPaper = Collections.unmodifiableList(lowOnPaper);
+            return this;
+        }
+
+        public int getTerminals() { return terminals; }
+        public long getTotalCash() { return totalCash; }
+        public int getOutOfService() { return outOfService; }
+        public List<String> getLowOnCash() { return lowOnCash; }
+        public List<String> getLowOnPaper() { return lowOnPaper; }
+
+        public void print() {
+            System.out.println("\n--- FLEET STATUS ---");
+            System.out.println("Terminals: " + terminals);
+            System.out.println("Total cash: $" + totalCash);
+            System.out.println("Out of service: " + outOfService);
+            System.out.println("Low on cash (" + lowOnCash.size() + "): " + preview(lowOnCash));
+            System.out.println("Low on paper (" + lowOnPaper.size() + "): " + preview(lowOnPaper));
+            System.out.println("--------------------\n");
+        }
+
+        private static String preview(List<String> ids) {
+            if (ids.size() <= 20) return String.join(", ", ids);
+            return String.join(", ", ids.subList(0, 20)) + ", ...";
+        }
+    }
+}
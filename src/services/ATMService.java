@@ -2,47 +2,162 @@ package services;
 
 import core.*;
 import interfaces.Persistence;
+import metrics.ServiceMetrics;
+import persistence.InstrumentedPersistence;
+import java.util.function.BooleanSupplier;
 
+// One ATM: the machine state and the persistence behind it, shared by every customer session.
+// Customers get an ATMSession from openSession(); many sessions can be open at once.
+// Locking: machine state changes happen under stateLock, account changes under the
+// card's stripe in AccountLocks, always taken in the order account, then state, so
+// stateLock is never held while waiting for a stripe. Saving happens after stateLock
+// is released, so one session's disk write never holds up the others on the machine;
+// the account stays locked until its save is done.
 public class ATMService {
-    private Persistence persistence;
-    private Account account;
+    public static final int HISTORY_PAGE_SIZE = 10;
+
+    private final Persistence persistence;
+    private final ATMStateCache stateCache;
     private ATMState atmState;
-    private static final int MAX_PIN_ATTEMPTS = 3;
-    private int pinAttempts = 0;
+    private long stateVersion;
+    // Same monitor the technician's changes use (see ATMStateCache)
+    private final Object stateLock;
+    // Wrong-PIN counts by card, shared with other ATMService instances
+    private final PinLockout pinLockout;
+    // Results of requests sent with a request ID, for retries
+    private final IdempotencyTable requests;
+    private final AccountLocks accountLocks;
+    private final FundsTransfer funds;
+    private final ServiceMetrics metrics;
+
+    // Accounts in use by sessions, shared between sessions on the same card
+    private final LiveAccounts liveAccounts;
+
+    // Session used by the single-customer methods below (authenticate, withdraw, ...)
+    private ATMSession session;
 
     public ATMService(Persistence persistence) {
-        this.persistence = persistence;
-        this.atmState = persistence.loadATMState();
+        this(persistence, ATMStateCache.of(persistence));
     }
 
-    public boolean authenticate(String card, String pin) {
-        account = persistence.loadAccount(card);
+    public ATMService(Persistence persistence, ATMStateCache stateCache) {
+        this(persistence, stateCache, new ServiceMetrics());
+    }
+
+    // Operations and the persistence calls they make are timed into metrics
+    public ATMService(Persistence persistence, ATMStateCache stateCache, ServiceMetrics metrics) {
+        this(persistence, stateCache, metrics, PinLockout.global());
+    }
+
+    public ATMService(Persistence persistence, ATMStateCache stateCache, ServiceMetrics metrics, PinLockout pinLockout) {
+        this(persistence, stateCache, metrics, pinLockout, IdempotencyTable.global());
+    }
+
+    public ATMService(Persistence persistence, ATMStateCache stateCache, ServiceMetrics metrics, PinLockout pinLockout,
+                      IdempotencyTable requests) {
+        this(persistence, stateCache, metrics, pinLockout, requests, new LiveAccounts());
+    }
+
+    // Terminals of a fleet pass the same liveAccounts
+    ATMService(Persistence persistence, ATMStateCache stateCache, ServiceMetrics metrics, PinLockout pinLockout,
+               IdempotencyTable requests, LiveAccounts liveAccounts) {
+        this.metrics = metrics;
+        this.pinLockout = pinLockout;
+        this.requests = requests;
+        this.liveAccounts = liveAccounts;
+        this.accountLocks = liveAccounts.locks();
+        this.persistence = new InstrumentedPersistence(persistence, metrics);
+        this.stateCache = stateCache;
+        this.stateLock = stateCache;
+        this.stateVersion = stateCache.version();
+        this.atmState = stateCache.current();
+        this.funds = new FundsTransfer(this.persistence, accountLocks);
+    }
+
+    // ================== Sessions ==================
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ATMSession openSession(String card, String pin) {
+        long start = metrics.start();
+        ATMSession session = null;
+        try {
+            session = authenticateCard(card, pin);
+            return session;
+        } finally {
+            metrics.record(ServiceMetrics.Operation.AUTHENTICATE, start, session != null);
+        }
+    }
+
+    private ATMSession authenticateCard(String card, String pin) {
+        // Checked before the account is loaded, so guessing at a locked card costs no I/O
+        long locked = pinLockout.lockedFor(card);
+        if (locked > 0) {
+            System.out.println("ERROR: Card blocked after too many wrong PINs. Try again in "
+                    + (locked + 59_999) / 60_000 + " min.");
+            return null;
+        }
+
+        Account account = acquireAccount(card);
         if (account == null) {
             System.out.println("ERROR: Card not found.");
-            return false;
+            return null;
         }
 
         if (account.isCardExpired()) {
+            releaseAccount(card);
             System.out.println("ERROR: Your card has expired. Please contact your bank.");
-            return false;
+            return null;
         }
 
         if (!account.getPin().equals(pin)) {
-            pinAttempts++;
-            if (pinAttempts >= MAX_PIN_ATTEMPTS) {
+            releaseAccount(card);
+            int remaining = pinLockout.recordFailure(card);
+            if (remaining == 0) {
                 System.out.println("ERROR: Maximum PIN attempts exceeded. Card blocked.");
-                return false;
+                return null;
             }
-            System.out.println("Invalid PIN. Attempts remaining: " + (MAX_PIN_ATTEMPTS - pinAttempts));
-            return false;
+            System.out.println("Invalid PIN. Attempts remaining: " + remaining);
+            return null;
         }
 
-        pinAttempts = 0;
+        pinLockout.recordSuccess(card);
         System.out.println("Authentication successful! Welcome, " + card);
-        return true;
+        return new ATMSession(this, account);
+    }
+
+    void closeSession(ATMSession closed) {
+        releaseAccount(closed.getCardNumber());
     }
 
-    public void checkBalance() {
+    Account acquireAccount(String card) {
+        return liveAccounts.acquire(card, persistence);
+    }
+
+    void releaseAccount(String card) {
+        liveAccounts.release(card);
+    }
+
+    // ================== Single-customer API ==================
+
+    public boolean authenticate(String card, String pin) {
+        if (session != null) session.close();
+        session = openSession(card, pin);
+        return session != null;
+    }
+
+    public void checkBalance() { session.checkBalance(); }
+    public boolean withdraw(double amount) { return session.withdraw(amount); }
+    public boolean deposit(double amount) { return session.deposit(amount); }
+    public boolean transfer(String recipientCard, double amount) { return session.transfer(recipientCard, amount); }
+    public void viewTransactionHistory() { session.viewTransactionHistory(); }
+    public void changePin(String newPin) { session.changePin(newPin); }
+
+    // ================== Operations ==================
+
+    void checkBalance(Account account) {
         System.out.println("\n========== ACCOUNT INFORMATION ==========");
         System.out.println("Card Number: " + maskCardNumber(account.getCardNumber()));
         System.out.println("Current Balance: $" + String.format("%.2f", account.getBalance()));
@@ -51,143 +166,280 @@ public class ATMService {
         System.out.println("=========================================\n");
     }
 
-    public boolean withdraw(double amount) {
+    // With a request ID (null = none), a retry of the same request returns the first
+    // result without running again; see IdempotencyTable. Exceptions are turned into a
+    // failed result here, outside the table, so a failure the customer did not cause
+    // (the store could not be written) is not remembered and the retry runs again.
+    boolean withdraw(Account account, double amount, String requestId) {
         try {
-            // CRITICAL FIX: Reload the state from JSON so the Customer
-            // sees the paper/cash refilled by the Technician.
-            reloadState();
+            return keyed(account, requestId, "WITHDRAW " + amount,
+                    () -> timed(ServiceMetrics.Operation.WITHDRAW, () -> performWithdraw(account, amount)));
+        } catch (RuntimeException e) {
+            System.out.println("ERROR: Withdrawal failed - " + e.getMessage());
+            return false;
+        }
+    }
 
-            if (amount <= 0) {
-                System.out.println("ERROR: Withdrawal amount must be positive.");
-                return false;
-            }
+    boolean deposit(Account account, double amount, String requestId) {
+        try {
+            return keyed(account, requestId, "DEPOSIT " + amount,
+                    () -> timed(ServiceMetrics.Operation.DEPOSIT, () -> performDeposit(account, amount)));
+        } catch (RuntimeException e) {
+            System.out.println("ERROR: Deposit failed.");
+            return false;
+        }
+    }
 
-            // Validation for banknotes
-            if (amount % 10 != 0) {
-                System.out.println("ERROR: This ATM only dispenses $20, $50, and $100 bills.");
-                return false;
-            }
+    boolean transfer(Account account, String recipientCard, double amount, String requestId) {
+        try {
+            return keyed(account, requestId, "TRANSFER " + recipientCard + " " + amount,
+                    () -> timed(ServiceMetrics.Operation.TRANSFER, () -> performTransfer(account, recipientCard, amount)));
+        } catch (RuntimeException e) {
+            System.out.println("ERROR: Transfer failed.");
+            return false;
+        }
+    }
 
-            // 1. Check Paper Level BEFORE starting transaction
-            if (atmState.getPaperTank().isEmpty()) {
-                System.out.println("ERROR: ATM out of paper. Transaction cancelled to ensure receipt printing.");
-                return false;
-            }
+    boolean withdraw(Account account, double amount) {
+        return withdraw(account, amount, null);
+    }
 
-            // 2. Try to dispense physical cash first
-            if (!atmState.dispenseCash(amount)) {
-                System.out.println("ERROR: ATM cannot dispense this amount with available bills.");
-                return false;
-            }
+    boolean deposit(Account account, double amount) {
+        return deposit(account, amount, null);
+    }
 
-            // 3. Try to deduct from digital account
-            if (!account.withdraw(amount)) {
-                // REVERT physical cash if bank balance check fails
-                atmState.addCash(amount);
-                System.out.println("ERROR: Insufficient balance or daily limit exceeded.");
-                return false;
-            }
+    boolean transfer(Account account, String recipientCard, double amount) {
+        return transfer(account, recipientCard, amount, null);
+    }
 
-            // 4. Use 1 sheet of paper for the receipt
-            atmState.getPaperTank().usePaper(1);
+    // Runs the operation through the request table when there is a request ID
+    private boolean keyed(Account account, String requestId, String fingerprint, BooleanSupplier operation) {
+        if (requestId == null) return operation.getAsBoolean();
+        return requests.execute(requestKey(account, requestId), fingerprint, operation);
+    }
 
-            // 5. Save everything to persistence
-            persistence.saveAccount(account);
-            persistence.saveATMState(atmState);
+    // Request IDs are per card
+    private static String requestKey(Account account, String requestId) {
+        return account.getCardNumber() + '/' + requestId;
+    }
 
-            System.out.println("SUCCESS: Please collect your cash. Receipt printed.");
-            return true;
-        } catch (Exception e) {
-            System.out.println("ERROR: Withdrawal failed - " + e.getMessage());
-            return false;
+    // An operation that throws is recorded as failed
+    private boolean timed(ServiceMetrics.Operation op, BooleanSupplier operation) {
+        long start = metrics.start();
+        boolean ok = false;
+        try {
+            ok = operation.getAsBoolean();
+            return ok;
+        } finally {
+            metrics.record(op, start, ok);
         }
     }
 
-    public boolean deposit(double amount) {
+    private boolean performWithdraw(Account account, double amount) {
+        if (amount <= 0) {
+            System.out.println("ERROR: Withdrawal amount must be positive.");
+            return false;
+        }
+
+        // The card's stripe is taken before stateLock, never while holding it: a session that
+        // waits for a stripe held through another save does not hold up the whole machine
+        String card = account.getCardNumber();
+        long change;
+        ATMState machine;
+        int[] notes;
+        boolean saving = false;
+        accountLocks.lock(card);
         try {
-            if (amount <= 0) {
-                System.out.println("ERROR: Deposit amount must be positive.");
-                return false;
-            }
+            synchronized (stateLock) {
+                // Pick up paper/cash refilled by the Technician (a version check, no file I/O)
+                refreshState();
 
-            if (!atmState.addCashDeposit(amount)) {
-                System.out.println("ERROR: ATM capacity reached. Cannot accept deposit.");
-                return false;
+                // Validation for banknotes: the loaded cassettes decide what can be paid
+                if (amount % atmState.getNoteUnit() != 0) {
+                    System.out.println("ERROR: This ATM only dispenses " + atmState.describeNotes() + " bills.");
+                    return false;
+                }
+
+                // 1. Check Paper Level BEFORE starting transaction (less receipts still queued)
+                if (!stateCache.receipts().hasPaper()) {
+                    System.out.println("ERROR: ATM out of paper. Transaction cancelled to ensure receipt printing.");
+                    return false;
+                }
+
+                // 2. Try to dispense physical cash first
+                machine = atmState;
+                notes = machine.dispenseNotes(amount);
+                if (notes == null) {
+                    System.out.println("ERROR: ATM cannot dispense this amount with available bills.");
+                    return false;
+                }
+
+                // 3. Try to deduct from digital account
+                if (!account.withdraw(amount)) {
+                    // REVERT physical cash if bank balance check fails: the same notes go back
+                    atmState.returnNotes(notes);
+                    System.out.println("ERROR: Insufficient balance or daily limit exceeded.");
+                    return false;
+                }
+                change = stateCache.changed();
             }
+            saving = true;
+        } finally {
+            // On success the account stays locked until it is saved
+            if (!saving) accountLocks.unlock(card);
+        }
 
-            account.deposit(amount);
-            printReceipt("DEPOSIT", amount);
+        // 4. Save the account, then the machine state, outside stateLock: other sessions on
+        // this machine carry on during the disk write (and share its fsync in group commit).
+        // If the save throws, nothing was paid out: the debit and the notes are taken back
+        // so that a retry of the request starts over instead of applying it twice.
+        boolean saved = false;
+        try {
             persistence.saveAccount(account);
-            persistence.saveATMState(atmState);
-            return true;
-        } catch (Exception e) {
-            System.out.println("ERROR: Deposit failed.");
-            return false;
+            saved = true;
+        } finally {
+            if (!saved) {
+                account.undoLastTransaction();
+                synchronized (stateLock) {
+                    machine.returnNotes(notes);
+                    stateCache.changed();
+                }
+            }
+            accountLocks.unlock(card);
         }
+        stateCache.persist(change, persistence);
+
+        // 5. Receipt is printed in the background (see ReceiptSpooler)
+        System.out.println("SUCCESS: Please collect your cash.");
+        printReceipt(account, "WITHDRAWAL", amount);
+        return true;
     }
 
-    public boolean transfer(String recipientCard, double amount) {
+    private boolean performDeposit(Account account, double amount) {
+        if (amount <= 0) {
+            System.out.println("ERROR: Deposit amount must be positive.");
+            return false;
+        }
+
+        // Stripe first, then stateLock, as for withdrawals
+        String card = account.getCardNumber();
+        long change;
+        ATMState machine;
+        boolean saving = false;
+        accountLocks.lock(card);
         try {
-            Account recipient = persistence.loadAccount(recipientCard);
-            if (recipient == null) {
-                System.out.println("ERROR: Recipient not found.");
-                return false;
+            synchronized (stateLock) {
+                refreshState();
+                machine = atmState;
+                if (!machine.addCashDeposit(amount)) {
+                    System.out.println("ERROR: ATM capacity reached. Cannot accept deposit.");
+                    return false;
+                }
+                account.deposit(amount);
+                change = stateCache.changed();
             }
+            saving = true;
+        } finally {
+            if (!saving) accountLocks.unlock(card);
+        }
 
-            if (account.transfer(amount, recipientCard)) {
-                recipient.receiveTransfer(amount, account.getCardNumber());
-                persistence.saveAccount(account);
-                persistence.saveAccount(recipient);
-                printReceipt("TRANSFER", amount);
-                return true;
+        // Saved outside stateLock, as for withdrawals; a deposit that cannot be saved is
+        // taken back and its notes handed back to the customer
+        boolean saved = false;
+        try {
+            persistence.saveAccount(account);
+            saved = true;
+        } finally {
+            if (!saved) {
+                account.undoLastTransaction();
+                synchronized (stateLock) {
+                    machine.returnDeposit(amount);
+                    stateCache.changed();
+                }
             }
-            return false;
-        } catch (Exception e) {
+            accountLocks.unlock(card);
+        }
+        stateCache.persist(change, persistence);
+        printReceipt(account, "DEPOSIT", amount);
+        return true;
+    }
+
+    private boolean performTransfer(Account account, String recipientCard, double amount) {
+        Account recipient = acquireAccount(recipientCard);
+        if (recipient == null) {
+            System.out.println("ERROR: Recipient not found.");
             return false;
         }
+        try {
+            if (!funds.transfer(account, recipient, amount)) return false;
+            printReceipt(account, "TRANSFER", amount);
+            return true;
+        } finally {
+            releaseAccount(recipientCard);
+        }
     }
 
-    public void viewTransactionHistory() {
-        account.printTransactionHistory(10);
+    void viewTransactionHistory(Account account) {
+        viewTransactionHistory(account, HistoryQuery.newest(HISTORY_PAGE_SIZE));
     }
 
-    public void reloadState() {
-        this.atmState = persistence.loadATMState();
+    HistoryPage viewTransactionHistory(Account account, HistoryQuery query) {
+        accountLocks.lock(account.getCardNumber());
+        try {
+            return account.printTransactionHistory(query);
+        } finally {
+            accountLocks.unlock(account.getCardNumber());
+        }
     }
 
+    HistoryPage queryTransactionHistory(Account account, HistoryQuery query) {
+        accountLocks.lock(account.getCardNumber());
+        try {
+            return account.getTransactionHistory().query(query);
+        } finally {
+            accountLocks.unlock(account.getCardNumber());
+        }
+    }
+
+    // Caller holds stateLock
+    private void refreshState() {
+        long version = stateCache.version();
+        if (version != stateVersion) {
+            atmState = stateCache.current();
+            stateVersion = version;
+        }
+    }
 
+    // Force a re-read from persistence, for changes made outside this process
+    public void reloadState() {
+        stateCache.reload();
+    }
 
-    public void changePin(String newPin) {
+    void changePin(Account account, String newPin) {
         if (newPin != null && newPin.length() >= 4) {
-            account.setPin(newPin);
-            persistence.saveAccount(account);
+            accountLocks.lock(account.getCardNumber());
+            try {
+                account.setPin(newPin);
+                persistence.saveAccount(account);
+            } finally {
+                accountLocks.unlock(account.getCardNumber());
+            }
             System.out.println("SUCCESS: PIN updated.");
         } else {
             System.out.println("ERROR: Invalid PIN format.");
         }
     }
 
-    private void printReceipt(String transactionType, double amount) {
-        // 1. Check if we have paper before printing
-        if (atmState.getPaperTank().isEmpty()) {
-            System.out.println("ALERT: Receipt could not be printed (Out of Paper).");
-            return;
+    // Hands the receipt to the spooler; the transaction has committed and does not wait for it
+    private void printReceipt(Account account, String transactionType, double amount) {
+        ReceiptSpooler receipts = stateCache.receipts();
+        if (!receipts.submit(transactionType, amount, account.getBalance(), metrics)) {
+            System.out.println(receipts.hasPaper() ? "ALERT: Receipt printer busy, no receipt printed."
+                    : "ALERT: Receipt could not be printed (Out of Paper).");
         }
-
-        // 2. Display the receipt to the console
-        System.out.println("\n------- RECEIPT -------");
-        System.out.println("Type:    " + transactionType);
-        System.out.println("Amount:  $" + String.format("%.2f", amount));
-        System.out.println("Balance: $" + String.format("%.2f", account.getBalance()));
-        System.out.println("Date:    " + java.time.LocalDateTime.now());
-        System.out.println("-----------------------\n");
-
-        // 3. Deduct the paper and save the state
-        atmState.getPaperTank().usePaper(1);
-        persistence.saveATMState(atmState);
     }
 
     private String maskCardNumber(String card) {
         return card.length() > 4 ? "****" + card.substring(card.length() - 4) : "****";
     }
-}
\ No newline at end of file
+}
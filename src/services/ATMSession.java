@@ -0,0 +1,92 @@
+package services;
+
+import core.Account;
+import core.HistoryPage;
+import core.HistoryQuery;
+
+// One customer's visit to the ATM: opened by ATMService.openSession after the card
+// and PIN check, closed on logout. All sessions of an ATMService share its machine
+// state and persistence, so they can be driven from many threads at once.
+public class ATMSession implements AutoCloseable {
+    private final ATMService atm;
+    private final Account account;
+    private volatile boolean open = true;
+
+    ATMSession(ATMService atm, Account account) {
+        this.atm = atm;
+        this.account = account;
+    }
+
+    public String getCardNumber() { return account.getCardNumber(); }
+    public double getBalance() { return account.getBalance(); }
+    public boolean isOpen() { return open; }
+
+    public void checkBalance() {
+        ensureOpen();
+        atm.checkBalance(account);
+    }
+
+    public boolean withdraw(double amount) {
+        ensureOpen();
+        return atm.withdraw(account, amount);
+    }
+
+    public boolean deposit(double amount) {
+        ensureOpen();
+        return atm.deposit(account, amount);
+    }
+
+    public boolean transfer(String recipientCard, double amount) {
+        ensureOpen();
+        return atm.transfer(account, recipientCard, amount);
+    }
+
+    // Same, with a request ID: a retry with the same ID gets the first result and changes nothing
+    public boolean withdraw(double amount, String requestId) {
+        ensureOpen();
+        return atm.withdraw(account, amount, requestId);
+    }
+
+    public boolean deposit(double amount, String requestId) {
+        ensureOpen();
+        return atm.deposit(account, amount, requestId);
+    }
+
+    public boolean transfer(String recipientCard, double amount, String requestId) {
+        ensureOpen();
+        return atm.transfer(account, recipientCard, amount, requestId);
+    }
+
+    public void viewTransactionHistory() {
+        ensureOpen();
+        atm.viewTransactionHistory(account);
+    }
+
+    // Prints one page of history and returns it; pass its cursor to the next query for more
+    public HistoryPage viewTransactionHistory(HistoryQuery query) {
+        ensureOpen();
+        return atm.viewTransactionHistory(account, query);
+    }
+
+    public HistoryPage queryTransactionHistory(HistoryQuery query) {
+        ensureOpen();
+        return atm.queryTransactionHistory(account, query);
+    }
+
+    public void changePin(String newPin) {
+        ensureOpen();
+        atm.changePin(account, newPin);
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            atm.closeSession(this);
+        }
+    }
+
+    private void ensureOpen() {
+        if (!open) throw new IllegalStateException("Session is closed");
+    }
+}
@@ -0,0 +1,117 @@
+package services;
+
+import core.ATMState;
+import core.EventLog;
+import interfaces.Persistence;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// The ATM state shared by everything in this process (customer sessions and the technician).
+// It is loaded once; readers get the in-memory object without touching the file.
+// Every technician change bumps the version, so holders of the state can tell cheaply
+// whether something changed since they last looked.
+// Changes to the state are made while holding this object's monitor; saving them is
+// not (see persist), so nobody waits on the monitor while the disk syncs.
+public class ATMStateCache {
+    private final Persistence persistence;
+    private volatile ATMState state;
+    private volatile long version;
+    private final ReceiptSpooler receipts = new ReceiptSpooler(this);
+    // This machine's events; attached to whatever state object is current
+    private final EventLog eventLog;
+    private static final int EVENT_LOG_CAPACITY = 1024;
+
+    // Every change to the state gets a number; savedChange is the newest one on disk
+    private final AtomicLong changes = new AtomicLong();
+    private final Object saveLock = new Object();
+    private long savedChange;
+
+    // Caches handed out by of(), by persistence; both sides weak, so unused ones go away
+    private static final Map<Persistence, WeakReference<ATMStateCache>> SHARED = new WeakHashMap<>();
+
+    public ATMStateCache(Persistence persistence) {
+        this(persistence, new EventLog(EVENT_LOG_CAPACITY));
+    }
+
+    // The machine's events go to eventLog (e.g. EventLog.global() for the one ATM of Main)
+    public ATMStateCache(Persistence persistence, EventLog eventLog) {
+        this.persistence = persistence;
+        this.eventLog = eventLog;
+        this.state = attach(persistence.loadATMState());
+    }
+
+    private ATMState attach(ATMState loaded) {
+        loaded.attachEventLog(eventLog);
+        eventLog.record(EventLog.EventType.ATM_INITIALIZED);
+        return loaded;
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    // The cache shared by everything created from just a Persistence (new ATMService(p),
+    // new V2Technician(p)), so a technician's refill reaches the customers of that store
+    public static ATMStateCache of(Persistence persistence) {
+        synchronized (SHARED) {
+            WeakReference<ATMStateCache> ref = SHARED.get(persistence);
+            ATMStateCache cache = ref == null ? null : ref.get();
+            if (cache == null) {
+                cache = new ATMStateCache(persistence);
+                SHARED.put(persistence, new WeakReference<>(cache));
+            }
+            return cache;
+        }
+    }
+
+    public ATMState current() {
+        return state;
+    }
+
+    // Prints this machine's receipts and takes their paper and ink from the state
+    public ReceiptSpooler receipts() {
+        return receipts;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    // Apply a technician change to the shared state and save it
+    public void mutate(Consumer<ATMState> change) {
+        long changed;
+        synchronized (this) {
+            change.accept(state);
+            version++;
+            changed = changed();
+        }
+        persist(changed, persistence);
+    }
+
+    // Caller holds this monitor and has just changed the state; returns the change's number
+    long changed() {
+        return changes.incrementAndGet();
+    }
+
+    // Saves the state if the given change is not on disk yet. Called after releasing the
+    // monitor: the state is written as it is now, which includes every change numbered up
+    // to when the write started, so a caller whose change was covered by someone else's
+    // write returns at once. Writes of the state are one at a time, in change order.
+    void persist(long change, Persistence through) {
+        synchronized (saveLock) {
+            if (savedChange >= change) return;
+            long upTo = changes.get();
+            through.saveATMState(state);
+            savedChange = upTo;
+        }
+    }
+
+    // Re-read the state from persistence, e.g. after it was edited outside this process
+    public synchronized void reload() {
+        state = attach(persistence.loadATMState());
+        version++;
+    }
+}
@@ -0,0 +1,55 @@
+package services;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Striped lock table keyed by card number.
+// A fixed array of locks is shared by all accounts, so memory stays constant no matter
+// how many cards are seen, and operations on unrelated accounts rarely share a stripe.
+// Two-account operations lock both stripes in index order, which rules out deadlock.
+public class AccountLocks {
+    private static final int DEFAULT_STRIPES = 1024;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public AccountLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public AccountLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(stripeCount - 1, 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) stripes[i] = new ReentrantLock();
+        this.mask = size - 1;
+    }
+
+    private int stripeOf(String card) {
+        int h = card.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public void lock(String card) {
+        stripes[stripeOf(card)].lock();
+    }
+
+    public void unlock(String card) {
+        stripes[stripeOf(card)].unlock();
+    }
+
+    // Locks the stripes of both cards, lower index first; a shared stripe is locked once
+    public void lockBoth(String cardA, String cardB) {
+        int a = stripeOf(cardA), b = stripeOf(cardB);
+        if (a == b) {
+            stripes[a].lock();
+        } else {
+            stripes[Math.min(a, b)].lock();
+            stripes[Math.max(a, b)].lock();
+        }
+    }
+
+    public void unlockBoth(String cardA, String cardB) {
+        int a = stripeOf(cardA), b = stripeOf(cardB);
+        stripes[a].unlock();
+        if (a != b) stripes[b].unlock();
+    }
+}
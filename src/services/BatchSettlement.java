@@ -0,0 +1,372 @@
+package services;
+
+import core.Account;
+import interfaces.Persistence;
+import persistence.BinaryFileHandler;
+import persistence.IndexedAccountStore;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Applies a file of transfer instructions, one "fromCard,toCard,amount" per line
+// (blank lines and lines starting with # are skipped), through Account.transfer and
+// Account.receiveTransfer, as if they were done one after another in file order.
+//
+// Each instruction only has to wait for the instructions before it that touch one of
+// its two accounts. The batch is turned into that dependency graph (every instruction
+// has at most two predecessors: the previous instruction on each of its accounts) and
+// run on a fork-join pool: an instruction runs as soon as its predecessors are done,
+// and the thread that finishes the last predecessor runs it next. Every account sees
+// the same operations in the same order as a sequential run, so balances and declined
+// transfers come out exactly the same, whatever the thread count.
+//
+// The file is read in batches (256k instructions by default), so the instruction arrays
+// stay the size of one batch whatever the file size. Every account seen is kept loaded
+// for the whole run, though, and each applied instruction adds an entry to the
+// transaction history of both of its accounts, so memory still grows with the number of
+// instructions: up to each account's history capacity, and without limit for accounts
+// loaded with an unbounded history (capacity 0, the default). After each batch the
+// accounts it touched are saved. Settlement is meant to run offline: it loads its own
+// copies of the accounts and does not coordinate with live ATM sessions.
+public class BatchSettlement {
+    private static final int DEFAULT_BATCH_SIZE = 256 * 1024;
+    private static final int NONE = -1;
+    private static final int ROOTS_PER_TASK = 1024;
+    private static final byte APPLIED = 1, DECLINED = 2;
+
+    private final Persistence persistence;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    // Accounts seen so far; UNKNOWN for cards the store does not have
+    private final Map<String, Integer> accountIndex = new HashMap<>();
+    private Account[] accounts = new Account[1024];
+    private int accountCount;
+    private static final Integer UNKNOWN = NONE;
+
+    // Current batch, one slot per instruction
+    private final int[] from, to;
+    private final double[] amount;
+    private final byte[] outcome;
+    private final int[] nextFrom, nextTo; // next instruction on the sender's / recipient's account
+    private final AtomicIntegerArray waitingFor; // predecessors not finished yet
+    private final int[] roots;
+    private int size, rootCount;
+    // Last instruction of this batch on each account, and the accounts touched
+    private int[] lastOn = new int[1024];
+    private int[] touched = new int[1024];
+    private int touchedCount;
+
+    private final List<BatchResult> results = new ArrayList<>();
+    private long lineNumber;
+
+    public static final class BatchResult {
+        private final int batch, instructions, applied, declined, rejected;
+        private final long settleNanos, saveNanos;
+
+        BatchResult(int batch, int instructions, int applied, int declined, int rejected, long settleNanos, long saveNanos) {
+            this.batch = batch;
+            this.instructions = instructions;
+            this.applied = applied;
+            this.declined = declined;
+            this.rejected = rejected;
+            this.settleNanos = settleNanos;
+            this.saveNanos = saveNanos;
+        }
+
+        public int getBatch() { return batch; }
+        public int getInstructions() { return instructions; }
+        public int getApplied() { return applied; }
+        // Insufficient funds at the time the transfer came up
+        public int getDeclined() { return declined; }
+        // Malformed line or unknown card; not counted in instructions
+        public int getRejected() { return rejected; }
+        public long getSettleNanos() { return settleNanos; }
+        public long getSaveNanos() { return saveNanos; }
+
+        public double getThroughput() {
+            return settleNanos == 0 ? 0 : instructions * 1e9 / settleNanos;
+        }
+    }
+
+    public BatchSettlement(Persistence persistence) {
+        this(persistence, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    public BatchSettlement(Persistence persistence, ForkJoinPool pool, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive");
+        this.persistence = persistence;
+        this.pool = pool;
+        this.batchSize = batchSize;
+        from = new int[batchSize];
+        to = new int[batchSize];
+        amount = new double[batchSize];
+        outcome = new byte[batchSize];
+        nextFrom = new int[batchSize];
+        nextTo = new int[batchSize];
+        waitingFor = new AtomicIntegerArray(batchSize);
+        roots = new int[batchSize];
+        Arrays.fill(lastOn, NONE);
+    }
+
+    public List<BatchResult> settle(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return settle(reader);
+        }
+    }
+
+    // Returns the results of the batches run by this call
+    public List<BatchResult> settle(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+        int first = results.size();
+        int rejected = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (!add(line)) rejected++;
+            if (size == batchSize) {
+                runBatch(rejected);
+                rejected = 0;
+            }
+        }
+        if (size > 0 || rejected > 0) runBatch(rejected);
+        return Collections.unmodifiableList(results.subList(first, results.size()));
+    }
+
+    // Parses one line into the batch; false if it was rejected
+    private boolean add(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.charAt(0) == '#') return true;
+        int c1 = line.indexOf(',');
+        int c2 = c1 < 0 ? -1 : line.indexOf(',', c1 + 1);
+        if (c2 < 0) return reject("expected fromCard,toCard,amount");
+        double value;
+        try {
+            value = Double.parseDouble(line.substring(c2 + 1).trim());
+        } catch (NumberFormatException e) {
+            return reject("bad amount");
+        }
+        if (!(value > 0) || Double.isInfinite(value)) return reject("amount must be positive");
+        String fromCard = line.substring(0, c1).trim(), toCard = line.substring(c1 + 1, c2).trim();
+        int a = indexOf(fromCard), b = indexOf(toCard);
+        if (a == NONE) return reject("unknown card " + fromCard);
+        if (b == NONE) return reject("unknown card " + toCard);
+
+        int i = size++;
+        from[i] = a;
+        to[i] = b;
+        amount[i] = value;
+        nextFrom[i] = NONE;
+        nextTo[i] = NONE;
+        // One link per predecessor side; the same predecessor on both sides counts twice
+        int waits = link(a, i);
+        if (b != a) waits += link(b, i);
+        waitingFor.set(i, waits);
+        if (waits == 0) roots[rootCount++] = i;
+        return true;
+    }
+
+    private boolean reject(String reason) {
+        System.out.println("ERROR: Line " + lineNumber + " skipped - " + reason);
+        return false;
+    }
+
+    // Makes instruction i the successor of the last instruction on the account; returns 1 if there was one
+    private int link(int account, int i) {
+        int p = lastOn[account];
+        lastOn[account] = i;
+        if (p == NONE) {
+            touched = grow(touched, touchedCount + 1);
+            touched[touchedCount++] = account;
+            return 0;
+        }
+        if (from[p] == account) nextFrom[p] = i;
+        else nextTo[p] = i;
+        return 1;
+    }
+
+    private int indexOf(String card) {
+        Integer index = accountIndex.get(card);
+        if (index == null) {
+            Account account = persistence.loadAccount(card);
+            if (account == null) {
+                index = UNKNOWN;
+            } else {
+                index = accountCount;
+                accounts = grow(accounts, accountCount + 1);
+                if (lastOn.length <= accountCount) {
+                    int old = lastOn.length;
+                    lastOn = Arrays.copyOf(lastOn, Math.max(old * 2, accountCount + 1));
+                    Arrays.fill(lastOn, old, lastOn.length, NONE);
+                }
+                accounts[accountCount++] = account;
+            }
+            accountIndex.put(card, index);
+        }
+        return index;
+    }
+
+    private void runBatch(int rejected) {
+        long t0 = System.nanoTime();
+        if (rootCount > 0) pool.invoke(new Roots(null, 0, rootCount));
+        long t1 = System.nanoTime();
+
+        int applied = 0;
+        for (int i = 0; i < size; i++) {
+            if (outcome[i] == APPLIED) applied++;
+        }
+        for (int k = 0; k < touchedCount; k++) {
+            int account = touched[k];
+            persistence.saveAccount(accounts[account]);
+            lastOn[account] = NONE;
+        }
+        long t2 = System.nanoTime();
+        results.add(new BatchResult(results.size() + 1, size, applied, size - applied, rejected, t1 - t0, t2 - t1));
+        size = 0;
+        rootCount = 0;
+        touchedCount = 0;
+    }
+
+    private void apply(int i) {
+        Account sender = accounts[from[i]], recipient = accounts[to[i]];
+        if (sender.transfer(amount[i], recipient.getCardNumber())) {
+            recipient.receiveTransfer(amount[i], sender.getCardNumber());
+            outcome[i] = APPLIED;
+        } else {
+            outcome[i] = DECLINED;
+        }
+    }
+
+    // Runs instruction i and then whatever it unblocks: one successor on this thread,
+    // a second one (if both became ready) as a new task under owner
+    private void runFrom(CountedCompleter<?> owner, int i) {
+        while (i != NONE) {
+            apply(i);
+            int ready = NONE;
+            int a = nextFrom[i], b = nextTo[i];
+            if (a != NONE && waitingFor.decrementAndGet(a) == 0) ready = a;
+            if (b != NONE && waitingFor.decrementAndGet(b) == 0) {
+                if (ready == NONE) {
+                    ready = b;
+                } else {
+                    owner.addToPendingCount(1);
+                    new Chain(owner, b).fork();
+                }
+            }
+            i = ready;
+        }
+    }
+
+    // The instructions with no predecessors, split into tasks. Tasks are never serialized,
+    // so neither task class declares a serialVersionUID.
+    @SuppressWarnings("serial")
+    private final class Roots extends CountedCompleter<Void> {
+        private final int lo;
+        private int hi;
+
+        Roots(CountedCompleter<?> parent, int lo, int hi) {
+            super(parent);
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public void compute() {
+            while (hi - lo > ROOTS_PER_TASK) {
+                int mid = (lo + hi) >>> 1;
+                addToPendingCount(1);
+                new Roots(this, mid, hi).fork();
+                hi = mid;
+            }
+            for (int r = lo; r < hi; r++) runFrom(this, roots[r]);
+            tryComplete();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class Chain extends CountedCompleter<Void> {
+        private final int start;
+
+        Chain(CountedCompleter<?> parent, int start) {
+            super(parent);
+            this.start = start;
+        }
+
+        @Override
+        public void compute() {
+            runFrom(this, start);
+            tryComplete();
+        }
+    }
+
+    private static int[] grow(int[] array, int needed) {
+        return needed <= array.length ? array : Arrays.copyOf(array, Math.max(array.length * 2, needed));
+    }
+
+    private static Account[] grow(Account[] array, int needed) {
+        return needed <= array.length ? array : Arrays.copyOf(array, Math.max(array.length * 2, needed));
+    }
+
+    public List<BatchResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public void printReport(PrintStream out) {
+        out.println("\n========== SETTLEMENT REPORT ==========");
+        out.printf("%-6s %12s %12s %10s %9s %10s %12s %9s%n",
+                "batch", "instructions", "applied", "declined", "rejected", "settle(s)", "instr/s", "save(s)");
+        long instructions = 0, applied = 0, declined = 0, rejected = 0, settle = 0, save = 0;
+        for (BatchResult r : results) {
+            out.printf("%-6d %12d %12d %10d %9d %10.3f %12.0f %9.3f%n", r.batch, r.instructions, r.applied,
+                    r.declined, r.rejected, r.settleNanos / 1e9, r.getThroughput(), r.saveNanos / 1e9);
+            instructions += r.instructions;
+            applied += r.applied;
+            declined += r.declined;
+            rejected += r.rejected;
+            settle += r.settleNanos;
+            save += r.saveNanos;
+        }
+        out.printf("%-6s %12d %12d %10d %9d %10.3f %12.0f %9.3f%n", "total", instructions, applied, declined,
+                rejected, settle / 1e9, settle == 0 ? 0 : instructions * 1e9 / settle, save / 1e9);
+        out.println("accounts: " + accountCount + ", parallelism: " + pool.getParallelism());
+        out.println("=======================================\n");
+    }
+
+    // Usage: java services.BatchSettlement <instructions.csv> <binary:<dir>|indexed:<file>>
+    // The store must be given: JsonHandler keeps a single account.json, so a batch over many
+    // cards would settle every instruction against one account and overwrite that file.
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: BatchSettlement <instructions.csv> <binary:<dir>|indexed:<file>>");
+            return;
+        }
+        String store = args[1];
+        Persistence persistence;
+        if (store.startsWith("binary:")) {
+            persistence = new BinaryFileHandler(Paths.get(store.substring("binary:".length())));
+        } else if (store.startsWith("indexed:")) {
+            persistence = new IndexedAccountStore(Paths.get(store.substring("indexed:".length())), 1024);
+        } else {
+            System.out.println("ERROR: Unknown store " + store);
+            return;
+        }
+        BatchSettlement settlement = new BatchSettlement(persistence);
+        settlement.settle(Paths.get(args[0]));
+        settlement.printReport(System.out);
+        if (persistence instanceof IndexedAccountStore) ((IndexedAccountStore) persistence).close();
+    }
+}
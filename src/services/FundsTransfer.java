@@ -0,0 +1,50 @@
+package services;
+
+import core.Account;
+import interfaces.Persistence;
+
+// Moves money between two accounts under their account locks.
+// Both sides are debited, credited and saved while both stripes are held, so no
+// concurrent operation can observe or overwrite a half-applied transfer. A save that
+// throws undoes the transfer in memory before the exception goes on.
+public class FundsTransfer {
+    private final Persistence persistence;
+    private final AccountLocks locks;
+
+    public FundsTransfer(Persistence persistence, AccountLocks locks) {
+        this.persistence = persistence;
+        this.locks = locks;
+    }
+
+    public boolean transfer(Account sender, Account recipient, double amount) {
+        String from = sender.getCardNumber();
+        String to = recipient.getCardNumber();
+        locks.lockBoth(from, to);
+        try {
+            if (!sender.transfer(amount, to)) return false;
+            recipient.receiveTransfer(amount, from);
+            boolean senderSaved = false;
+            try {
+                persistence.saveAccount(sender);
+                senderSaved = true;
+                persistence.saveAccount(recipient);
+            } catch (RuntimeException | Error e) {
+                // The store does not hold the whole transfer: take it back on both sides, and
+                // write the sender back if its debit already went out, so a retry starts over
+                sender.undoLastTransaction();
+                recipient.undoLastTransaction();
+                if (senderSaved) {
+                    try {
+                        persistence.saveAccount(sender);
+                    } catch (RuntimeException again) {
+                        e.addSuppressed(again);
+                    }
+                }
+                throw e;
+            }
+            return true;
+        } finally {
+            locks.unlockBoth(from, to);
+        }
+    }
+}
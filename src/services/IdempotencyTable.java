@@ -0,0 +1,168 @@
+package services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+// Results of withdraw / deposit / transfer requests by request ID, so a terminal that
+// timed out and sends the same request again gets the first answer instead of a second
+// withdrawal. A repeat is answered from the table without touching the account, the
+// machine or the store; a repeat that arrives while the first is still running waits
+// for it. Declined requests are remembered too: the retry is declined the same way. A
+// request whose operation throws (the store could not be written, say) is not: its
+// entry is removed and the retry, or a repeat that was waiting, runs it again.
+//
+// Entries live for ttlMillis. Like PinLockout, the table is split into stripes with a
+// lock and a bounded map each; expired entries are dropped from the oldest end as a
+// stripe is used. A stripe that is still full refuses new requests rather than drop a
+// live entry, since a retry of the dropped request would then run a second time.
+public class IdempotencyTable {
+    private static final long DEFAULT_TTL_MILLIS = 10 * 60_000;
+    private static final int DEFAULT_MAX_ENTRIES = 256 * 1024;
+    private static final int STRIPES = 64;
+
+    private static final IdempotencyTable GLOBAL = new IdempotencyTable();
+
+    private final long ttlMillis;
+    private final int entriesPerStripe;
+    private final LongSupplier clock;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    private static final class Request {
+        final String fingerprint;
+        final long createdAt;
+        // Completed with the result, or with null if the operation threw and was forgotten
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Request(String fingerprint, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        // Insertion order, which is also age order: the eldest entry expires first
+        final LinkedHashMap<String, Request> requests = new LinkedHashMap<>();
+        volatile int size;
+    }
+
+    public IdempotencyTable() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES, System::currentTimeMillis);
+    }
+
+    public IdempotencyTable(long ttlMillis, int maxEntries, LongSupplier clock) {
+        if (ttlMillis <= 0 || maxEntries < STRIPES) throw new IllegalArgumentException("Invalid request table settings");
+        this.ttlMillis = ttlMillis;
+        this.entriesPerStripe = maxEntries / STRIPES;
+        this.clock = clock;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    // Process-wide table used by every ATMService unless one is given explicitly
+    public static IdempotencyTable global() {
+        return GLOBAL;
+    }
+
+    private Stripe stripeOf(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    // Runs the operation the first time a key is seen and returns its result; later calls
+    // with the key return that result without running anything. The fingerprint describes
+    // the request (operation, amount, ...): reusing a key for a different request is refused.
+    // Exceptions from the operation are passed on to the caller and nothing is remembered.
+    public boolean execute(String key, String fingerprint, BooleanSupplier operation) {
+        Stripe stripe = stripeOf(key);
+        long now = clock.getAsLong();
+        Request request, first;
+        stripe.lock.lock();
+        try {
+            dropExpired(stripe, now);
+            first = stripe.requests.get(key);
+            request = null;
+            if (first == null) {
+                if (stripe.requests.size() >= entriesPerStripe) {
+                    refused.increment();
+                    System.out.println("ERROR: Too many requests in progress. Please try again later.");
+                    return false;
+                }
+                request = new Request(fingerprint, now);
+                stripe.requests.put(key, request);
+            }
+        } finally {
+            stripe.size = stripe.requests.size();
+            stripe.lock.unlock();
+        }
+
+        if (first != null) {
+            duplicates.increment();
+            if (!first.fingerprint.equals(fingerprint)) {
+                System.out.println("ERROR: Request ID already used for a different transaction.");
+                return false;
+            }
+            System.out.println("Request already processed; returning its original result.");
+            // Waits if the first attempt is still running
+            Boolean result = first.result.join();
+            // The first attempt threw and was forgotten: this one runs it instead
+            return result != null ? result : execute(key, fingerprint, operation);
+        }
+
+        boolean ok;
+        try {
+            ok = operation.getAsBoolean();
+        } catch (RuntimeException | Error e) {
+            // Nothing to remember: let a retry run it again
+            forget(stripe, key, request);
+            request.result.complete(null);
+            throw e;
+        }
+        request.result.complete(ok);
+        return ok;
+    }
+
+    private void forget(Stripe stripe, String key, Request request) {
+        stripe.lock.lock();
+        try {
+            stripe.requests.remove(key, request);
+        } finally {
+            stripe.size = stripe.requests.size();
+            stripe.lock.unlock();
+        }
+    }
+
+    // Stops at the first live entry, so each call only does work for entries it removes
+    private void dropExpired(Stripe stripe, long now) {
+        if (stripe.size == 0) return;
+        Iterator<Request> it = stripe.requests.values().iterator();
+        while (it.hasNext()) {
+            Request r = it.next();
+            if (now - r.createdAt < ttlMillis) return;
+            it.remove();
+        }
+    }
+
+    // Requests answered from the table
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    // New requests turned away because their stripe was full of live entries
+    public long getRefused() {
+        return refused.sum();
+    }
+
+    // Requests on record (including expired ones not dropped yet)
+    public int size() {
+        int total = 0;
+        for (Stripe stripe : stripes) total += stripe.size;
+        return total;
+    }
+}
@@ -0,0 +1,45 @@
+package services;
+
+import core.Account;
+import interfaces.Persistence;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Accounts with at least one open session (or a transfer in flight), so that every
+// session working on the same card sees and updates the same Account object, together
+// with the lock stripes that guard them. One ATMService has its own; the terminals of
+// an ATMFleet share one, so a card used at two terminals is still a single account.
+class LiveAccounts {
+    private final Map<String, LiveAccount> accounts = new ConcurrentHashMap<>();
+    private final AccountLocks locks = new AccountLocks();
+
+    private static final class LiveAccount {
+        final Account account;
+        int users = 1;
+
+        LiveAccount(Account account) {
+            this.account = account;
+        }
+    }
+
+    AccountLocks locks() {
+        return locks;
+    }
+
+    // The shared account for a card (loaded through persistence if nobody has it yet), or null
+    Account acquire(String card, Persistence persistence) {
+        LiveAccount live = accounts.compute(card, (k, existing) -> {
+            if (existing != null) {
+                existing.users++;
+                return existing;
+            }
+            Account loaded = persistence.loadAccount(k);
+            return loaded == null ? null : new LiveAccount(loaded);
+        });
+        return live == null ? null : live.account;
+    }
+
+    void release(String card) {
+        accounts.computeIfPresent(card, (k, live) -> --live.users == 0 ? null : live);
+    }
+}
@@ -0,0 +1,180 @@
+package services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Wrong-PIN counts per card, shared by every session and every ATMService that uses
+// the same table. After maxAttempts failures within the window the card is locked out
+// for lockoutMillis, whichever terminal or session the attempts came from.
+//
+// The table is split into stripes by card hash, each with its own lock and a bounded
+// map, so a burst of guesses against one card only ever touches one stripe, and
+// memory stays bounded however many cards are tried: expired entries are dropped as
+// the stripe is used, and when a stripe is full its least recently failed card that
+// is not locked out goes. A locked card is never evicted, since that would hand its
+// guesser a fresh set of attempts. If every card in a full stripe is locked, the
+// stripe fails closed: a card with no entry of its own is treated as locked until
+// the first of those lockouts ends.
+// A login for a card with no failures on record, the normal case, checks a counter
+// and takes no lock.
+public class PinLockout {
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_WINDOW_MILLIS = 15 * 60_000;
+    private static final long DEFAULT_LOCKOUT_MILLIS = 15 * 60_000;
+    private static final int DEFAULT_MAX_ENTRIES = 64 * 1024;
+    private static final int STRIPES = 64;
+
+    private static final PinLockout GLOBAL = new PinLockout();
+
+    private final int maxAttempts;
+    private final long windowMillis;
+    private final long lockoutMillis;
+    private final int entriesPerStripe;
+    private final LongSupplier clock;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private static final class Failures {
+        int count;
+        long firstAt;
+        long lockedUntil;
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        // Insertion order, and a card is moved to the end on every failure, so the eldest
+        // entry is the card that failed least recently (lookups do not reorder)
+        final LinkedHashMap<String, Failures> cards = new LinkedHashMap<>();
+        volatile int size;
+        // Set while the stripe is full of locked cards: unknown cards are locked until then
+        volatile long saturatedUntil;
+    }
+
+    public PinLockout() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_WINDOW_MILLIS, DEFAULT_LOCKOUT_MILLIS, DEFAULT_MAX_ENTRIES,
+                System::currentTimeMillis);
+    }
+
+    public PinLockout(int maxAttempts, long windowMillis, long lockoutMillis, int maxEntries, LongSupplier clock) {
+        if (maxAttempts < 1 || maxEntries < STRIPES) throw new IllegalArgumentException("Invalid lockout settings");
+        this.maxAttempts = maxAttempts;
+        this.windowMillis = windowMillis;
+        this.lockoutMillis = lockoutMillis;
+        this.entriesPerStripe = maxEntries / STRIPES;
+        this.clock = clock;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    // Process-wide table used by every ATMService unless one is given explicitly
+    public static PinLockout global() {
+        return GLOBAL;
+    }
+
+    private Stripe stripeOf(String card) {
+        int h = card.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    // Milliseconds until the card may be used again; 0 if it is not locked out
+    public long lockedFor(String card) {
+        Stripe stripe = stripeOf(card);
+        if (stripe.size == 0) return 0;
+        stripe.lock.lock();
+        try {
+            Failures f = stripe.cards.get(card);
+            long until = f != null ? f.lockedUntil : stripe.saturatedUntil;
+            return Math.max(0, until - clock.getAsLong());
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public boolean isLocked(String card) {
+        return lockedFor(card) > 0;
+    }
+
+    // Counts a wrong PIN; returns the attempts left before lockout (0 = now locked out)
+    public int recordFailure(String card) {
+        Stripe stripe = stripeOf(card);
+        long now = clock.getAsLong();
+        stripe.lock.lock();
+        try {
+            dropExpired(stripe, now);
+            Failures f = stripe.cards.remove(card);
+            if (f != null && expired(f, now)) f = null;
+            if (f == null) {
+                if (stripe.cards.size() >= entriesPerStripe && !evictUnlocked(stripe, now)) return 0;
+                f = new Failures();
+                f.firstAt = now;
+            }
+            stripe.cards.put(card, f);
+            if (f.lockedUntil > now) return 0;
+            if (++f.count >= maxAttempts) {
+                f.lockedUntil = now + lockoutMillis;
+                return 0;
+            }
+            return maxAttempts - f.count;
+        } finally {
+            stripe.size = stripe.cards.size();
+            stripe.lock.unlock();
+        }
+    }
+
+    // A correct PIN clears the card's failures
+    public void recordSuccess(String card) {
+        Stripe stripe = stripeOf(card);
+        if (stripe.size == 0) return;
+        stripe.lock.lock();
+        try {
+            stripe.cards.remove(card);
+        } finally {
+            stripe.size = stripe.cards.size();
+            stripe.lock.unlock();
+        }
+    }
+
+    // Makes room by removing the least recently failed card that is not locked out.
+    // Returns false, and marks the stripe saturated, if every card in it is locked.
+    private boolean evictUnlocked(Stripe stripe, long now) {
+        long firstUnlock = Long.MAX_VALUE;
+        Iterator<Failures> it = stripe.cards.values().iterator();
+        while (it.hasNext()) {
+            Failures f = it.next();
+            if (f.lockedUntil <= now) {
+                it.remove();
+                return true;
+            }
+            firstUnlock = Math.min(firstUnlock, f.lockedUntil);
+        }
+        stripe.saturatedUntil = firstUnlock;
+        return false;
+    }
+
+    // Removes entries from the least recently failed end while they have expired.
+    // Stops at the first live one, so each call does work only for entries it removes.
+    private void dropExpired(Stripe stripe, long now) {
+        Iterator<Failures> it = stripe.cards.values().iterator();
+        while (it.hasNext()) {
+            Failures f = it.next();
+            if (!expired(f, now)) return;
+            it.remove();
+        }
+    }
+
+    private boolean expired(Failures f, long now) {
+        return f.lockedUntil <= now && now - f.firstAt >= windowMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // Cards with failures on record (including expired ones not dropped yet)
+    public int size() {
+        int total = 0;
+        for (Stripe stripe : stripes) total += stripe.size;
+        return total;
+    }
+}
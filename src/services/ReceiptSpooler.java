@@ -0,0 +1,165 @@
+package services;
+
+import core.ATMState;
+import metrics.ServiceMetrics;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+// Prints receipts off the transaction path. A transaction hands over the receipt text
+// once it has committed and returns; the spooler prints queued receipts in batches on
+// a background thread, then takes the paper and ink for the whole batch out of the
+// machine state with one state change (and so one save) per batch.
+//
+// A sheet is reserved when a receipt is accepted, so the queue never holds more
+// receipts than there is paper for: when the tank runs out, submit() refuses instead
+// of queueing receipts that cannot be printed. The queue is bounded too; when the
+// printer falls that far behind, submit() waits briefly for room and then gives up
+// on the receipt rather than hold the customer.
+//
+// One spooler per machine (see ATMStateCache.receipts()). Spoolers share a small pool of
+// daemon threads; a spooler only has a task on the pool while it has receipts to print.
+public class ReceiptSpooler {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final int RECEIPTS_PER_INK_PERCENT = 25;
+    private static final ExecutorService PRINTERS = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "receipt-spooler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ATMStateCache stateCache;
+    private final Executor executor;
+    private final BlockingQueue<Receipt> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Sheets reserved by accepted receipts and not yet taken from the tank; guarded by this
+    private int reserved;
+    // Receipts printed since ink was last taken off; only touched by the running drain
+    private int inkUsage;
+
+    private static final class Receipt {
+        final String text;
+        final ServiceMetrics metrics;
+
+        Receipt(String text, ServiceMetrics metrics) {
+            this.text = text;
+            this.metrics = metrics;
+        }
+    }
+
+    public ReceiptSpooler(ATMStateCache stateCache) {
+        this(stateCache, PRINTERS, DEFAULT_CAPACITY);
+    }
+
+    public ReceiptSpooler(ATMStateCache stateCache, Executor executor, int capacity) {
+        this.stateCache = stateCache;
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    // Paper left once the queued receipts are printed
+    public synchronized int availablePaper() {
+        return stateCache.current().getPaperTank().getPaperCount() - reserved;
+    }
+
+    public boolean hasPaper() {
+        return availablePaper() > 0;
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    // Queues a receipt; false if there is no paper for it or the printer is backed up.
+    // The balance is the one after the transaction, taken by the caller.
+    public boolean submit(String transactionType, double amount, double balance, ServiceMetrics metrics) {
+        synchronized (this) {
+            if (stateCache.current().getPaperTank().getPaperCount() - reserved <= 0) {
+                metrics.record(ServiceMetrics.Operation.RECEIPT, metrics.start(), false);
+                return false;
+            }
+            reserved++;
+        }
+        boolean queued;
+        try {
+            Receipt receipt = new Receipt(format(transactionType, amount, balance), metrics);
+            queued = queue.offer(receipt) || queue.offer(receipt, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            synchronized (this) { reserved--; }
+            metrics.record(ServiceMetrics.Operation.RECEIPT, metrics.start(), false);
+            return false;
+        }
+        if (scheduled.compareAndSet(false, true)) executor.execute(this::drain);
+        return true;
+    }
+
+    private static String format(String transactionType, double amount, double balance) {
+        return "\n------- RECEIPT -------\n"
+                + "Type:    " + transactionType + "\n"
+                + "Amount:  $" + String.format("%.2f", amount) + "\n"
+                + "Balance: $" + String.format("%.2f", balance) + "\n"
+                + "Date:    " + LocalDateTime.now() + "\n"
+                + "-----------------------\n";
+    }
+
+    // Runs on the pool until the queue is empty; at most one drain per spooler at a time
+    private void drain() {
+        List<Receipt> batch = new ArrayList<>();
+        do {
+            try {
+                while (queue.drainTo(batch) > 0) {
+                    print(batch);
+                    batch.clear();
+                }
+            } catch (Exception e) {
+                System.out.println("ERROR: Receipt printing failed - " + e.getMessage());
+            } finally {
+                scheduled.set(false);
+            }
+            // A receipt queued after the last drainTo but before the flag was cleared
+        } while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    private void print(List<Receipt> batch) {
+        for (Receipt receipt : batch) {
+            long start = receipt.metrics.start();
+            System.out.println(receipt.text);
+            receipt.metrics.record(ServiceMetrics.Operation.RECEIPT, start, true);
+        }
+        int sheets = batch.size();
+        inkUsage += sheets;
+        int ink = inkUsage / RECEIPTS_PER_INK_PERCENT;
+        inkUsage %= RECEIPTS_PER_INK_PERCENT;
+        // One state change and save for the batch
+        stateCache.mutate(state -> {
+            synchronized (this) {
+                state.getPaperTank().usePaper(Math.min(sheets, state.getPaperTank().getPaperCount()));
+                reserved -= sheets;
+            }
+            if (ink > 0) state.setInkLevel(Math.max(0, state.getInkLevel() - ink));
+        });
+    }
+
+    // Waits until everything queued so far has been printed and accounted; false on timeout
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!queue.isEmpty() || scheduled.get()) {
+            if (System.nanoTime() > deadline) return false;
+            LockSupport.parkNanos(1_000_000);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,494 @@
+package services;
+
+import core.ATMState;
+import core.CashInventory;
+import persistence.BinaryCodec;
+import persistence.TerminalPersistence;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Checks a day of ATM data against itself: the note counts in every cassette, the
+// cash movements in the event logs, and the withdrawals and deposits in the account
+// ledger. Per terminal and denomination:
+//   opening notes + added + deposited - dispensed + returned  must equal  closing notes
+// and the machine's own dispensed total must have grown by the net value dispensed.
+// Across the fleet, the ledger's withdrawals must match the net cash dispensed and its
+// deposits the cash taken in. An export covers every transaction an account ever made,
+// so only ledger records whose ts falls in [from, to) are counted: the window given to
+// window(), or else the whole days the event logs cover (in the local time zone, as
+// EventLogDrainer stamps them).
+//
+// Inputs: an NDJSON ledger export (see NdjsonExporter), and for each terminal its event
+// log <id>.log (with any rolled <id>.log.N, as EventLogDrainer writes them; an ATMFleet
+// given an event directory writes one per terminal) plus its state file <id>.bin at the
+// start and at the end of the day (see TerminalPersistence).
+// The ledger is split into chunks read in parallel, and terminals are checked in
+// parallel, so a day of fleet data takes seconds.
+public class Reconciliation {
+    private static final int CHUNK_BYTES = 8 * 1024 * 1024;
+    private static final double CENT = 0.005;
+
+    private final Path eventDir;
+    private final Path openingDir;
+    private final Path closingDir;
+    private final List<Path> ledgers = new ArrayList<>();
+    private long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+    private boolean windowGiven;
+
+    public Reconciliation(Path eventDir, Path openingDir, Path closingDir) {
+        this.eventDir = eventDir;
+        this.openingDir = openingDir;
+        this.closingDir = closingDir;
+    }
+
+    public Reconciliation addLedger(Path ndjson) {
+        ledgers.add(ndjson);
+        return this;
+    }
+
+    // Ledger records count only if from <= ts < to (epoch millis)
+    public Reconciliation window(long fromMillis, long toMillis) {
+        this.from = fromMillis;
+        this.to = toMillis;
+        this.windowGiven = true;
+        return this;
+    }
+
+    public Report run() throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(eventDir, "*.log")) {
+            for (Path log : logs) {
+                String name = log.getFileName().toString();
+                ids.add(name.substring(0, name.length() - ".log".length()));
+            }
+        }
+        Collections.sort(ids);
+        List<TerminalResult> terminals = ids.parallelStream().map(this::reconcile).collect(Collectors.toList());
+
+        long start = from, end = to;
+        if (!windowGiven) {
+            LocalDate first = null, last = null;
+            for (TerminalResult t : terminals) {
+                if (t.firstDay != null && (first == null || t.firstDay.isBefore(first))) first = t.firstDay;
+                if (t.lastDay != null && (last == null || t.lastDay.isAfter(last))) last = t.lastDay;
+            }
+            if (first != null) {
+                ZoneId zone = ZoneId.systemDefault();
+                start = first.atStartOfDay(zone).toInstant().toEpochMilli();
+                end = last.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+        }
+        Ledger ledger = new Ledger(start, end);
+        for (Path file : ledgers) ledger.add(readLedger(file, start, end));
+        return new Report(ledger, terminals);
+    }
+
+    // ================== Ledger ==================
+
+    // Withdrawal and deposit totals from the transaction records of an export that fall
+    // in [from, to); outside counts the records left out
+    static final class Ledger {
+        final long from, to;
+        long withdrawals, deposits, outside;
+        double withdrawn, deposited;
+
+        Ledger(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        Ledger add(Ledger other) {
+            withdrawals += other.withdrawals;
+            deposits += other.deposits;
+            outside += other.outside;
+            withdrawn += other.withdrawn;
+            deposited += other.deposited;
+            return this;
+        }
+    }
+
+    private static Ledger readLedger(Path file, long from, long to) throws IOException {
+        long size = Files.size(file);
+        int chunks = (int) Math.max(1, (size + CHUNK_BYTES - 1) / CHUNK_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return IntStream.range(0, chunks).parallel()
+                    .mapToObj(i -> readChunk(channel, i * (long) CHUNK_BYTES, Math.min(size, (i + 1) * (long) CHUNK_BYTES), size, from, to))
+                    .reduce(new Ledger(from, to), Ledger::add);
+        }
+    }
+
+    // Lines that start in [start, end): a chunk skips the partial line it starts in
+    // (the previous chunk reads it) and finishes the line it ends in
+    private static Ledger readChunk(FileChannel channel, long start, long end, long size, long from, long to) {
+        Ledger totals = new Ledger(from, to);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        byte[] line = new byte[1024];
+        int length = 0;
+        long position = start;
+        boolean skipping = start > 0 && !startsLine(channel, start);
+        try {
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) break;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    long at = position++;
+                    if (b == '\n') {
+                        if (!skipping) parseLedgerLine(line, length, totals);
+                        skipping = false;
+                        length = 0;
+                        if (at >= end - 1) return totals;
+                        continue;
+                    }
+                    if (skipping) continue;
+                    if (length == line.length) line = java.util.Arrays.copyOf(line, length * 2);
+                    line[length++] = b;
+                }
+            }
+            if (!skipping && length > 0) parseLedgerLine(line, length, totals);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read ledger - " + e.getMessage(), e);
+        }
+        return totals;
+    }
+
+    private static boolean startsLine(FileChannel channel, long position) {
+        try {
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            channel.read(previous, position - 1);
+            return previous.get(0) == '\n';
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read ledger - " + e.getMessage(), e);
+        }
+    }
+
+    private static final byte[] TRANSACTION = "\"record\":\"transaction\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WITHDRAWAL = "\"type\":\"WITHDRAWAL\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DEPOSIT = "\"type\":\"DEPOSIT\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AMOUNT = "\"amount\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TS = "\"ts\":".getBytes(StandardCharsets.US_ASCII);
+
+    // Only the record kind, type, ts and amount are needed, so they are found in the raw bytes
+    private static void parseLedgerLine(byte[] line, int length, Ledger totals) {
+        if (indexOf(line, length, TRANSACTION) < 0) return;
+        boolean withdrawal = indexOf(line, length, WITHDRAWAL) >= 0;
+        if (!withdrawal && indexOf(line, length, DEPOSIT) < 0) return;
+        int ts = indexOf(line, length, TS);
+        if (ts >= 0) {
+            long millis = 0;
+            for (int i = ts + TS.length; i < length && line[i] >= '0' && line[i] <= '9'; i++) {
+                millis = millis * 10 + (line[i] - '0');
+            }
+            if (millis < totals.from || millis >= totals.to) {
+                totals.outside++;
+                return;
+            }
+        }
+        int at = indexOf(line, length, AMOUNT);
+        if (at < 0) return;
+        int from = at + AMOUNT.length, to = from;
+        while (to < length && line[to] != ',' && line[to] != '}') to++;
+        double amount = Double.parseDouble(new String(line, from, to - from, StandardCharsets.US_ASCII).trim());
+        if (withdrawal) {
+            totals.withdrawals++;
+            totals.withdrawn += amount;
+        } else {
+            totals.deposits++;
+            totals.deposited += amount;
+        }
+    }
+
+    private static int indexOf(byte[] line, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (line[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // ================== Terminals ==================
+
+    // Notes per denomination for one terminal
+    public static final class DenominationRow {
+        final int denomination;
+        long opening, added, deposited, dispensed, returned, closing;
+
+        DenominationRow(int denomination) {
+            this.denomination = denomination;
+        }
+
+        public long getExpected() { return opening + added + deposited - dispensed + returned; }
+        public long getDifference() { return closing - getExpected(); }
+        public int getDenomination() { return denomination; }
+    }
+
+    public static final class TerminalResult {
+        private final String id;
+        private final Map<Integer, DenominationRow> rows = new TreeMap<>();
+        private double dispensedByEvents, depositedByEvents, dispensedByState;
+        private long lostEvents;
+        private LocalDate firstDay, lastDay;
+        private final List<String> problems = new ArrayList<>();
+
+        TerminalResult(String id) {
+            this.id = id;
+        }
+
+        DenominationRow row(int denomination) {
+            return rows.computeIfAbsent(denomination, DenominationRow::new);
+        }
+
+        public String getId() { return id; }
+        public List<DenominationRow> getRows() { return new ArrayList<>(rows.values()); }
+        public List<String> getProblems() { return problems; }
+        public boolean isBalanced() { return problems.isEmpty(); }
+    }
+
+    private TerminalResult reconcile(String id) {
+        TerminalResult result = new TerminalResult(id);
+        try {
+            readEvents(eventDir.resolve(id + ".log"), result);
+            for (int n = 1; Files.exists(eventDir.resolve(id + ".log." + n)); n++) {
+                readEvents(eventDir.resolve(id + ".log." + n), result);
+            }
+        } catch (IOException e) {
+            result.problems.add("event log unreadable: " + e.getMessage());
+        }
+        if (result.lostEvents > 0) {
+            result.problems.add(result.lostEvents + " events lost from the log; totals are incomplete");
+        }
+
+        ATMState opening = readState(openingDir, id, result);
+        ATMState closing = readState(closingDir, id, result);
+        if (opening == null || closing == null) return result;
+
+        CashInventory before = opening.getInventory(), after = closing.getInventory();
+        for (int i = 0; i < before.cassetteCount(); i++) result.row(before.getDenomination(i)).opening += before.getCount(i);
+        for (int i = 0; i < after.cassetteCount(); i++) result.row(after.getDenomination(i)).closing += after.getCount(i);
+        for (DenominationRow row : result.rows.values()) {
+            if (row.getDifference() != 0) {
+                result.problems.add(String.format("$%d notes: expected %d, found %d (%+d)",
+                        row.denomination, row.getExpected(), row.closing, row.getDifference()));
+            }
+        }
+
+        result.dispensedByState = closing.getTotalAmountDispensed() - opening.getTotalAmountDispensed();
+        if (Math.abs(result.dispensedByState - result.dispensedByEvents) > CENT) {
+            result.problems.add(String.format("dispensed total grew by $%.2f but events show $%.2f",
+                    result.dispensedByState, result.dispensedByEvents));
+        }
+        return result;
+    }
+
+    private static ATMState readState(Path dir, String id, TerminalResult result) {
+        Path file = dir.resolve(id + TerminalPersistence.STATE_SUFFIX);
+        if (!Files.exists(file)) {
+            result.problems.add("no state file in " + dir);
+            return null;
+        }
+        try {
+            return BinaryCodec.decodeState(ByteBuffer.wrap(Files.readAllBytes(file)));
+        } catch (Exception e) {
+            result.problems.add("state file unreadable in " + dir + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Lines as EventLogDrainer writes them, e.g.
+    //   [2024-05-01 10:00:00] CASH_DISPENSED - Dispensed: $100x1, $50x0, $20x2
+    //   [2024-05-01 11:00:00] CASH_ADDED - Technician added 40 notes of $50
+    private static void readEvents(Path file, TerminalResult result) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("... ")) {
+                    int end = line.indexOf(' ', 4);
+                    result.lostEvents += Long.parseLong(line.substring(4, end));
+                    continue;
+                }
+                int close = line.indexOf("] ");
+                int dash = line.indexOf(" - ", close + 2);
+                if (close < 0 || dash < 0) continue;
+                // "[yyyy-MM-dd HH:mm:ss" before the "] "
+                LocalDate day = LocalDate.parse(line.substring(1, 11));
+                if (result.firstDay == null || day.isBefore(result.firstDay)) result.firstDay = day;
+                if (result.lastDay == null || day.isAfter(result.lastDay)) result.lastDay = day;
+                String type = line.substring(close + 2, dash);
+                String detail = line.substring(dash + 3);
+                switch (type) {
+                    case "CASH_DISPENSED": notes(detail, result, 0); break;
+                    case "CASH_RETURNED": notes(detail, result, 1); break;
+                    case "CASH_DEPOSITED": notes(detail, result, 2); break;
+                    case "DEPOSIT_RETURNED": notes(detail, result, 3); break;
+                    case "CASH_ADDED": {
+                        // Technician added N notes of $D
+                        String[] words = detail.split(" ");
+                        long count = Long.parseLong(words[2]);
+                        int denomination = Integer.parseInt(words[5].substring(1));
+                        result.row(denomination).added += count;
+                        break;
+                    }
+                    default:
+                }
+            }
+        }
+    }
+
+    // "Dispensed: $100x1, $50x0, $20x2"; kind 0 = dispensed, 1 = returned, 2 = deposited,
+    // 3 = deposit handed back
+    private static void notes(String detail, TerminalResult result, int kind) {
+        int at = detail.indexOf('$');
+        while (at >= 0) {
+            int x = detail.indexOf('x', at);
+            int end = detail.indexOf(',', x);
+            if (end < 0) end = detail.length();
+            int denomination = Integer.parseInt(detail.substring(at + 1, x));
+            long count = Long.parseLong(detail.substring(x + 1, end).trim());
+            DenominationRow row = result.row(denomination);
+            if (kind == 0) {
+                row.dispensed += count;
+                result.dispensedByEvents += (double) denomination * count;
+            } else if (kind == 1) {
+                row.returned += count;
+                result.dispensedByEvents -= (double) denomination * count;
+            } else if (kind == 2) {
+                row.deposited += count;
+                result.depositedByEvents += (double) denomination * count;
+            } else {
+                row.deposited -= count;
+                result.depositedByEvents -= (double) denomination * count;
+            }
+            at = detail.indexOf('$', end);
+        }
+    }
+
+    // ================== Report ==================
+
+    public static final class Report {
+        private final Ledger ledger;
+        private final List<TerminalResult> terminals;
+        private final double dispensed, deposited;
+        private final List<String> fleetProblems = new ArrayList<>();
+
+        Report(Ledger ledger, List<TerminalResult> terminals) {
+            this.ledger = ledger;
+            this.terminals = terminals;
+            double d = 0, in = 0;
+            for (TerminalResult t : terminals) {
+                d += t.dispensedByEvents;
+                in += t.depositedByEvents;
+            }
+            this.dispensed = d;
+            this.deposited = in;
+            if (Math.abs(ledger.withdrawn - dispensed) > CENT) {
+                fleetProblems.add(String.format("ledger withdrawals $%.2f but terminals dispensed $%.2f",
+                        ledger.withdrawn, dispensed));
+            }
+            if (Math.abs(ledger.deposited - deposited) > CENT) {
+                fleetProblems.add(String.format("ledger deposits $%.2f but terminals took in $%.2f",
+                        ledger.deposited, deposited));
+            }
+        }
+
+        public List<TerminalResult> getTerminals() { return terminals; }
+        public List<String> getFleetProblems() { return fleetProblems; }
+        public long getLedgerWithdrawals() { return ledger.withdrawals; }
+        public long getLedgerDeposits() { return ledger.deposits; }
+        public long getLedgerOutsideWindow() { return ledger.outside; }
+        public long getWindowFrom() { return ledger.from; }
+        public long getWindowTo() { return ledger.to; }
+        public double getLedgerWithdrawn() { return ledger.withdrawn; }
+        public double getLedgerDeposited() { return ledger.deposited; }
+        public double getDispensed() { return dispensed; }
+        public double getDeposited() { return deposited; }
+
+        public List<TerminalResult> getUnbalanced() {
+            return terminals.stream().filter(t -> !t.isBalanced()).collect(Collectors.toList());
+        }
+
+        public boolean isBalanced() {
+            return fleetProblems.isEmpty() && getUnbalanced().isEmpty();
+        }
+
+        // Summary plus the detail of every terminal that does not balance
+        public void print(PrintStream out) {
+            out.println("\n========== RECONCILIATION ==========");
+            out.printf("Ledger: %d withdrawals $%.2f, %d deposits $%.2f%n",
+                    ledger.withdrawals, ledger.withdrawn, ledger.deposits, ledger.deposited);
+            if (ledger.from != Long.MIN_VALUE || ledger.to != Long.MAX_VALUE) {
+                out.printf("Window: %s to %s, %d ledger records outside it%n", Instant.ofEpochMilli(ledger.from),
+                        Instant.ofEpochMilli(ledger.to), ledger.outside);
+            }
+            out.printf("Terminals: %d, dispensed $%.2f, deposited $%.2f%n", terminals.size(), dispensed, deposited);
+            for (String problem : fleetProblems) out.println("FLEET: " + problem);
+            List<TerminalResult> unbalanced = getUnbalanced();
+            out.println("Unbalanced terminals: " + unbalanced.size());
+            for (TerminalResult t : unbalanced) {
+                out.println("\n" + t.id + ":");
+                for (String problem : t.problems) out.println("  " + problem);
+                if (t.rows.isEmpty()) continue;
+                out.printf("  %6s %8s %8s %9s %9s %8s %8s %8s%n",
+                        "note", "opening", "added", "deposited", "dispensed", "returned", "closing", "diff");
+                for (DenominationRow r : t.rows.values()) {
+                    out.printf("  $%-5d %8d %8d %9d %9d %8d %8d %+8d%n", r.denomination, r.opening, r.added,
+                            r.deposited, r.dispensed, r.returned, r.closing, r.getDifference());
+                }
+            }
+            out.println("====================================\n");
+        }
+    }
+
+    // Usage: java services.Reconciliation <eventDir> <openingStateDir> <closingStateDir>
+    //            [from:<yyyy-MM-dd> to:<yyyy-MM-dd>] [ledger.ndjson ...]
+    // from: and to: are local dates, to exclusive; without them the event logs' days are used
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: Reconciliation <eventDir> <openingStateDir> <closingStateDir> "
+                    + "[from:<yyyy-MM-dd> to:<yyyy-MM-dd>] [ledger.ndjson ...]");
+            return;
+        }
+        Reconciliation job = new Reconciliation(Paths.get(args[0]), Paths.get(args[1]), Paths.get(args[2]));
+        LocalDate fromDay = null, toDay = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].startsWith("from:")) fromDay = LocalDate.parse(args[i].substring("from:".length()));
+            else if (args[i].startsWith("to:")) toDay = LocalDate.parse(args[i].substring("to:".length()));
+            else job.addLedger(Paths.get(args[i]));
+        }
+        if ((fromDay == null) != (toDay == null)) {
+            System.out.println("ERROR: from: and to: must be given together");
+            return;
+        }
+        if (fromDay != null) {
+            ZoneId zone = ZoneId.systemDefault();
+            job.window(fromDay.atStartOfDay(zone).toInstant().toEpochMilli(), toDay.atStartOfDay(zone).toInstant().toEpochMilli());
+        }
+        long start = System.nanoTime();
+        Report report = job.run();
+        report.print(System.out);
+        System.out.printf("Reconciled in %.2fs%n", (System.nanoTime() - start) / 1e9);
+    }
+}
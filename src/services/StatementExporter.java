@@ -0,0 +1,192 @@
+package services;
+
+import core.Account;
+import core.HistoryPage;
+import core.HistoryQuery;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Writes an account's statement for a time range as CSV or NDJSON.
+//
+// The history is read a page at a time through the same query customers use, holding
+// the account lock only while a page is copied out, so live transactions on the card
+// wait at most for one page, never for the file. Rows are built in a reused buffer and
+// written through a fixed-size NIO buffer: memory stays the same for ten entries or ten
+// million, and each export has its own buffers, so any number can run at once.
+//
+// CSV:    timestamp,type,amount,balance,counterpart
+// NDJSON: the transaction records of NdjsonExporter, so a statement can be fed to the
+//         tools that read an export (e.g. Reconciliation)
+public class StatementExporter {
+    public enum Format { CSV, NDJSON }
+
+    private static final int PAGE_SIZE = 512;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final ATMService atm;
+
+    public StatementExporter(ATMService atm) {
+        this.atm = atm;
+    }
+
+    // Entries with timestamps in [fromMillis, toMillis), oldest first; returns the number written
+    public long export(String card, long fromMillis, long toMillis, Format format, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return export(card, fromMillis, toMillis, format, channel);
+        }
+    }
+
+    public long export(String card, long fromMillis, long toMillis, Format format, WritableByteChannel out)
+            throws IOException {
+        Account account = atm.acquireAccount(card);
+        if (account == null) throw new IllegalArgumentException("Account not found: " + card);
+        try {
+            Writer writer = new Writer(out, format, card);
+            writer.header();
+            String cursor = null;
+            do {
+                HistoryPage page = atm.queryTransactionHistory(account,
+                        HistoryQuery.oldest(PAGE_SIZE).between(fromMillis, toMillis).after(cursor));
+                for (Account.Transaction transaction : page.getEntries()) writer.row(transaction);
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            writer.flush();
+            return writer.rows;
+        } finally {
+            atm.releaseAccount(card);
+        }
+    }
+
+    // One export's buffers
+    private static final class Writer {
+        private final WritableByteChannel out;
+        private final Format format;
+        private final String card;
+        private final StringBuilder line = new StringBuilder(256);
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private long rows;
+
+        Writer(WritableByteChannel out, Format format, String card) {
+            this.out = out;
+            this.format = format;
+            this.card = card;
+        }
+
+        void header() throws IOException {
+            if (format != Format.CSV) return;
+            line.setLength(0);
+            line.append("timestamp,type,amount,balance,counterpart\n");
+            put();
+        }
+
+        void row(Account.Transaction t) throws IOException {
+            line.setLength(0);
+            String counterpart = t.getCounterpart();
+            if (format == Format.CSV) {
+                TIMESTAMP_FORMAT.formatTo(Instant.ofEpochMilli(t.getTimestamp()), line);
+                line.append(',').append(t.getType()).append(',');
+                money(t.getAmount());
+                line.append(',');
+                money(t.getBalanceAfter());
+                line.append(',');
+                if (counterpart != null) csv(counterpart);
+            } else {
+                line.append("{\"record\":\"transaction\",\"card\":");
+                json(card);
+                line.append(",\"ts\":").append(t.getTimestamp());
+                line.append(",\"type\":\"").append(t.getType()).append('"');
+                line.append(",\"amount\":");
+                money(t.getAmount());
+                line.append(",\"balance\":");
+                money(t.getBalanceAfter());
+                if (counterpart != null) {
+                    line.append(",\"counterpart\":");
+                    json(counterpart);
+                }
+                line.append('}');
+            }
+            line.append('\n');
+            put();
+            rows++;
+        }
+
+        private void money(double amount) {
+            long cents = Math.round(amount * 100);
+            if (cents < 0) {
+                line.append('-');
+                cents = -cents;
+            }
+            line.append(cents / 100).append('.');
+            long rest = cents % 100;
+            if (rest < 10) line.append('0');
+            line.append(rest);
+        }
+
+        private void csv(String s) {
+            boolean quote = s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0;
+            if (!quote) {
+                line.append(s);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"') line.append('"');
+                line.append(c);
+            }
+            line.append('"');
+        }
+
+        private void json(String s) {
+            line.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                } else if (c < 0x20) {
+                    line.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+                } else {
+                    line.append(c);
+                }
+            }
+            line.append('"');
+        }
+
+        // Encodes the line into the buffer, writing the buffer out whenever it fills
+        private void put() throws IOException {
+            CharBuffer chars = CharBuffer.wrap(line);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isUnderflow()) break;
+                if (result.isOverflow()) drain();
+                else result.throwException();
+            }
+            encoder.reset();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+            buffer.clear();
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+    }
+}
@@ -2,18 +2,42 @@ package services;
 
 import core.ATMState;
 import interfaces.Persistence;
+import metrics.ServiceMetrics;
+import persistence.EventLogDrainer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class V2Technician {
 
-    private Persistence persistence;
+    // Shared with the ATMService, so changes reach customers without a file reload
+    private ATMStateCache stateCache;
+    // On-disk event log, when one is being written
+    private EventLogDrainer eventLog;
+    // Operation timings of the customer-facing ATMService, when available
+    private ServiceMetrics metrics;
+    private static final Path METRICS_SNAPSHOT = Paths.get("atm_metrics.json");
 
     public V2Technician(Persistence persistence) {
-        this.persistence = persistence;
+        this(ATMStateCache.of(persistence));
+    }
+
+    public V2Technician(ATMStateCache stateCache) {
+        this.stateCache = stateCache;
+    }
+
+    public V2Technician(ATMStateCache stateCache, EventLogDrainer eventLog) {
+        this.stateCache = stateCache;
+        this.eventLog = eventLog;
+    }
+
+    public V2Technician(ATMStateCache stateCache, EventLogDrainer eventLog, ServiceMetrics metrics) {
+        this(stateCache, eventLog);
+        this.metrics = metrics;
     }
 
     // This method handles the display logic for Option [1]
     public void displayStatus() {
-        ATMState state = persistence.loadATMState();
+        ATMState state = stateCache.current();
         System.out.println("\n--- ATM HARDWARE STATUS ---");
         System.out.println("Firmware Version: " + state.getFirmwareVersion());
         System.out.println("Paper Level:      " + state.getPaperTank().getSheets() + " sheets");
@@ -27,28 +51,22 @@ public class V2Technician {
 
     // Handles Option [2]
     public void refillPaper() {
-        ATMState state = persistence.loadATMState();
-        state.getPaperTank().refill(); // Assuming your PaperTank has a refill() method
-        persistence.saveATMState(state);
+        stateCache.mutate(state -> state.getPaperTank().refill());
         System.out.println("Paper refilled successfully.");
     }
 
     // Handles Option [3] using the double amount from your Main.java
     public void addCash(double amount) {
-        ATMState state = persistence.loadATMState();
         // Since your hardware logic uses specific bills, we'll split the amount
         // For the demo, let's assume we add it all in $50 bills
         int count = (int) amount / 50;
-        state.addCash(50, count);
-        persistence.saveATMState(state);
+        stateCache.mutate(state -> state.addCash(50, count));
         System.out.println("Added " + count + " x $50 bills to the inventory.");
     }
 
     // Handles Option [5]
     public void updateFirmware() {
-        ATMState state = persistence.loadATMState();
-        state.updateFirmware("v2.1.0"); // Update the string in state
-        persistence.saveATMState(state);
+        stateCache.mutate(state -> state.updateFirmware("v2.1.0"));
         System.out.println("Firmware updated to v2.1.0.");
     }
 
@@ -58,20 +76,46 @@ public class V2Technician {
 
     public void viewEventLog() {
         System.out.println("--- SYSTEM EVENT LOG ---");
-        System.out.println("[INFO] Boot sequence completed.");
-        System.out.println("[INFO] Technician Login: admin");
+        if (eventLog == null) {
+            // No log file: show what is still in memory
+            stateCache.current().displayEventLog();
+            return;
+        }
+        try {
+            for (String line : eventLog.tail(20)) System.out.println(line);
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not read event log - " + e.getMessage());
+        }
     }
 
-    public void performMaintenance() {
-        // 1. Load the current state from the file
-        ATMState state = persistence.loadATMState();
+    // Counts and latencies per operation; also written to atm_metrics.json for monitoring tools
+    public void viewServiceMetrics() {
+        if (metrics == null) {
+            System.out.println("No service metrics available.");
+            return;
+        }
+        metrics.printStatus();
+        try {
+            metrics.writeSnapshot(METRICS_SNAPSHOT);
+            System.out.println("Snapshot written to " + METRICS_SNAPSHOT);
+        } catch (Exception e) {
+            System.out.println("ERROR: Could not write metrics snapshot - " + e.getMessage());
+        }
+    }
 
-        // 2. Perform the 'repairs'
-        state.setInkLevel(100);
-        state.getPaperTank().refill();
-        state.setOperational(true);
+    // Demand per cassette over the last hour and when each will run dry at that rate
+    public void viewCashForecast() {
+        ATMState state = stateCache.current();
+        state.getCashDemand().printForecast(state.getInventory());
+    }
 
-        persistence.saveATMState(state);
+    public void performMaintenance() {
+        // Perform the 'repairs' on the shared state (saved by the cache)
+        stateCache.mutate(state -> {
+            state.setInkLevel(100);
+            state.getPaperTank().refill();
+            state.setOperational(true);
+        });
 
         System.out.println("Maintenance Complete: Ink and Paper are now at 100%.");
     }
@@ -0,0 +1,65 @@
+import core.Account;
+import persistence.InMemoryPersistence;
+import services.ATMFleet;
+import services.ATMSession;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ATMFleetTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("atm_fleet");
+        InMemoryPersistence bank = new InMemoryPersistence(); // every terminal starts with $30000
+        bank.saveAccount(new Account("1234567890", "1234", 1000));
+        ATMFleet fleet = new ATMFleet(bank, dir);
+
+        // The same card at two terminals at once is one account; the cash comes out of each own cassettes
+        ATMSession north = fleet.service("north").openSession("1234567890", "1234");
+        ATMSession south = fleet.service("south").openSession("1234567890", "1234");
+        north.withdraw(100);
+        south.withdraw(200);
+        north.close();
+        south.close();
+        boolean shared = bank.loadAccount("1234567890").getBalance() == 695; // two $2.50 fees
+        boolean isolated = fleet.terminal("north").getState().getCashAvailable() == 29900
+                && fleet.terminal("south").getState().getCashAvailable() == 29800;
+
+        fleet.terminal("east").getStateCache().mutate(s -> s.dispenseCash(29600));
+        fleet.terminal("west").getStateCache().mutate(s -> s.getPaperTank().usePaper(480));
+        ATMFleet.FleetSummary summary = fleet.summarize();
+        boolean summarized = summary.getTerminals() == 4
+                && summary.getTotalCash() == 29900 + 29800 + 400 + 30000
+                && summary.getLowOnCash().equals(List.of("east"))
+                && summary.getLowOnPaper().equals(List.of("west"));
+
+        // Each terminal's state was saved on its own and comes back in a new fleet
+        ATMFleet restarted = new ATMFleet(bank, dir);
+        boolean reopened = restarted.openSaved() == 4
+                && restarted.terminal("south").getState().getCashAvailable() == 29800
+                && restarted.summarize().getTotalCash() == summary.getTotalCash();
+
+        // With an event directory, each terminal's events land in its own file
+        Path events = dir.resolve("events");
+        ATMFleet logged = new ATMFleet(bank, dir, new metrics.ServiceMetrics(), events);
+        ATMSession east = logged.service("east").openSession("1234567890", "1234");
+        east.withdraw(20);
+        east.close();
+        boolean ownLogs = logged.terminal("east").getStateCache().getEventLog()
+                != logged.terminal("west").getStateCache().getEventLog();
+        // ...drained by one shared thread, not one per terminal
+        for (int i = 0; i < 50; i++) logged.terminal("t" + i);
+        long drainThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().contains("drainer")).count();
+        ownLogs &= drainThreads == 1;
+        logged.close();
+        String eastLog = Files.readString(events.resolve("east.log"));
+        ownLogs &= eastLog.contains("CASH_DISPENSED - Dispensed: $100x0, $50x0, $20x1")
+                && !Files.readString(events.resolve("west.log")).contains("CASH_DISPENSED");
+
+        if (shared && isolated && summarized && reopened && ownLogs) {
+            System.out.println("✅ ATMFleetTest PASSED");
+        } else {
+            System.out.println("❌ ATMFleetTest FAILED");
+        }
+    }
+}
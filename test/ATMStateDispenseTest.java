@@ -0,0 +1,43 @@
+import core.ATMState;
+import core.PaperTank;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ATMStateDispenseTest {
+    public static void main(String[] args) throws Exception {
+        // 1000 x $20 notes, 8 threads racing to withdraw $20 until the cassette is empty
+        ATMState state = new ATMState(0, 0, 1000, "v1.0.0", new PaperTank(500));
+        AtomicInteger dispensed = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                while (state.dispenseCash(20)) dispensed.incrementAndGet();
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) t.join();
+
+        // $60 and $80 need only $20s even though a $50 is loaded (greedy would reject both)
+        ATMState mixed = new ATMState(0, 2, 7, "v1.0.0", new PaperTank(500));
+        boolean smallAmounts = mixed.dispenseCash(60) && mixed.dispenseCash(80)
+                && mixed.getCount50() == 2 && mixed.getCount20() == 0;
+
+        // Configurable cassettes: $90 from a $5/$10/$20/$50 machine uses the fewest notes
+        ATMState custom = new ATMState(new int[] {50, 20, 10, 5}, new int[] {1, 2, 1, 10}, "v1.0.0", new PaperTank(500));
+        boolean fewestNotes = custom.dispenseCash(90) && custom.getInventory().getCount(0) == 0
+                && custom.getInventory().getCount(1) == 0 && custom.getInventory().getCountOf(5) == 10;
+
+        // The amount rule follows the loaded notes: $15 is payable here, $12.50 is not
+        boolean unitFromNotes = custom.getNoteUnit() == 5 && custom.dispenseCash(15) && !custom.dispenseCash(12.5)
+                && custom.describeNotes().equals("$5, $10, $20, and $50") && mixed.getNoteUnit() == 10;
+
+        boolean noOverDispense = dispensed.get() == 1000 && state.getCount20() == 0
+                && state.getCashAvailable() == 0;
+
+        if (noOverDispense && smallAmounts && fewestNotes && unitFromNotes) {
+            System.out.println("✅ ATMStateDispenseTest PASSED");
+        } else {
+            System.out.println("❌ ATMStateDispenseTest FAILED");
+            System.out.println("Dispensed " + dispensed.get() + " notes, " + state.getCount20() + " left");
+        }
+    }
+}
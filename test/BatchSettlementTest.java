@@ -0,0 +1,57 @@
+import core.Account;
+import persistence.InMemoryPersistence;
+import services.BatchSettlement;
+import java.io.StringReader;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+public class BatchSettlementTest {
+    public static void main(String[] args) throws Exception {
+        int accounts = 200;
+        InMemoryPersistence store = new InMemoryPersistence();
+        Account[] expected = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            store.saveAccount(new Account("card" + i, "1234", 100 + i));
+            expected[i] = new Account("card" + i, "1234", 100 + i);
+        }
+
+        // Skewed traffic with small balances, so many transfers depend on each other and some are declined
+        SplittableRandom random = new SplittableRandom(7);
+        StringBuilder file = new StringBuilder("# from,to,amount\n");
+        int expectedApplied = 0;
+        for (int n = 0; n < 20_000; n++) {
+            int a = random.nextInt(accounts) % (1 + random.nextInt(accounts));
+            int b = random.nextInt(accounts);
+            double amount = 1 + random.nextInt(4000) / 100.0;
+            file.append("card").append(a).append(",card").append(b).append(',').append(amount).append('\n');
+            if (expected[a].transfer(amount, "card" + b)) {
+                expected[b].receiveTransfer(amount, "card" + a);
+                expectedApplied++;
+            }
+        }
+        file.append("card1,nobody,5\n").append("card1,card2\n").append("card1,card2,-3\n");
+
+        BatchSettlement settlement = new BatchSettlement(store, new ForkJoinPool(4), 3_000);
+        List<BatchSettlement.BatchResult> results = settlement.settle(new StringReader(file.toString()));
+
+        boolean same = true;
+        for (int i = 0; i < accounts; i++) {
+            if (store.loadAccount("card" + i).getBalance() != expected[i].getBalance()) same = false;
+        }
+        int applied = 0, rejected = 0, instructions = 0;
+        for (BatchSettlement.BatchResult r : results) {
+            applied += r.getApplied();
+            rejected += r.getRejected();
+            instructions += r.getInstructions();
+        }
+        boolean counted = results.size() == 7 && instructions == 20_000 && applied == expectedApplied
+                && applied < instructions && rejected == 3;
+
+        if (same && counted) {
+            System.out.println("✅ BatchSettlementTest PASSED");
+        } else {
+            System.out.println("❌ BatchSettlementTest FAILED");
+        }
+    }
+}
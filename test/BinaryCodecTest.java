@@ -0,0 +1,81 @@
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import core.TransactionHistory;
+import persistence.BinaryCodec;
+import persistence.BinaryFileHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+public class BinaryCodecTest {
+    public static void main(String[] args) throws Exception {
+        // Everything JSON drops must come back: limits, dates and the full history
+        Account account = new Account("1234567890", "1234", 1000, 50);
+        account.restoreLimits(LocalDate.of(2030, 1, 31), 800, 0, LocalDate.now());
+        account.deposit(250.75);
+        account.withdraw(100);
+        account.transfer(20, "9876543210");
+
+        Account copy = BinaryCodec.decodeAccount(BinaryCodec.encode(account));
+        TransactionHistory a = account.getTransactionHistory(), b = copy.getTransactionHistory();
+        boolean sameHistory = a.size() == b.size() && b.getCapacity() == 50;
+        for (int i = 0; sameHistory && i < a.size(); i++) {
+            sameHistory = a.getTimestamp(i) == b.getTimestamp(i) && a.getType(i) == b.getType(i)
+                    && a.getAmountCents(i) == b.getAmountCents(i) && a.getBalanceCents(i) == b.getBalanceCents(i)
+                    && a.format(i).equals(b.format(i));
+        }
+        boolean sameAccount = copy.getCardNumber().equals("1234567890") && copy.validatePin("1234")
+                && copy.getBalance() == account.getBalance()
+                && copy.getCardExpirationDate().equals(LocalDate.of(2030, 1, 31))
+                && copy.getDailyWithdrawalLimit() == 800 && copy.getDailyWithdrawalUsed() == 100
+                && sameHistory;
+
+        // Per-cassette counts survive, including a fourth cassette
+        ATMState state = new ATMState(new int[] {100, 50, 20, 10}, new int[] {5, 6, 7, 8}, "v2.1.0", new PaperTank(42));
+        state.setInkLevel(9);
+        state.dispenseCash(130);
+        state.setOperational(false);
+        ATMState stateCopy = BinaryCodec.decodeState(BinaryCodec.encode(state));
+        boolean sameState = stateCopy.getInventory().getCountOf(10) == state.getInventory().getCountOf(10)
+                && stateCopy.getCashAvailable() == state.getCashAvailable()
+                && stateCopy.getFirmwareVersion().equals("v2.1.0")
+                && stateCopy.getPaperTank().getPaperCount() == 42 && stateCopy.getInkLevel() == 9
+                && !stateCopy.isMarkedOperational()
+                && stateCopy.getTotalTransactionsProcessed() == 1 && stateCopy.getTotalAmountDispensed() == 130
+                && stateCopy.getLastMaintenanceDate().equals(state.getLastMaintenanceDate());
+
+        // A record of another kind or version is refused
+        boolean rejected;
+        try {
+            BinaryCodec.decodeAccount(BinaryCodec.encode(state));
+            rejected = false;
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+
+        // Through the file handler
+        Path dir = Files.createTempDirectory("binarystore");
+        BinaryFileHandler store = new BinaryFileHandler(dir);
+        store.saveAccount(account);
+        store.saveATMState(state);
+        Account loaded = store.loadAccount("1234567890");
+        boolean stored = loaded.getTransactionHistory().size() == 3
+                && store.loadATMState().getCashAvailable() == state.getCashAvailable();
+
+        // Card numbers that are not plain digits never reach the file system
+        boolean contained = store.loadAccount("../../x") == null && store.loadAccount("12/34") == null;
+        try {
+            store.saveAccount(new Account("../outside", "1234", 1));
+            contained = false;
+        } catch (IllegalArgumentException e) {
+            contained &= !Files.exists(dir.resolve("../outside.acct").normalize());
+        }
+
+        if (sameAccount && sameState && rejected && stored && contained) {
+            System.out.println("✅ BinaryCodecTest PASSED");
+        } else {
+            System.out.println("❌ BinaryCodecTest FAILED");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import persistence.IndexedAccountStore;
+import persistence.NdjsonImporter;
+import java.io.BufferedWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Generates an NDJSON file of N accounts (every tenth with two transactions) and imports
+// it into an IndexedAccountStore, reporting the rate and the peak heap in use.
+// Run with a small heap to check memory stays flat, e.g.
+//   java -Xmx64m BulkImportBenchmark 10000000
+// Usage: java BulkImportBenchmark [accounts]
+public class BulkImportBenchmark {
+    public static void main(String[] args) throws Exception {
+        long accounts = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("bulkimport");
+        Path file = dir.resolve("accounts.ndjson");
+
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (long i = 0; i < accounts; i++) {
+                String card = String.valueOf(4_000_000_000L + i);
+                out.write("{\"record\":\"account\",\"card\":\"" + card + "\",\"pin\":\"1234\",\"balance\":" + (i % 100000) + ".50}\n");
+                if (i % 10 == 0) {
+                    out.write("{\"record\":\"transaction\",\"card\":\"" + card + "\",\"ts\":1700000000000,\"type\":\"DEPOSIT\",\"amount\":10.00,\"balance\":10.50}\n");
+                    out.write("{\"record\":\"transaction\",\"card\":\"" + card + "\",\"ts\":1700000001000,\"type\":\"TRANSFER_IN\",\"amount\":5.00,\"balance\":15.50,\"counterpart\":\"4000000000\"}\n");
+                }
+            }
+        }
+        System.out.printf("file: %,d bytes%n", Files.size(file));
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+        IndexedAccountStore store = new IndexedAccountStore(dir.resolve("accounts.idx"), accounts);
+        NdjsonImporter importer = new NdjsonImporter(store);
+        long t0 = System.nanoTime();
+        long records = importer.importFrom(file);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == java.lang.management.MemoryType.HEAP) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        // The indexed store keeps no history, so the transactions are read but dropped
+        System.out.printf("imported %,d records (%,d accounts, %,d transactions dropped) in %.1fs = %,.0f records/s, store size %,d%n",
+                records, importer.getAccountsImported(), importer.getTransactionsDropped(), seconds,
+                records / seconds, store.size());
+        System.out.printf("peak heap used: %,d KB (max heap %,d KB)%n", peakHeap / 1024,
+                Runtime.getRuntime().maxMemory() / 1024);
+        store.close();
+        Files.delete(file);
+        Files.delete(dir.resolve("accounts.idx"));
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,96 @@
+import core.Account;
+import persistence.CachingPersistence;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMSession;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class CachingPersistenceTest {
+    public static void main(String[] args) throws Exception {
+        InMemoryPersistence store = new InMemoryPersistence();
+        for (int i = 0; i < 100; i++) store.saveAccount(new Account("card" + i, "1234", 1000));
+        CachingPersistence cache = new CachingPersistence(store, 10, 0); // flushed by hand
+
+        // Repeated saves of a hot account reach the store once, at the flush
+        Account hot = cache.loadAccount("card0");
+        for (int i = 0; i < 5; i++) {
+            hot.deposit(10);
+            cache.saveAccount(hot);
+        }
+        boolean deferred = store.loadAccount("card0").getBalance() == 1000 && cache.loadAccount("card0") == hot;
+        cache.flush();
+        boolean coalesced = store.loadAccount("card0").getBalance() == 1050
+                && cache.getSaves() == 5 && cache.getWrites() == 1;
+
+        // The flush writes the account as it was saved, not a change made to it since
+        hot.deposit(10);
+        cache.saveAccount(hot);
+        hot.withdraw(100); // in progress, not saved yet
+        cache.flush();
+        boolean snapshot = store.loadAccount("card0").getBalance() == 1060;
+
+        // A flush that starts while another is still writing waits for it, so the older image
+        // can never land on top of the newer one
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean holdNext = new AtomicBoolean();
+        InMemoryPersistence slow = new InMemoryPersistence() {
+            @Override
+            public void saveAccount(Account account) {
+                if (holdNext.getAndSet(false)) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.saveAccount(account);
+            }
+        };
+        slow.saveAccount(new Account("card0", "1234", 1000));
+        CachingPersistence ordered = new CachingPersistence(slow, 10, 0);
+        Account busy = ordered.loadAccount("card0");
+        busy.deposit(10);
+        ordered.saveAccount(busy);
+        holdNext.set(true);
+        Thread older = new Thread(ordered::flush);
+        older.start();
+        writing.await();
+        busy.deposit(10);
+        ordered.saveAccount(busy);
+        Thread newer = new Thread(ordered::flush);
+        newer.start();
+        Thread.sleep(200);
+        release.countDown();
+        older.join();
+        newer.join();
+        boolean inOrder = slow.loadAccount("card0").getBalance() == 1020;
+
+        // Popular cards stay cached while a scan of one-off cards goes past them
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) cache.loadAccount("card" + i);
+        }
+        for (int i = 10; i < 100; i++) cache.loadAccount("card" + i);
+        long hitsBefore = cache.getHits();
+        for (int i = 0; i < 10; i++) cache.loadAccount("card" + i);
+        boolean frequencyAware = cache.getHits() - hitsBefore == 10 && cache.size() <= 10
+                && cache.getRejections() > 0;
+
+        // Through ATMService with the background flusher
+        CachingPersistence behind = new CachingPersistence(store, 50);
+        ATMService atm = new ATMService(behind);
+        ATMSession session = atm.openSession("card5", "1234");
+        session.deposit(100);
+        session.close();
+        behind.close();
+        boolean written = store.loadAccount("card5").getBalance() == 1100 && behind.getDirtyCount() == 0;
+
+        if (deferred && coalesced && snapshot && inOrder && frequencyAware && written) {
+            System.out.println("✅ CachingPersistenceTest PASSED");
+        } else {
+            System.out.println("❌ CachingPersistenceTest FAILED");
+        }
+    }
+}
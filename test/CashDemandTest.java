@@ -0,0 +1,68 @@
+import core.ATMState;
+import core.CashDemand;
+import core.PaperTank;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CashDemandTest {
+    public static void main(String[] args) {
+        AtomicLong now = new AtomicLong(0);
+        ATMState state = new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500));
+        // Ten one-minute buckets, on a clock the test moves
+        state.attachCashDemand(new CashDemand(3, 60_000, 10, now::get));
+        CashDemand demand = state.getCashDemand();
+
+        now.set(60_000);
+        state.dispenseCash(100); // one $100
+        state.dispenseCash(100);
+        now.set(120_000);
+        state.dispenseCash(100);
+        state.addCashDeposit(100); // two $50 back in
+        boolean counted = demand.getDispensed(0) == 3 && demand.getDeposited(1) == 2;
+
+        // 3 x $100 in 2 minutes = 90 per hour; 97 notes left last about 65 minutes
+        double rate = demand.getNetRatePerHour(0);
+        double hours = demand.hoursUntilEmpty(0, state.getInventory().getCount(0));
+        boolean forecast = Math.abs(rate - 90) < 0.01 && Math.abs(hours - 97 / 90.0) < 0.01
+                && demand.hoursUntilFirstEmpty(state.getInventory()) == hours
+                && Double.isInfinite(demand.hoursUntilEmpty(2, 500));
+
+        // Eleven minutes on, the first minute has left the window; much later, everything has
+        now.set(11 * 60_000 + 1);
+        boolean slid = demand.getDispensed(0) == 1;
+        now.set(1_000 * 60_000);
+        boolean expired = demand.getDispensed(0) == 0 && demand.getDeposited(1) == 0
+                && demand.getNetRatePerHour(0) == 0;
+
+        // A slot that held an old bucket is cleared before it is reused
+        state.dispenseCash(100);
+        boolean reused = demand.getDispensed(0) == 1;
+
+        // Recording takes no lock, and concurrent recorders still add up exactly
+        CashDemand shared = new CashDemand(3, 60_000, 10, now::get);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    shared.recordDispense(new int[] {1, 2, 0});
+                    shared.recordDeposit(new int[] {0, 1, 0});
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        boolean concurrent = shared.getDispensed(0) == 40_000 && shared.getDispensed(1) == 80_000
+                && shared.getDeposited(1) == 40_000;
+
+        if (counted && forecast && slid && expired && reused && concurrent) {
+            System.out.println("✅ CashDemandTest PASSED");
+        } else {
+            System.out.println("❌ CashDemandTest FAILED");
+        }
+    }
+}
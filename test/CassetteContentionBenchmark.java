@@ -0,0 +1,74 @@
+import core.ATMState;
+import core.PaperTank;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// Dispense/refill throughput on one machine under contention: the CAS-based ATMState
+// against the previous field-based greedy split guarded by a monitor.
+// Usage: java CassetteContentionBenchmark [threads] [millisPerRun]
+public class CassetteContentionBenchmark {
+
+    interface Cassettes {
+        boolean dispense(int amount);
+        boolean refill20(int notes);
+    }
+
+    // The old ATMState cash logic (including its event logging), made thread-safe the simple way
+    static final class SynchronizedCassettes implements Cassettes {
+        private int count100 = 100, count50 = 200, count20 = 500;
+        private final List<String> eventLog = new ArrayList<>();
+
+        public synchronized boolean dispense(int remaining) {
+            int t100 = Math.min(remaining / 100, count100);
+            int remAfter100 = remaining - (t100 * 100);
+            int t50 = Math.min(remAfter100 / 50, count50);
+            int remAfter50 = remAfter100 - (t50 * 50);
+            int t20 = Math.min(remAfter50 / 20, count20);
+            if (remAfter50 - (t20 * 20) != 0) return false;
+            count100 -= t100;
+            count50 -= t50;
+            count20 -= t20;
+            eventLog.add(String.format("Dispensed: $100x%d, $50x%d, $20x%d", t100, t50, t20));
+            return true;
+        }
+
+        public synchronized boolean refill20(int notes) {
+            count20 += notes;
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+        ATMState state = new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500));
+        Cassettes lockFree = new Cassettes() {
+            public boolean dispense(int amount) { return state.dispenseCash(amount); }
+            public boolean refill20(int notes) { return state.addCash(0, 0, notes); }
+        };
+
+        System.out.printf("threads=%d%n", threads);
+        System.out.printf("%-14s %14.0f ops/sec%n", "synchronized", run(new SynchronizedCassettes(), threads, millis));
+        System.out.printf("%-14s %14.0f ops/sec%n", "cas snapshot", run(lockFree, threads, millis));
+    }
+
+    // Each op withdraws $20 and puts the note back, so the inventory stays level
+    private static double run(Cassettes cassettes, int threads, long millis) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    if (cassettes.dispense(20)) cassettes.refill20(1);
+                    ops.increment();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        return ops.sum() / (millis / 1000.0);
+    }
+}
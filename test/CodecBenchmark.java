@@ -0,0 +1,126 @@
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import core.TransactionHistory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import persistence.BinaryCodec;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+// Encode + decode cost of one account and one ATM state: the binary codec against the
+// JSON that JsonHandler writes (card/pin/balance only), and against JSON carrying the same
+// full content as the binary record.
+// Usage: java CodecBenchmark [historyEntries] [iterations]
+public class CodecBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private interface Codec {
+        int roundTrip(); // returns the encoded size in bytes
+    }
+
+    public static void main(String[] args) {
+        int historyEntries = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        Account account = new Account("1234567890", "1234", 1_000_000);
+        for (int i = 0; i < historyEntries; i++) {
+            if (i % 3 == 2) account.transfer(5, "9876543210");
+            else account.deposit(12.34);
+        }
+        ATMState state = new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500));
+        ByteBuffer reused = ByteBuffer.allocate(64 * 1024);
+
+        System.out.println("history=" + historyEntries + " iterations=" + iterations);
+        System.out.printf("%-22s %10s %12s %14s%n", "codec", "bytes", "ns/op", "alloc B/op");
+        run("json account (lossy)", iterations, () -> {
+            JSONObject obj = new JSONObject();
+            obj.put("card", account.getCardNumber());
+            obj.put("pin", account.getPin());
+            obj.put("balance", account.getBalance());
+            String text = obj.toString(2);
+            JSONObject back = new JSONObject(text);
+            new Account(back.getString("card"), back.getString("pin"), back.getDouble("balance"));
+            return text.length();
+        });
+        run("json account (full)", iterations, () -> {
+            String text = fullJson(account).toString(2);
+            fromFullJson(new JSONObject(text));
+            return text.length();
+        });
+        run("binary account", iterations, () -> {
+            reused.clear();
+            BinaryCodec.encodeAccount(account, reused);
+            BinaryCodec.decodeAccount(reused.flip());
+            return reused.limit();
+        });
+        run("json state (lossy)", iterations, () -> {
+            JSONObject obj = new JSONObject();
+            obj.put("cash", state.getCashAvailable());
+            obj.put("firmware", state.getFirmwareVersion());
+            obj.put("paper", state.getPaperTank().getPaperCount());
+            obj.put("ink", state.getInkLevel());
+            String text = obj.toString(2);
+            JSONObject back = new JSONObject(text);
+            new ATMState(back.getDouble("cash"), back.getString("firmware"), new PaperTank(back.getInt("paper")))
+                    .setInkLevel(back.getInt("ink"));
+            return text.length();
+        });
+        run("binary state", iterations, () -> {
+            reused.clear();
+            BinaryCodec.encodeState(state, reused);
+            BinaryCodec.decodeState(reused.flip());
+            return reused.limit();
+        });
+    }
+
+    private static void run(String name, int iterations, Codec codec) {
+        int bytes = 0;
+        for (int i = 0; i < iterations; i++) bytes = codec.roundTrip(); // warm-up
+        long alloc0 = THREADS.getCurrentThreadAllocatedBytes();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) codec.roundTrip();
+        long elapsed = System.nanoTime() - t0;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - alloc0;
+        System.out.printf("%-22s %10d %12.0f %14.0f%n", name, bytes,
+                (double) elapsed / iterations, (double) allocated / iterations);
+    }
+
+    private static JSONObject fullJson(Account account) {
+        JSONObject obj = new JSONObject();
+        obj.put("card", account.getCardNumber());
+        obj.put("pin", account.getPin());
+        obj.put("balance", account.getBalance());
+        obj.put("expiry", account.getCardExpirationDate().toString());
+        obj.put("dailyLimit", account.getDailyWithdrawalLimit());
+        obj.put("dailyUsed", account.getDailyWithdrawalUsed());
+        obj.put("lastWithdrawal", account.getLastWithdrawalDate().toString());
+        JSONArray history = new JSONArray();
+        TransactionHistory h = account.getTransactionHistory();
+        for (int i = 0; i < h.size(); i++) {
+            JSONObject t = new JSONObject();
+            t.put("ts", h.getTimestamp(i));
+            t.put("type", h.getType(i).name());
+            t.put("amount", h.getAmountCents(i));
+            t.put("balance", h.getBalanceCents(i));
+            if (h.getCounterpart(i) != null) t.put("counterpart", h.getCounterpart(i));
+            history.put(t);
+        }
+        obj.put("history", history);
+        return obj;
+    }
+
+    private static Account fromFullJson(JSONObject obj) {
+        Account account = new Account(obj.getString("card"), obj.getString("pin"), obj.getDouble("balance"));
+        account.restoreLimits(java.time.LocalDate.parse(obj.getString("expiry")), obj.getDouble("dailyLimit"),
+                obj.getDouble("dailyUsed"), java.time.LocalDate.parse(obj.getString("lastWithdrawal")));
+        JSONArray history = obj.getJSONArray("history");
+        for (int i = 0; i < history.length(); i++) {
+            JSONObject t = history.getJSONObject(i);
+            account.getTransactionHistory().append(t.getLong("ts"), Account.TransactionType.valueOf(t.getString("type")),
+                    t.getLong("amount"), t.getLong("balance"), t.optString("counterpart", null));
+        }
+        return account;
+    }
+}
@@ -0,0 +1,39 @@
+import core.ATMState;
+import core.EventLog;
+import core.PaperTank;
+import persistence.EventLogDrainer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class EventLogTest {
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("atm_events", ".log");
+        EventLog log = new EventLog(8);
+        ATMState state = new ATMState(0, 0, 100, "v1.0.0", new PaperTank(500));
+        state.attachEventLog(log);
+
+        EventLogDrainer drainer = new EventLogDrainer(log, file, 3_600_000, 1024 * 1024, 1);
+        state.dispenseCash(40);
+        List<String> first = drainer.tail(5);
+
+        // 20 more events through a ring of 8 before the next drain: the overflow is reported
+        for (int i = 0; i < 20; i++) state.addCash(20, 1);
+        List<String> second = drainer.tail(20);
+        drainer.close();
+        Files.deleteIfExists(file);
+
+        boolean formatted = first.size() == 1 && first.get(0).endsWith("CASH_DISPENSED - Dispensed: $100x0, $50x0, $20x2");
+        boolean overflow = second.size() == 10
+                && second.get(1).startsWith("... 12 events lost")
+                && second.get(9).endsWith("CASH_ADDED - Technician added 1 notes of $20");
+
+        if (formatted && overflow) {
+            System.out.println("✅ EventLogTest PASSED");
+        } else {
+            System.out.println("❌ EventLogTest FAILED");
+            System.out.println(first);
+            System.out.println(second);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import core.Account;
+import persistence.IndexedAccountStore;
+import persistence.JournalHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+// Concurrent saveAccount throughput and latency through the journal, for several commit windows.
+// Usage: java GroupCommitBenchmark [threads] [savesPerThread]
+public class GroupCommitBenchmark {
+    private static final long[] WINDOWS_MICROS = {0, 200, 500, 1000, 2000, 5000};
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int savesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        System.out.println("threads=" + threads + " saves/thread=" + savesPerThread);
+        System.out.printf("%10s %12s %10s %10s %10s%n", "window(us)", "saves/sec", "p50(ms)", "p99(ms)", "avg batch");
+
+        for (long window : WINDOWS_MICROS) {
+            Path dir = Files.createTempDirectory("groupcommit");
+            JournalHandler journal = new JournalHandler(
+                    new IndexedAccountStore(dir.resolve("accounts.idx"), threads), dir, 3_600_000, window);
+
+            long[] latencies = new long[threads * savesPerThread];
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                workers[t] = new Thread(() -> {
+                    Account account = new Account("40000000" + id, "1234", 0);
+                    try { start.await(); } catch (InterruptedException e) { return; }
+                    for (int i = 0; i < savesPerThread; i++) {
+                        account.deposit(1);
+                        long t0 = System.nanoTime();
+                        journal.saveAccount(account);
+                        latencies[id * savesPerThread + i] = System.nanoTime() - t0;
+                    }
+                });
+                workers[t].start();
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread w : workers) w.join();
+            long elapsed = System.nanoTime() - begin;
+
+            Arrays.sort(latencies);
+            System.out.printf("%10d %12.0f %10.2f %10.2f %10.1f%n", window,
+                    latencies.length / (elapsed / 1e9),
+                    latencies[latencies.length / 2] / 1e6,
+                    latencies[(int) (latencies.length * 0.99)] / 1e6,
+                    journal.getAverageBatchSize());
+            journal.close();
+        }
+    }
+}
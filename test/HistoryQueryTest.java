@@ -0,0 +1,90 @@
+import core.Account;
+import core.Account.TransactionType;
+import core.HistoryPage;
+import core.HistoryQuery;
+import core.TransactionHistory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class HistoryQueryTest {
+    public static void main(String[] args) {
+        Random random = new Random(7);
+        TransactionType[] types = TransactionType.values();
+
+        // Ring of 1000 fed 5000 entries: index lists must drop what the ring pushed out
+        TransactionHistory ring = new TransactionHistory(1000);
+        for (int i = 0; i < 5000; i++) {
+            ring.append(i * 1000L, types[random.nextInt(types.length)], i, 0, null);
+        }
+        boolean matches = true;
+        for (int q = 0; q < 200 && matches; q++) {
+            long from = 4000_000L + random.nextInt(1_200_000) - 100_000;
+            long to = from + random.nextInt(600_000);
+            TransactionType first = types[random.nextInt(types.length)];
+            boolean typed = random.nextBoolean();
+            boolean newest = random.nextBoolean();
+            int limit = 1 + random.nextInt(40);
+            matches = walk(ring, from, to, typed ? first : null, newest, limit)
+                    .equals(scan(ring, from, to, typed ? first : null, newest));
+        }
+
+        // A cursor survives new entries: the next page of newest-first continues where it left off
+        TransactionHistory live = new TransactionHistory();
+        for (int i = 0; i < 30; i++) live.append(i, TransactionType.DEPOSIT, i, 0, null);
+        HistoryPage page1 = live.query(HistoryQuery.newest(10));
+        live.append(100, TransactionType.DEPOSIT, 100, 0, null);
+        HistoryPage page2 = live.query(HistoryQuery.newest(10).after(page1.getNextCursor()));
+        boolean stable = page1.getEntries().get(9).getAmount() == 0.20
+                && page2.getEntries().get(0).getAmount() == 0.19 && page2.hasMore();
+
+        // A million entries: a filtered page deep in the history, and the page after it
+        TransactionHistory big = new TransactionHistory();
+        for (int i = 0; i < 1_000_000; i++) {
+            big.append(i * 10L, i % 1000 == 0 ? TransactionType.TRANSFER_IN : TransactionType.WITHDRAWAL, i, 0, null);
+        }
+        HistoryQuery transfersOnly = HistoryQuery.oldest(20).between(5_000_000, 9_000_000).types(TransactionType.TRANSFER_IN);
+        HistoryPage transfers = big.query(transfersOnly);
+        HistoryPage next = big.query(transfersOnly.after(transfers.getNextCursor()));
+        boolean deep = transfers.size() == 20 && transfers.getEntries().get(0).getAmount() == 5000
+                && transfers.hasMore() && next.getEntries().get(0).getAmount() == 5200;
+
+        boolean rejects = false;
+        try {
+            HistoryQuery.newest(10).after("not a cursor!");
+        } catch (IllegalArgumentException e) {
+            rejects = true;
+        }
+
+        if (matches && stable && deep && rejects) {
+            System.out.println("✅ HistoryQueryTest PASSED");
+        } else {
+            System.out.println("❌ HistoryQueryTest FAILED");
+        }
+    }
+
+    // Amounts of every page, following the cursors
+    private static List<Long> walk(TransactionHistory history, long from, long to, TransactionType type,
+                                   boolean newest, int limit) {
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            HistoryQuery query = (newest ? HistoryQuery.newest(limit) : HistoryQuery.oldest(limit)).between(from, to);
+            if (type != null) query.types(type);
+            HistoryPage page = history.query(query.after(cursor));
+            for (Account.Transaction t : page.getEntries()) seen.add(Math.round(t.getAmount() * 100));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return seen;
+    }
+
+    private static List<Long> scan(TransactionHistory history, long from, long to, TransactionType type, boolean newest) {
+        List<Long> seen = new ArrayList<>();
+        for (int k = 0; k < history.size(); k++) {
+            int i = newest ? history.size() - 1 - k : k;
+            long ts = history.getTimestamp(i);
+            if (ts >= from && ts < to && (type == null || history.getType(i) == type)) seen.add(history.getAmountCents(i));
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,141 @@
+import core.Account;
+import metrics.ServiceMetrics;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMSession;
+import services.ATMStateCache;
+import services.IdempotencyTable;
+import services.PinLockout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdempotencyTableTest {
+    public static void main(String[] args) throws Exception {
+        AtomicLong now = new AtomicLong(1_000_000);
+        IdempotencyTable requests = new IdempotencyTable(60_000, 1024, now::get);
+        AtomicInteger saves = new AtomicInteger();
+        AtomicInteger failIn = new AtomicInteger(-1); // saves to let through before one throws
+        InMemoryPersistence store = new InMemoryPersistence() {
+            @Override
+            public void saveAccount(Account account) {
+                if (failIn.getAndUpdate(n -> n < 0 ? n : n - 1) == 0) throw new IllegalStateException("disk full");
+                saves.incrementAndGet();
+                super.saveAccount(account);
+            }
+        };
+        store.saveAccount(new Account("1111222233", "1234", 1000));
+        store.saveAccount(new Account("4444555566", "4321", 0));
+        ATMStateCache cache = new ATMStateCache(store);
+        ATMService atm = new ATMService(store, cache, new ServiceMetrics(), new PinLockout(), requests);
+        ATMSession session = atm.openSession("1111222233", "1234");
+
+        // A retried withdrawal pays out once and the retry touches nothing
+        double cash = cache.current().getCashAvailable();
+        boolean first = session.withdraw(100, "w-1");
+        int savesAfterFirst = saves.get();
+        boolean retry = session.withdraw(100, "w-1");
+        boolean once = first && retry && session.getBalance() == 897.5
+                && cache.current().getCashAvailable() == cash - 100 && saves.get() == savesAfterFirst;
+
+        // Deposits and transfers the same; a declined request stays declined
+        session.deposit(50, "d-1");
+        session.deposit(50, "d-1");
+        session.transfer("4444555566", 20, "t-1");
+        session.transfer("4444555566", 20, "t-1");
+        boolean declined = !session.withdraw(5000, "w-2") && !session.withdraw(5000, "w-2");
+        boolean others = session.getBalance() == 897.5 + 50 - 21 && declined && requests.getDuplicates() == 4;
+
+        // An ID reused for something else is refused, not run
+        boolean reused = !session.withdraw(200, "w-1") && session.getBalance() == 926.5;
+
+        // After the entry expires the ID can be used again
+        now.addAndGet(60_000);
+        boolean expired = session.withdraw(100, "w-1") && session.getBalance() == 824;
+
+        // A save that throws leaves nothing behind: the retry of the same request is applied once
+        cash = cache.current().getCashAvailable();
+        failIn.set(0);
+        boolean lostWithdrawal = !session.withdraw(100, "w-3");
+        boolean withdrawnOnce = lostWithdrawal && session.withdraw(100, "w-3") && session.getBalance() == 721.5
+                && cache.current().getCashAvailable() == cash - 100
+                && store.loadAccount("1111222233").getBalance() == 721.5;
+        failIn.set(0);
+        boolean lostDeposit = !session.deposit(50, "d-3");
+        boolean depositedOnce = lostDeposit && session.deposit(50, "d-3") && session.getBalance() == 771.5
+                && cache.current().getCashAvailable() == cash - 50;
+        // The sender is saved, then the recipient's save throws: the sender is written back
+        failIn.set(1);
+        boolean lostTransfer = !session.transfer("4444555566", 20, "t-3");
+        boolean rolledBack = store.loadAccount("1111222233").getBalance() == 771.5
+                && store.loadAccount("4444555566").getBalance() == 20;
+        boolean transferredOnce = lostTransfer && rolledBack && session.transfer("4444555566", 20, "t-3")
+                && session.getBalance() == 750.5 && store.loadAccount("4444555566").getBalance() == 40;
+        boolean unsaved = withdrawnOnce && depositedOnce && transferredOnce;
+
+        // A retry storm: the first attempt is slow, the retries wait for it instead of running too
+        CountDownLatch slow = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> attempts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            attempts.add(pool.submit(() -> requests.execute("card/storm", "WITHDRAW 60", () -> {
+                runs.incrementAndGet();
+                try {
+                    slow.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            })));
+        }
+        Thread.sleep(200);
+        slow.countDown();
+        boolean storm = true;
+        for (Future<Boolean> attempt : attempts) storm &= attempt.get();
+        storm &= runs.get() == 1;
+        pool.shutdown();
+
+        // The table stays bounded: a full stripe turns new requests away instead of dropping
+        // live entries, so every accepted request is still answered from the table
+        IdempotencyTable small = new IdempotencyTable(60_000, 64, now::get);
+        AtomicInteger smallRuns = new AtomicInteger();
+        List<String> accepted = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            if (small.execute("key" + i, "x", () -> smallRuns.incrementAndGet() > 0)) accepted.add("key" + i);
+        }
+        int ranBefore = smallRuns.get();
+        boolean kept = true;
+        for (String key : accepted) kept &= small.execute(key, "x", () -> smallRuns.incrementAndGet() > 0);
+        boolean bounded = small.size() <= 64 && small.getRefused() > 0 && accepted.size() == ranBefore
+                && kept && smallRuns.get() == ranBefore;
+
+        // An operation that throws is not remembered: the retry runs it again
+        AtomicInteger flaky = new AtomicInteger();
+        boolean threw = false;
+        try {
+            requests.execute("card/flaky", "DEPOSIT 50", () -> {
+                if (flaky.incrementAndGet() == 1) throw new IllegalStateException("store unavailable");
+                return true;
+            });
+        } catch (IllegalStateException e) {
+            threw = true;
+        }
+        boolean retried = threw && requests.execute("card/flaky", "DEPOSIT 50", () -> flaky.incrementAndGet() > 0)
+                && flaky.get() == 2;
+
+        session.close();
+        if (once && others && reused && expired && unsaved && storm && bounded && retried) {
+            System.out.println("✅ IdempotencyTableTest PASSED");
+        } else {
+            System.out.printf("once=%b others=%b reused=%b expired=%b unsaved=%b storm=%b bounded=%b retried=%b%n",
+                    once, others, reused, expired, unsaved, storm, bounded, retried);
+            System.out.println("❌ IdempotencyTableTest FAILED");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import core.Account;
+import persistence.IndexedAccountStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class IndexedAccountStoreTest {
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("accounts", ".idx");
+        Files.delete(file);
+
+        // Write a few thousand accounts, then reopen the file and read them back
+        IndexedAccountStore store = new IndexedAccountStore(file, 5000);
+        for (int i = 0; i < 5000; i++) {
+            store.saveAccount(new Account(String.valueOf(4532000000000000L + i), "1234", i));
+        }
+        store.saveAccount(new Account("4532000000000042", "9999", 42.5)); // overwrite
+        store.close();
+
+        IndexedAccountStore reopened = new IndexedAccountStore(file, 0);
+        Account updated = reopened.loadAccount("4532000000000042");
+        Account other = reopened.loadAccount("4532000000004999");
+        Account missing = reopened.loadAccount("1111222233334444");
+
+        boolean ok = reopened.size() == 5000
+                && updated != null && updated.validatePin("9999") && updated.getBalance() == 42.5
+                && other != null && other.getBalance() == 4999
+                && missing == null;
+        reopened.close();
+        Files.deleteIfExists(file);
+
+        if (ok) {
+            System.out.println("✅ IndexedAccountStoreTest PASSED");
+        } else {
+            System.out.println("❌ IndexedAccountStoreTest FAILED");
+        }
+    }
+}
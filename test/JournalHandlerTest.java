@@ -0,0 +1,56 @@
+import core.Account;
+import persistence.IndexedAccountStore;
+import persistence.JournalHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class JournalHandlerTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        Path store = dir.resolve("accounts.idx");
+
+        // Journal a few balance changes without ever compacting
+        JournalHandler journal = new JournalHandler(new IndexedAccountStore(store, 100), dir, 3_600_000);
+        journal.saveAccount(new Account("1111222233334444", "1234", 100));
+        journal.saveAccount(new Account("1111222233334444", "1234", 250));
+        journal.saveAccount(new Account("5555666677778888", "4321", 75));
+        boolean readYourWrites = journal.loadAccount("1111222233334444").getBalance() == 250;
+
+        // Simulate a crash in the middle of the next append: a torn record at the tail
+        Files.write(dir.resolve("atm.journal"), new byte[] {0, 0, 0, 40, 'A', 1, 2},
+                StandardOpenOption.APPEND);
+
+        // Recovery replays the intact records into the base store and drops the torn one
+        IndexedAccountStore recovered = new IndexedAccountStore(store, 100);
+        JournalHandler reopened = new JournalHandler(recovered, dir, 3_600_000);
+        boolean replayed = recovered.loadAccount("1111222233334444").getBalance() == 250
+                && recovered.loadAccount("5555666677778888").getBalance() == 75;
+
+        // A rotation that cannot move the file leaves the journal usable and loses nothing
+        Path blocker = Files.createDirectories(dir.resolve("atm.journal.compacting").resolve("blocker"));
+        reopened.saveAccount(new Account("1111222233334444", "1234", 300));
+        boolean compactFailed = false;
+        try {
+            reopened.compact();
+        } catch (RuntimeException e) {
+            compactFailed = true;
+        }
+        reopened.saveAccount(new Account("5555666677778888", "4321", 80));
+        boolean survived = compactFailed
+                && reopened.loadAccount("1111222233334444").getBalance() == 300
+                && reopened.loadAccount("5555666677778888").getBalance() == 80;
+        Files.delete(blocker);
+        Files.delete(blocker.getParent());
+        reopened.compact();
+        survived &= recovered.loadAccount("1111222233334444").getBalance() == 300
+                && recovered.loadAccount("5555666677778888").getBalance() == 80;
+        reopened.close();
+
+        if (readYourWrites && replayed && survived) {
+            System.out.println("✅ JournalHandlerTest PASSED");
+        } else {
+            System.out.println("❌ JournalHandlerTest FAILED");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import core.ATMState;
+import core.PaperTank;
+import loadgen.LoadGenerator;
+import loadgen.Workload;
+import metrics.LatencyHistogram;
+import persistence.InMemoryPersistence;
+
+public class LoadGeneratorTest {
+    public static void main(String[] args) throws Exception {
+        // Percentiles are exact to about 3%
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) histogram.record(v * 1000);
+        long p50 = histogram.getPercentile(0.5), p99 = histogram.getPercentile(0.99);
+        boolean percentiles = Math.abs(p50 - 50_000_000L) <= 50_000_000L * 0.035
+                && Math.abs(p99 - 99_000_000L) <= 99_000_000L * 0.035
+                && histogram.getMax() == 100_000_000L && histogram.getCount() == 100_000;
+
+        // A short closed-loop run over the in-memory store touches every operation
+        Workload workload = new Workload().accounts(50).clients(4).seconds(1).mix(25, 25, 25, 25);
+        InMemoryPersistence store = new InMemoryPersistence(new ATMState(150, 200, 400, "v1.0.0", new PaperTank(100_000)));
+        LoadGenerator.seedAccounts(store, workload);
+        LoadGenerator generator = new LoadGenerator(store, workload);
+        generator.run();
+
+        boolean ran = generator.getLoginLatency().getCount() > 0
+                && generator.getDeclined(Workload.Operation.BALANCE) == 0;
+        for (Workload.Operation op : Workload.Operation.values()) ran &= generator.getCount(op) > 0;
+
+        if (percentiles && ran) {
+            System.out.println("✅ LoadGeneratorTest PASSED");
+        } else {
+            System.out.println("❌ LoadGeneratorTest FAILED");
+        }
+    }
+}
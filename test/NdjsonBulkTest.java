@@ -0,0 +1,79 @@
+import core.Account;
+import persistence.BinaryFileHandler;
+import persistence.IndexedAccountStore;
+import persistence.NdjsonExporter;
+import persistence.NdjsonImporter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NdjsonBulkTest {
+    public static void main(String[] args) throws Exception {
+        Account alice = new Account("1111222233", "1234", 1000);
+        alice.deposit(99.99);
+        alice.transfer(20, "4444555566");
+        Account bob = new Account("4444555566", "9\"8\\7", 5);
+
+        StringWriter text = new StringWriter();
+        try (NdjsonExporter exporter = new NdjsonExporter(text)) {
+            exporter.write(alice);
+            exporter.write(bob);
+        }
+
+        // A broken line in the middle is skipped without losing the records around it
+        String[] lines = text.toString().split("\n");
+        String input = lines[0] + "\n" + lines[1] + "\n{\"record\":\"account\",\"card\":\n\n" + lines[2] + "\n" + lines[3] + "\n";
+        Path dir = Files.createTempDirectory("ndjson");
+        BinaryFileHandler files = new BinaryFileHandler(dir.resolve("binary"));
+        NdjsonImporter importer = new NdjsonImporter(files);
+        long imported = importer.importFrom(new StringReader(input));
+
+        Account a = files.loadAccount("1111222233");
+        Account b = files.loadAccount("4444555566");
+        boolean roundTrip = imported == 4 && importer.getLinesSkipped() == 1
+                && a.getBalance() == alice.getBalance()
+                && a.getTransactionHistory().size() == 2
+                && a.getTransactionHistory().format(1).equals(alice.getTransactionHistory().format(1))
+                && b.validatePin("9\"8\\7");
+
+        // Exported again from the store, the transaction records are the same as before
+        StringWriter reexported = new StringWriter();
+        try (NdjsonExporter exporter = new NdjsonExporter(reexported)) {
+            exporter.writeAll(files, List.of("1111222233", "4444555566"));
+        }
+        boolean sameTransactions = transactionLines(reexported.toString()).equals(transactionLines(text.toString()))
+                && transactionLines(text.toString()).size() == 2;
+
+        // Export straight out of the indexed store by walking its cards
+        IndexedAccountStore store = new IndexedAccountStore(dir.resolve("accounts.idx"), 100);
+        // It keeps no history: only the accounts count as imported
+        NdjsonImporter intoIndex = new NdjsonImporter(store);
+        long indexed = intoIndex.importFrom(new StringReader(input));
+        boolean dropped = indexed == 2 && intoIndex.getTransactionsImported() == 0
+                && intoIndex.getTransactionsDropped() == 2;
+        StringWriter again = new StringWriter();
+        long written;
+        try (NdjsonExporter exporter = new NdjsonExporter(again)) {
+            written = exporter.writeAll(store, store.cards());
+        }
+        store.close();
+        boolean fromStore = written == 2 && again.toString().contains("\"card\":\"1111222233\",\"pin\":\"1234\",\"balance\":1078.99");
+
+        if (roundTrip && sameTransactions && dropped && fromStore) {
+            System.out.println("✅ NdjsonBulkTest PASSED");
+        } else {
+            System.out.println("❌ NdjsonBulkTest FAILED");
+        }
+    }
+
+    private static List<String> transactionLines(String ndjson) {
+        List<String> lines = new ArrayList<>();
+        for (String line : ndjson.split("\n")) {
+            if (line.contains("\"record\":\"transaction\"")) lines.add(line);
+        }
+        return lines;
+    }
+}
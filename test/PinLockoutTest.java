@@ -0,0 +1,75 @@
+import core.Account;
+import metrics.ServiceMetrics;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMStateCache;
+import services.PinLockout;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PinLockoutTest {
+    public static void main(String[] args) throws Exception {
+        AtomicLong now = new AtomicLong(1_000_000);
+        PinLockout lockout = new PinLockout(3, 60_000, 60_000, 1024, now::get);
+        InMemoryPersistence store = new InMemoryPersistence();
+        store.saveAccount(new Account("1111222233", "1234", 500));
+        store.saveAccount(new Account("4444555566", "4321", 500));
+        ATMService first = new ATMService(store, new ATMStateCache(store), new ServiceMetrics(), lockout);
+        ATMService second = new ATMService(store, new ATMStateCache(store), new ServiceMetrics(), lockout);
+
+        // Wrong PINs at two services add up for the card, and the right PIN is refused once locked
+        first.openSession("1111222233", "0000");
+        second.openSession("1111222233", "0000");
+        boolean otherCardFine = first.openSession("4444555566", "4321") != null;
+        first.openSession("1111222233", "0000");
+        boolean locked = lockout.isLocked("1111222233")
+                && second.openSession("1111222233", "1234") == null
+                && !lockout.isLocked("4444555566");
+
+        now.addAndGet(60_000);
+        boolean unlocked = second.openSession("1111222233", "1234") != null && lockout.size() == 0;
+
+        // Failures spread over more than the window never lock the card
+        lockout.recordFailure("4444555566");
+        lockout.recordFailure("4444555566");
+        now.addAndGet(61_000);
+        boolean windowed = lockout.recordFailure("4444555566") == 2;
+
+        // A burst of guesses across many cards from many threads stays within the bound
+        Thread[] attackers = new Thread[8];
+        for (int t = 0; t < attackers.length; t++) {
+            int offset = t;
+            attackers[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) lockout.recordFailure("9" + (offset * 20_000 + i % 5_000));
+            });
+            attackers[t].start();
+        }
+        for (Thread t : attackers) t.join();
+        boolean bounded = lockout.size() <= 1024;
+
+        // One entry per stripe: a locked card is never evicted to make room. A new card in its
+        // stripe is treated as locked instead, and cards in other stripes still get their attempts
+        PinLockout tiny = new PinLockout(3, 60_000, 60_000, 64, now::get);
+        for (int i = 0; i < 3; i++) tiny.recordFailure("7000000000");
+        String sharer = null;
+        boolean othersCounted = true;
+        for (int i = 1; i < 1_000 && sharer == null; i++) {
+            String card = "7" + (1_000_000_000L + i);
+            if (tiny.recordFailure(card) == 0) {
+                sharer = card;
+            } else {
+                othersCounted &= tiny.lockedFor(card) == 0;
+            }
+        }
+        boolean keptLocked = sharer != null && othersCounted
+                && tiny.isLocked("7000000000") && tiny.isLocked(sharer);
+        now.addAndGet(60_000);
+        boolean released = sharer != null && !tiny.isLocked("7000000000") && !tiny.isLocked(sharer)
+                && tiny.recordFailure(sharer) == 2;
+
+        if (otherCardFine && locked && unlocked && windowed && bounded && keptLocked && released) {
+            System.out.println("✅ PinLockoutTest PASSED");
+        } else {
+            System.out.println("❌ PinLockoutTest FAILED");
+        }
+    }
+}
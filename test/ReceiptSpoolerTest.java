@@ -0,0 +1,63 @@
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import metrics.ServiceMetrics;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMSession;
+import services.ATMStateCache;
+import services.ReceiptSpooler;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+public class ReceiptSpoolerTest {
+    public static void main(String[] args) throws Exception {
+        // Receipts go through the spooler and their paper and ink come off the saved state
+        InMemoryPersistence store = new InMemoryPersistence(new ATMState(100, 200, 500, "v1.0.0", new PaperTank(60)));
+        store.saveAccount(new Account("1234567890", "1234", 10_000));
+        ATMStateCache cache = new ATMStateCache(store);
+        ATMService atm = new ATMService(store, cache, new ServiceMetrics());
+        ATMSession session = atm.openSession("1234567890", "1234");
+        for (int i = 0; i < 50; i++) session.deposit(20);
+        session.close();
+        boolean flushed = cache.receipts().flush(5000);
+        ATMState saved = store.loadATMState();
+        boolean accounted = flushed && saved.getPaperTank().getPaperCount() == 10 && saved.getInkLevel() == 13;
+
+        // With the printer stalled, the queue and the paper both limit what is accepted
+        CountDownLatch stalled = new CountDownLatch(1);
+        Executor stalledPrinter = r -> {
+            Thread t = new Thread(() -> {
+                try { stalled.await(); } catch (InterruptedException ignored) {}
+                r.run();
+            });
+            t.setDaemon(true);
+            t.start();
+        };
+        InMemoryPersistence small = new InMemoryPersistence(new ATMState(100, 200, 500, "v1.0.0", new PaperTank(5)));
+        ATMStateCache smallCache = new ATMStateCache(small);
+        ReceiptSpooler spooler = new ReceiptSpooler(smallCache, stalledPrinter, 3);
+        ServiceMetrics metrics = new ServiceMetrics();
+        int accepted = 0;
+        for (int i = 0; i < 6; i++) {
+            if (spooler.submit("DEPOSIT", 20, 100, metrics)) accepted++;
+        }
+        boolean boundedByQueue = accepted == 3 && spooler.availablePaper() == 2;
+        stalled.countDown();
+        spooler.flush(5000);
+        for (int i = 0; i < 6; i++) {
+            if (spooler.submit("DEPOSIT", 20, 100, metrics)) accepted++;
+        }
+        spooler.flush(5000);
+        boolean boundedByPaper = accepted == 5 && !spooler.hasPaper()
+                && smallCache.current().getPaperTank().getPaperCount() == 0
+                && metrics.getCount(ServiceMetrics.Operation.RECEIPT) == 12
+                && metrics.getFailures(ServiceMetrics.Operation.RECEIPT) == 7;
+
+        if (accounted && boundedByQueue && boundedByPaper) {
+            System.out.println("✅ ReceiptSpoolerTest PASSED");
+        } else {
+            System.out.println("❌ ReceiptSpoolerTest FAILED");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import core.ATMState;
+import core.EventLog;
+import core.PaperTank;
+import persistence.BinaryCodec;
+import persistence.EventLogDrainer;
+import services.Reconciliation;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ReconciliationTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("reconciliation");
+        Path events = Files.createDirectories(dir.resolve("events"));
+        Path opening = Files.createDirectories(dir.resolve("opening"));
+        Path closing = Files.createDirectories(dir.resolve("closing"));
+
+        // One day on terminal T1: two withdrawals and two deposits (one of each handed back), a refill
+        ATMState state = new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500));
+        state.attachEventLog(new EventLog(1024));
+        save(state, opening.resolve("T1.bin"));
+        try (EventLogDrainer drainer = new EventLogDrainer(state.getEventLog(), events.resolve("T1.log"))) {
+            int[] kept = state.dispenseNotes(170);
+            int[] refused = state.dispenseNotes(100);
+            state.returnNotes(refused);
+            state.addCashDeposit(100);
+            state.addCashDeposit(50);
+            state.returnDeposit(50); // could not be credited, handed back
+            state.addCash(20, 10);
+            drainer.flush(); // the day's events are on disk before the closing state is taken
+        }
+        save(state, closing.resolve("T1.bin"));
+
+        // The export holds the accounts' whole history: a withdrawal two days earlier was
+        // paid out by some other day's events and must not count against this one
+        long now = System.currentTimeMillis(), earlier = now - 2 * 24 * 60 * 60 * 1000L;
+        Path ledger = dir.resolve("ledger.ndjson");
+        Files.writeString(ledger,
+                "{\"record\":\"account\",\"card\":\"1\",\"pin\":\"1234\",\"balance\":30.00}\n"
+                + "{\"record\":\"transaction\",\"card\":\"1\",\"ts\":" + earlier + ",\"type\":\"WITHDRAWAL\",\"amount\":60.00,\"balance\":200.00}\n"
+                + "{\"record\":\"transaction\",\"card\":\"1\",\"ts\":" + now + ",\"type\":\"WITHDRAWAL\",\"amount\":170.00,\"balance\":30.00}\n"
+                + "{\"record\":\"transaction\",\"card\":\"1\",\"ts\":" + (now + 1) + ",\"type\":\"DEPOSIT\",\"amount\":100.00,\"balance\":130.00}\n"
+                + "{\"record\":\"transaction\",\"card\":\"1\",\"ts\":" + (now + 2) + ",\"type\":\"TRANSFER_OUT\",\"amount\":5.00,\"balance\":125.00}\n");
+
+        // No window given: the day the event logs cover
+        Reconciliation.Report report = new Reconciliation(events, opening, closing).addLedger(ledger).run();
+        boolean balanced = report.isBalanced() && report.getTerminals().size() == 1
+                && report.getLedgerWithdrawals() == 1 && report.getLedgerDeposits() == 1
+                && report.getLedgerOutsideWindow() == 1
+                && Math.abs(report.getDispensed() - 170) < 0.001 && Math.abs(report.getDeposited() - 100) < 0.001;
+
+        // A window given explicitly wins; one that takes in the earlier day no longer balances
+        Reconciliation.Report wide = new Reconciliation(events, opening, closing).addLedger(ledger)
+                .window(earlier, now + 60_000).run();
+        boolean windowed = wide.getLedgerWithdrawals() == 2 && wide.getLedgerOutsideWindow() == 0
+                && wide.getFleetProblems().size() == 1;
+
+        // A $50 note goes missing from the cassette overnight
+        ATMState short50 = BinaryCodec.decodeState(ByteBuffer.wrap(Files.readAllBytes(closing.resolve("T1.bin"))));
+        short50.attachEventLog(new EventLog(16));
+        short50.dispenseCash(50);
+        save(short50, closing.resolve("T1.bin"));
+        Reconciliation.Report broken = new Reconciliation(events, opening, closing).addLedger(ledger).run();
+        Reconciliation.TerminalResult t1 = broken.getUnbalanced().isEmpty() ? null : broken.getUnbalanced().get(0);
+        boolean caught = t1 != null && t1.getProblems().size() == 2
+                && t1.getRows().stream().anyMatch(r -> r.getDenomination() == 50 && r.getDifference() == -1)
+                && broken.getFleetProblems().isEmpty();
+
+        // The ledger shows a withdrawal that no terminal paid out
+        Files.writeString(ledger, "{\"record\":\"transaction\",\"card\":\"2\",\"ts\":" + (now + 3) + ",\"type\":\"WITHDRAWAL\",\"amount\":40.00,\"balance\":0.00}\n",
+                java.nio.file.StandardOpenOption.APPEND);
+        save(state, closing.resolve("T1.bin"));
+        Reconciliation.Report unpaid = new Reconciliation(events, opening, closing).addLedger(ledger).run();
+        boolean fleet = unpaid.getUnbalanced().isEmpty() && unpaid.getFleetProblems().size() == 1;
+
+        if (balanced && windowed && caught && fleet) {
+            System.out.println("✅ ReconciliationTest PASSED");
+        } else {
+            report.print(System.out);
+            wide.print(System.out);
+            broken.print(System.out);
+            unpaid.print(System.out);
+            System.out.println("❌ ReconciliationTest FAILED");
+        }
+    }
+
+    private static void save(ATMState state, Path file) throws Exception {
+        ByteBuffer bytes = BinaryCodec.encode(state);
+        Files.write(file, java.util.Arrays.copyOfRange(bytes.array(), bytes.position(), bytes.limit()));
+    }
+}
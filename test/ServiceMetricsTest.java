@@ -0,0 +1,64 @@
+import core.Account;
+import metrics.ServiceMetrics;
+import org.json.JSONObject;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMSession;
+import services.ATMStateCache;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ServiceMetricsTest {
+    public static void main(String[] args) throws Exception {
+        InMemoryPersistence store = new InMemoryPersistence();
+        store.saveAccount(new Account("1234567890", "1234", 1000));
+        store.saveAccount(new Account("5555666677", "4321", 0));
+        ServiceMetrics metrics = new ServiceMetrics(1); // time every call
+        ATMStateCache cache = new ATMStateCache(store);
+        ATMService atm = new ATMService(store, cache, metrics);
+
+        atm.openSession("1234567890", "0000"); // wrong PIN
+        ATMSession session = atm.openSession("1234567890", "1234");
+        session.withdraw(100);
+        session.withdraw(15); // not a multiple of 10
+        session.deposit(50);
+        long savesBeforeTransfer = metrics.getCount(ServiceMetrics.Operation.PERSISTENCE_SAVE);
+        session.transfer("5555666677", 20);
+        // A transfer saves both accounts, through the same instrumented store
+        boolean transferSaves = metrics.getCount(ServiceMetrics.Operation.PERSISTENCE_SAVE) - savesBeforeTransfer == 2;
+        session.close();
+        cache.receipts().flush(5000); // receipts print in the background
+
+        boolean counted = metrics.getCount(ServiceMetrics.Operation.AUTHENTICATE) == 2
+                && metrics.getFailures(ServiceMetrics.Operation.AUTHENTICATE) == 1
+                && metrics.getCount(ServiceMetrics.Operation.WITHDRAW) == 2
+                && metrics.getFailures(ServiceMetrics.Operation.WITHDRAW) == 1
+                && metrics.getCount(ServiceMetrics.Operation.RECEIPT) == 3
+                && transferSaves
+                // withdraw and deposit each save the account and the machine state, transfer both accounts
+                && metrics.getCount(ServiceMetrics.Operation.PERSISTENCE_SAVE) == 6
+                && metrics.getLatency(ServiceMetrics.Operation.WITHDRAW).getCount() == 2;
+
+        Path file = Files.createTempFile("atm_metrics", ".json");
+        metrics.writeSnapshot(file);
+        JSONObject snapshot = new JSONObject(Files.readString(file));
+        Files.delete(file);
+        boolean written = snapshot.getJSONObject("operations").getJSONObject("deposit").getLong("count") == 1;
+
+        // Counts from many short-lived threads all land, however many threads came and went
+        ServiceMetrics threads = new ServiceMetrics();
+        for (int i = 0; i < 200; i++) {
+            Thread t = new Thread(() -> threads.record(ServiceMetrics.Operation.DEPOSIT, threads.start(), false));
+            t.start();
+            t.join();
+        }
+        boolean summed = threads.getCount(ServiceMetrics.Operation.DEPOSIT) == 200
+                && threads.getFailures(ServiceMetrics.Operation.DEPOSIT) == 200;
+
+        if (counted && written && summed) {
+            System.out.println("✅ ServiceMetricsTest PASSED");
+        } else {
+            System.out.println("❌ ServiceMetricsTest FAILED");
+        }
+    }
+}
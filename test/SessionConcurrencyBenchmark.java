@@ -0,0 +1,67 @@
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMSession;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Thousands of concurrent customer sessions against one ATMService, one virtual thread each.
+// Every session logs in, deposits and withdraws a $20 note, transfers to a neighbour and logs out.
+// Needs JDK 21+ (virtual threads). Usage: java SessionConcurrencyBenchmark [sessions]
+public class SessionConcurrencyBenchmark {
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        // Enough paper for three receipts per session
+        InMemoryPersistence persistence = new InMemoryPersistence(
+                new ATMState(100, 200, 500, "v1.0.0", new PaperTank(sessions * 3)));
+        for (int i = 0; i < sessions; i++) {
+            persistence.saveAccount(new Account(card(i), "1234", 1000));
+        }
+        ATMService atm = new ATMService(persistence);
+
+        long[] latencies = new long[sessions];
+        AtomicInteger completed = new AtomicInteger();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // the service is chatty
+
+        long begin = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < sessions; i++) {
+                final int id = i;
+                executor.submit(() -> {
+                    long t0 = System.nanoTime();
+                    try (ATMSession session = atm.openSession(card(id), "1234")) {
+                        boolean ok = session.deposit(20)
+                                & session.withdraw(20)
+                                & session.transfer(card((id + 1) % sessions), 10);
+                        if (ok) completed.incrementAndGet();
+                    }
+                    latencies[id] = System.nanoTime() - t0;
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - begin;
+        System.setOut(console);
+
+        Arrays.sort(latencies);
+        System.out.println("sessions:        " + sessions);
+        System.out.println("fully completed: " + completed.get());
+        System.out.printf("sessions/sec:    %.0f%n", sessions / (elapsed / 1e9));
+        System.out.printf("p50 / p99 (ms):  %.2f / %.2f%n",
+                latencies[sessions / 2] / 1e6, latencies[(int) (sessions * 0.99)] / 1e6);
+    }
+
+    private static String card(int i) {
+        return String.valueOf(4000000000000000L + i);
+    }
+}
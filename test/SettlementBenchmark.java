@@ -0,0 +1,38 @@
+import core.Account;
+import persistence.InMemoryPersistence;
+import services.BatchSettlement;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Generates a file of N transfer instructions between A accounts and settles it with
+// 1 thread and with every core, printing the per-batch report of each run.
+// Usage: java SettlementBenchmark [instructions] [accounts]
+public class SettlementBenchmark {
+    public static void main(String[] args) throws Exception {
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        Path file = Files.createTempFile("settlement", ".csv");
+        SplittableRandom random = new SplittableRandom(42);
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < instructions; i++) {
+                out.write("card" + random.nextInt(accounts) + ",card" + random.nextInt(accounts) + "," + (1 + random.nextInt(50)) + "\n");
+            }
+        }
+        System.out.printf("file: %,d bytes%n", Files.size(file));
+
+        int[] threads = {1, Runtime.getRuntime().availableProcessors()};
+        for (int t : threads) {
+            InMemoryPersistence store = new InMemoryPersistence();
+            for (int i = 0; i < accounts; i++) store.saveAccount(new Account("card" + i, "1234", 1000));
+            BatchSettlement settlement = new BatchSettlement(store, new ForkJoinPool(t), 256 * 1024);
+            long t0 = System.nanoTime();
+            settlement.settle(file);
+            System.out.printf("%d thread(s): %.2fs including parsing and saving%n", t, (System.nanoTime() - t0) / 1e9);
+            settlement.printReport(System.out);
+        }
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,34 @@
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMSession;
+import services.ATMStateCache;
+import services.V2Technician;
+
+public class SharedStateCacheTest {
+    public static void main(String[] args) {
+        // A machine holding a single $20 note
+        InMemoryPersistence store = new InMemoryPersistence(new ATMState(0, 0, 1, "v1.0.0", new PaperTank(500)));
+        store.saveAccount(new Account("1234567890", "1234", 1000));
+
+        // Built from the store alone, the service and the technician still share one state
+        ATMService atm = new ATMService(store);
+        V2Technician tech = new V2Technician(store);
+        ATMSession session = atm.openSession("1234567890", "1234");
+        boolean emptyBefore = !session.withdraw(100);
+        tech.addCash(100);
+        boolean refilled = session.withdraw(100);
+        session.close();
+
+        boolean shared = ATMStateCache.of(store) == ATMStateCache.of(store)
+                && ATMStateCache.of(store) != ATMStateCache.of(new InMemoryPersistence());
+
+        if (emptyBefore && refilled && shared) {
+            System.out.println("✅ SharedStateCacheTest PASSED");
+        } else {
+            System.out.println("❌ SharedStateCacheTest FAILED");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import core.Account;
+import metrics.ServiceMetrics;
+import persistence.InMemoryPersistence;
+import services.ATMService;
+import services.ATMSession;
+import services.ATMStateCache;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class StateLockOrderTest {
+    public static void main(String[] args) throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean armed = new AtomicBoolean();
+        InMemoryPersistence store = new InMemoryPersistence() {
+            @Override
+            public void saveAccount(Account account) {
+                // Once armed, the next save of card A hangs, like a slow disk, until released
+                if (account.getCardNumber().equals("1111111111") && armed.getAndSet(false)) {
+                    saving.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.saveAccount(account);
+            }
+        };
+        store.saveAccount(new Account("1111111111", "1234", 1000));
+        store.saveAccount(new Account("2222222222", "1234", 1000));
+        ATMService atm = new ATMService(store, new ATMStateCache(store), new ServiceMetrics());
+        ATMSession first = atm.openSession("1111111111", "1234");
+        ATMSession second = atm.openSession("1111111111", "1234");
+        ATMSession other = atm.openSession("2222222222", "1234");
+
+        ExecutorService pool = Executors.newCachedThreadPool();
+        armed.set(true);
+
+        // One session is stuck saving card A; a second one queues for card A's stripe
+        CompletableFuture<Boolean> stuck = CompletableFuture.supplyAsync(() -> first.withdraw(100), pool);
+        saving.await();
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> second.withdraw(100), pool);
+        Thread.sleep(200);
+
+        // A withdrawal on another card still goes through on the same machine
+        boolean carriesOn;
+        try {
+            carriesOn = CompletableFuture.supplyAsync(() -> other.withdraw(100), pool).get(5, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            carriesOn = false;
+        }
+        release.countDown();
+        boolean finished = stuck.get(5, TimeUnit.SECONDS) && queued.get(5, TimeUnit.SECONDS)
+                && first.getBalance() == 795;
+        pool.shutdown();
+
+        if (carriesOn && finished) {
+            System.out.println("✅ StateLockOrderTest PASSED");
+        } else {
+            System.out.println("❌ StateLockOrderTest FAILED");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import core.ATMState;
+import core.Account;
+import core.PaperTank;
+import core.TransactionHistory;
+import org.json.JSONObject;
+import interfaces.Persistence;
+import services.ATMService;
+import services.ATMSession;
+import services.StatementExporter;
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class StatementExporterTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("statements");
+        Account account = new Account("1234567890", "1234", 1000);
+        TransactionHistory history = account.getTransactionHistory();
+        // 200k entries, one a second, a transfer every tenth
+        for (int i = 0; i < 200_000; i++) {
+            if (i % 10 == 0) history.append(i * 1000L, Account.TransactionType.TRANSFER_OUT, 125, 0, "9876543210");
+            else history.append(i * 1000L, Account.TransactionType.DEPOSIT, 100, 0, null);
+        }
+        ATMService atm = new ATMService(new OneAccount(account));
+        StatementExporter exporter = new StatementExporter(atm);
+
+        // Entries 50000..149999, exported four times at once while the customer keeps depositing
+        long from = 50_000_000L, to = 150_000_000L;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Long>> exports = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            StatementExporter.Format format = i % 2 == 0 ? StatementExporter.Format.CSV : StatementExporter.Format.NDJSON;
+            Path file = dir.resolve("statement" + i + (i % 2 == 0 ? ".csv" : ".ndjson"));
+            exports.add(pool.submit(() -> exporter.export("1234567890", from, to, format, file)));
+        }
+        ATMSession session = atm.openSession("1234567890", "1234");
+        int deposits = 0;
+        for (int i = 0; i < 20; i++) if (session.deposit(50)) deposits++;
+        session.close();
+        boolean counted = true;
+        for (Future<Long> export : exports) counted &= export.get() == 100_000;
+        pool.shutdown();
+
+        // CSV: header plus one row per entry; the counterpart column is filled for transfers
+        List<String> csv = Files.readAllLines(dir.resolve("statement0.csv"));
+        boolean csvOk = csv.size() == 100_001
+                && csv.get(0).equals("timestamp,type,amount,balance,counterpart")
+                && csv.get(1).endsWith(",TRANSFER_OUT,1.25,0.00,9876543210")
+                && csv.get(2).endsWith(",DEPOSIT,1.00,0.00,");
+
+        // NDJSON: every line parses, and the amounts add up
+        long cents = 0, lines = 0;
+        try (BufferedReader in = Files.newBufferedReader(dir.resolve("statement1.ndjson"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                JSONObject o = new JSONObject(line);
+                cents += Math.round(o.getDouble("amount") * 100);
+                lines++;
+            }
+        }
+        boolean ndjsonOk = lines == 100_000 && cents == 10_000 * 125 + 90_000 * 100;
+
+        boolean missing = false;
+        try {
+            exporter.export("0000000000", 0, Long.MAX_VALUE, StatementExporter.Format.CSV, dir.resolve("none.csv"));
+        } catch (IllegalArgumentException e) {
+            missing = true;
+        }
+
+        if (counted && csvOk && ndjsonOk && missing && deposits == 20) {
+            System.out.println("✅ StatementExporterTest PASSED");
+        } else {
+            System.out.printf("counted=%b csv=%b ndjson=%b missing=%b deposits=%d%n", counted, csvOk, ndjsonOk, missing, deposits);
+            System.out.println("❌ StatementExporterTest FAILED");
+        }
+    }
+
+    // Keeps the one account as it is, history included
+    private static class OneAccount implements Persistence {
+        private final Account account;
+        private ATMState state = new ATMState(100, 200, 500, "v1.0.0", new PaperTank(500));
+
+        OneAccount(Account account) {
+            this.account = account;
+        }
+
+        public Account loadAccount(String card) { return card.equals(account.getCardNumber()) ? account : null; }
+        public void saveAccount(Account account) { }
+        public synchronized ATMState loadATMState() { return state; }
+        public synchronized void saveATMState(ATMState state) { this.state = state; }
+    }
+}
@@ -0,0 +1,26 @@
+import core.Account;
+import core.TransactionHistory;
+
+public class TransactionHistoryTest {
+    public static void main(String[] args) {
+        // Ring buffer of 3: after 5 deposits only the newest 3 remain, oldest first
+        Account account = new Account("1234567890", "1234", 0, 3);
+        for (int i = 1; i <= 5; i++) account.deposit(i * 10.25);
+        account.transfer(5, "9876543210");
+
+        TransactionHistory history = account.getTransactionHistory();
+        boolean bounded = history.size() == 3
+                && history.getAmountCents(0) == 4100
+                && history.getType(2) == Account.TransactionType.TRANSFER_OUT;
+
+        // Details are produced on demand and read the same as before
+        boolean details = history.getDetails(2).equals("Transfer to: 9876543210 | Fee: $1.0")
+                && history.format(2).contains("TRANSFER_OUT | Amount: $5.00 | Balance: $147.75");
+
+        if (bounded && details) {
+            System.out.println("✅ TransactionHistoryTest PASSED");
+        } else {
+            System.out.println("❌ TransactionHistoryTest FAILED");
+        }
+    }
+}
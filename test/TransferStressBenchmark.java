@@ -0,0 +1,61 @@
+import core.Account;
+import persistence.InMemoryPersistence;
+import services.AccountLocks;
+import services.FundsTransfer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Random transfers between a pool of accounts from a growing number of threads.
+// Checks that money is conserved (balances + fees collected == starting total)
+// and prints throughput per thread count.
+// Usage: java TransferStressBenchmark [accounts] [millisPerRun]
+public class TransferStressBenchmark {
+    private static final double TRANSFER_FEE = 1.00;
+    private static final double OPENING_BALANCE = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%8s %14s %12s%n", "threads", "transfers/sec", "conserved");
+        for (int threads = 1; threads <= cores * 2; threads *= 2) {
+            InMemoryPersistence persistence = new InMemoryPersistence();
+            Account[] accounts = new Account[accountCount];
+            for (int i = 0; i < accountCount; i++) {
+                accounts[i] = new Account(String.valueOf(4000000000000000L + i), "1234", OPENING_BALANCE);
+                persistence.saveAccount(accounts[i]);
+            }
+            FundsTransfer funds = new FundsTransfer(persistence, new AccountLocks());
+            LongAdder completed = new LongAdder();
+            long deadline = System.nanoTime() + millis * 1_000_000;
+
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        Account from = accounts[rnd.nextInt(accountCount)];
+                        Account to = accounts[rnd.nextInt(accountCount)];
+                        if (funds.transfer(from, to, 1 + rnd.nextInt(100))) completed.increment();
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread w : workers) w.join();
+
+            double total = 0, persisted = 0;
+            for (Account a : accounts) {
+                total += a.getBalance();
+                persisted += persistence.loadAccount(a.getCardNumber()).getBalance();
+            }
+            double expected = accountCount * OPENING_BALANCE - completed.sum() * TRANSFER_FEE;
+            boolean conserved = total == expected && persisted == expected;
+
+            System.out.printf("%8d %14.0f %12s%n", threads, completed.sum() / (millis / 1000.0), conserved);
+            if (!conserved) {
+                System.out.println("Expected total " + expected + ", in memory " + total + ", persisted " + persisted);
+            }
+        }
+    }
+}